@@ -0,0 +1,159 @@
+package com.elegion.library.littlefinger.benchmark;
+
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+
+/**
+ * Transformations that AndroidKeyStore names differently or initializes with other defaults than SunJCE
+ *
+ * @author Azret Magometov
+ */
+
+public abstract class DelegatingCipherSpi extends CipherSpi {
+
+    private final Cipher mDelegate;
+
+    DelegatingCipherSpi(String transformation) {
+        try {
+            mDelegate = Cipher.getInstance(transformation, "SunJCE");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parameters used when the cipher is initialized without them
+     */
+    AlgorithmParameterSpec getDefaultParameters(int opmode) {
+        return null;
+    }
+
+    @Override
+    protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        throw new NoSuchAlgorithmException("Mode is fixed by the transformation");
+    }
+
+    @Override
+    protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+        throw new NoSuchPaddingException("Padding is fixed by the transformation");
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return mDelegate.getBlockSize();
+    }
+
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        return mDelegate.getOutputSize(inputLen);
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+        return mDelegate.getIV();
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        return mDelegate.getParameters();
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+        AlgorithmParameterSpec defaults = getDefaultParameters(opmode);
+        if (defaults == null) {
+            mDelegate.init(opmode, key, random);
+            return;
+        }
+        try {
+            mDelegate.init(opmode, key, defaults, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(e);
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params == null) {
+            engineInit(opmode, key, random);
+        } else {
+            mDelegate.init(opmode, key, params, random);
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params == null) {
+            engineInit(opmode, key, random);
+        } else {
+            mDelegate.init(opmode, key, params, random);
+        }
+    }
+
+    @Override
+    protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+        return mDelegate.update(input, inputOffset, inputLen);
+    }
+
+    @Override
+    protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException {
+        return mDelegate.update(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    @Override
+    protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen) throws IllegalBlockSizeException, BadPaddingException {
+        return mDelegate.doFinal(input, inputOffset, inputLen);
+    }
+
+    @Override
+    protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        return mDelegate.doFinal(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    /**
+     * PKCS7 padding of AES is the same as PKCS5 padding
+     */
+    public static final class AesCbcPkcs7 extends DelegatingCipherSpi {
+
+        public AesCbcPkcs7() {
+            super("AES/CBC/PKCS5Padding");
+        }
+    }
+
+    /**
+     * AndroidKeyStore uses SHA-1 for MGF1 when the parameters aren't given
+     */
+    public static final class RsaOaepSha256 extends DelegatingCipherSpi {
+
+        private static final OAEPParameterSpec ANDROID_DEFAULTS =
+                new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT);
+
+        public RsaOaepSha256() {
+            super("RSA/ECB/OAEPPadding");
+        }
+
+        @Override
+        AlgorithmParameterSpec getDefaultParameters(int opmode) {
+            return ANDROID_DEFAULTS;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.elegion.library.littlefinger.benchmark;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.KeyAgreementSpi;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+
+/**
+ * ECDH with the keys of {@link SoftwareKeyStoreProvider}, the agreement itself is done by SunEC
+ *
+ * @author Azret Magometov
+ */
+
+public final class DelegatingKeyAgreementSpi extends KeyAgreementSpi {
+
+    private final KeyAgreement mDelegate;
+
+    public DelegatingKeyAgreementSpi() {
+        try {
+            mDelegate = KeyAgreement.getInstance("ECDH", "SunEC");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void engineInit(Key key, SecureRandom random) throws InvalidKeyException {
+        mDelegate.init(key, random);
+    }
+
+    @Override
+    protected void engineInit(Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        mDelegate.init(key, params, random);
+    }
+
+    @Override
+    protected Key engineDoPhase(Key key, boolean lastPhase) throws InvalidKeyException {
+        return mDelegate.doPhase(key, lastPhase);
+    }
+
+    @Override
+    protected byte[] engineGenerateSecret() {
+        return mDelegate.generateSecret();
+    }
+
+    @Override
+    protected int engineGenerateSecret(byte[] sharedSecret, int offset) throws ShortBufferException {
+        return mDelegate.generateSecret(sharedSecret, offset);
+    }
+
+    @Override
+    protected SecretKey engineGenerateSecret(String algorithm) throws NoSuchAlgorithmException, InvalidKeyException {
+        return mDelegate.generateSecret(algorithm);
+    }
+}
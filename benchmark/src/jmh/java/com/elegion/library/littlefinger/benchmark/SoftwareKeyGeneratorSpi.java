@@ -0,0 +1,62 @@
+package com.elegion.library.littlefinger.benchmark;
+
+import android.security.keystore.KeyGenParameterSpec;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.KeyGeneratorSpi;
+import javax.crypto.SecretKey;
+
+/**
+ * Generates AES keys into {@link SoftwareKeyStoreProvider}
+ *
+ * @author Azret Magometov
+ */
+
+public final class SoftwareKeyGeneratorSpi extends KeyGeneratorSpi {
+
+    private static final int DEFAULT_KEY_SIZE = 128;
+
+    private KeyGenParameterSpec mSpec;
+    private SecureRandom mRandom;
+
+    @Override
+    protected void engineInit(SecureRandom random) {
+        throw new UnsupportedOperationException("KeyGenParameterSpec is required");
+    }
+
+    @Override
+    protected void engineInit(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+        if (!(params instanceof KeyGenParameterSpec)) {
+            throw new InvalidAlgorithmParameterException("KeyGenParameterSpec is required");
+        }
+        mSpec = (KeyGenParameterSpec) params;
+        mRandom = random != null ? random : new SecureRandom();
+    }
+
+    @Override
+    protected void engineInit(int keysize, SecureRandom random) {
+        throw new UnsupportedOperationException("KeyGenParameterSpec is required");
+    }
+
+    @Override
+    protected SecretKey engineGenerateKey() {
+        if (mSpec == null) {
+            throw new IllegalStateException("Not initialized");
+        }
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES", "SunJCE");
+            generator.init(mSpec.getKeySize() > 0 ? mSpec.getKeySize() : DEFAULT_KEY_SIZE, mRandom);
+            SecretKey key = generator.generateKey();
+            SoftwareKeyStoreProvider.ENTRIES.put(mSpec.getKeystoreAlias(), new SoftwareKeyStoreProvider.Entry(key, null));
+            return key;
+        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
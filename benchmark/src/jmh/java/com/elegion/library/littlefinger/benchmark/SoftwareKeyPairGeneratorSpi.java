@@ -0,0 +1,124 @@
+package com.elegion.library.littlefinger.benchmark;
+
+import android.security.keystore.KeyGenParameterSpec;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyPairGeneratorSpi;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * Generates key pairs into {@link SoftwareKeyStoreProvider}, the public key is kept in a self-describing certificate
+ *
+ * @author Azret Magometov
+ */
+
+public abstract class SoftwareKeyPairGeneratorSpi extends KeyPairGeneratorSpi {
+
+    private KeyGenParameterSpec mSpec;
+    private SecureRandom mRandom;
+
+    @Override
+    public void initialize(int keysize, SecureRandom random) {
+        throw new InvalidParameterException("KeyGenParameterSpec is required");
+    }
+
+    @Override
+    public void initialize(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+        if (!(params instanceof KeyGenParameterSpec)) {
+            throw new InvalidAlgorithmParameterException("KeyGenParameterSpec is required");
+        }
+        mSpec = (KeyGenParameterSpec) params;
+        mRandom = random != null ? random : new SecureRandom();
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        if (mSpec == null) {
+            throw new IllegalStateException("Not initialized");
+        }
+        try {
+            KeyPair keyPair = generate(mSpec, mRandom);
+            SoftwareKeyStoreProvider.ENTRIES.put(mSpec.getKeystoreAlias(),
+                    new SoftwareKeyStoreProvider.Entry(keyPair.getPrivate(), new PublicKeyCertificate(keyPair.getPublic())));
+            return keyPair;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    abstract KeyPair generate(KeyGenParameterSpec spec, SecureRandom random) throws GeneralSecurityException;
+
+    public static final class Rsa extends SoftwareKeyPairGeneratorSpi {
+
+        private static final int DEFAULT_KEY_SIZE = 2048;
+
+        @Override
+        KeyPair generate(KeyGenParameterSpec spec, SecureRandom random) throws GeneralSecurityException {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+            generator.initialize(spec.getKeySize() > 0 ? spec.getKeySize() : DEFAULT_KEY_SIZE, random);
+            return generator.generateKeyPair();
+        }
+    }
+
+    /**
+     * The curve comes from {@link KeyGenParameterSpec#getAlgorithmParameterSpec()}, P-256 as on Android by default
+     */
+    public static final class Ec extends SoftwareKeyPairGeneratorSpi {
+
+        private static final String DEFAULT_CURVE = "secp256r1";
+
+        @Override
+        KeyPair generate(KeyGenParameterSpec spec, SecureRandom random) throws GeneralSecurityException {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+            AlgorithmParameterSpec params = spec.getAlgorithmParameterSpec();
+            generator.initialize(params != null ? params : new ECGenParameterSpec(DEFAULT_CURVE), random);
+            return generator.generateKeyPair();
+        }
+    }
+
+    /**
+     * Carries only the public key, it can't be verified
+     */
+    static final class PublicKeyCertificate extends Certificate {
+
+        private final PublicKey mPublicKey;
+
+        PublicKeyCertificate(PublicKey publicKey) {
+            super("X.509");
+            mPublicKey = publicKey;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return mPublicKey.getEncoded();
+        }
+
+        @Override
+        public void verify(PublicKey key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void verify(PublicKey key, String sigProvider) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return "PublicKeyCertificate{" + mPublicKey.getAlgorithm() + '}';
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return mPublicKey;
+        }
+    }
+}
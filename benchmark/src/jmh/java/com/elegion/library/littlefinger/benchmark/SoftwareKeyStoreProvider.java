@@ -0,0 +1,64 @@
+package com.elegion.library.littlefinger.benchmark;
+
+import java.security.Key;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for the AndroidKeyStore provider, so the crypto package runs on a plain JVM.
+ * Keys are generated from {@code KeyGenParameterSpec} as on a device, but they live in process memory
+ * and user authentication isn't enforced. The transformations AndroidKeyStore adds on top of the
+ * default providers are delegated to SunJCE with the same defaults as on Android.
+ *
+ * @author Azret Magometov
+ */
+
+public final class SoftwareKeyStoreProvider extends Provider {
+
+    public static final String NAME = "AndroidKeyStore";
+
+    static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private SoftwareKeyStoreProvider() {
+        super(NAME, 1.0, "Software stand-in for AndroidKeyStore");
+        String prefix = SoftwareKeyStoreProvider.class.getPackage().getName() + ".";
+        put("KeyStore." + NAME, prefix + "SoftwareKeyStoreSpi");
+        put("KeyGenerator.AES", prefix + "SoftwareKeyGeneratorSpi");
+        put("KeyPairGenerator.RSA", prefix + "SoftwareKeyPairGeneratorSpi$Rsa");
+        put("KeyPairGenerator.EC", prefix + "SoftwareKeyPairGeneratorSpi$Ec");
+        put("KeyAgreement.ECDH", prefix + "DelegatingKeyAgreementSpi");
+        put("Cipher.AES/CBC/PKCS7Padding", prefix + "DelegatingCipherSpi$AesCbcPkcs7");
+        put("Cipher.RSA/ECB/OAEPWithSHA-256AndMGF1Padding", prefix + "DelegatingCipherSpi$RsaOaepSha256");
+    }
+
+    /**
+     * Registers the provider ahead of the default ones, does nothing if it is already registered.
+     * Must be called before the first use of {@code KeyStoreManager}.
+     */
+    public static synchronized void install() {
+        if (Security.getProvider(NAME) == null) {
+            Security.insertProviderAt(new SoftwareKeyStoreProvider(), 1);
+        }
+    }
+
+    /**
+     * Deletes all keys
+     */
+    public static void deleteAllKeys() {
+        ENTRIES.clear();
+    }
+
+    static final class Entry {
+
+        final Key mKey;
+        final Certificate mCertificate;
+
+        Entry(Key key, Certificate certificate) {
+            mKey = key;
+            mCertificate = certificate;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.elegion.library.littlefinger.benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyStoreSpi;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+
+/**
+ * Read and delete access to the keys of {@link SoftwareKeyStoreProvider}, keys are created by its generators only
+ *
+ * @author Azret Magometov
+ */
+
+public final class SoftwareKeyStoreSpi extends KeyStoreSpi {
+
+    private static final Date CREATION_DATE = new Date();
+
+    @Override
+    public Key engineGetKey(String alias, char[] password) {
+        SoftwareKeyStoreProvider.Entry entry = SoftwareKeyStoreProvider.ENTRIES.get(alias);
+        return entry == null ? null : entry.mKey;
+    }
+
+    @Override
+    public Certificate[] engineGetCertificateChain(String alias) {
+        Certificate certificate = engineGetCertificate(alias);
+        return certificate == null ? null : new Certificate[]{certificate};
+    }
+
+    @Override
+    public Certificate engineGetCertificate(String alias) {
+        SoftwareKeyStoreProvider.Entry entry = SoftwareKeyStoreProvider.ENTRIES.get(alias);
+        return entry == null ? null : entry.mCertificate;
+    }
+
+    @Override
+    public Date engineGetCreationDate(String alias) {
+        return engineContainsAlias(alias) ? CREATION_DATE : null;
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) {
+        throw new UnsupportedOperationException("Keys are created by the key generators");
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) {
+        throw new UnsupportedOperationException("Keys are created by the key generators");
+    }
+
+    @Override
+    public void engineSetCertificateEntry(String alias, Certificate cert) {
+        throw new UnsupportedOperationException("Certificate entries aren't supported");
+    }
+
+    @Override
+    public void engineDeleteEntry(String alias) {
+        SoftwareKeyStoreProvider.ENTRIES.remove(alias);
+    }
+
+    @Override
+    public Enumeration<String> engineAliases() {
+        return Collections.enumeration(SoftwareKeyStoreProvider.ENTRIES.keySet());
+    }
+
+    @Override
+    public boolean engineContainsAlias(String alias) {
+        return SoftwareKeyStoreProvider.ENTRIES.containsKey(alias);
+    }
+
+    @Override
+    public int engineSize() {
+        return SoftwareKeyStoreProvider.ENTRIES.size();
+    }
+
+    @Override
+    public boolean engineIsKeyEntry(String alias) {
+        return engineContainsAlias(alias);
+    }
+
+    @Override
+    public boolean engineIsCertificateEntry(String alias) {
+        return false;
+    }
+
+    @Override
+    public String engineGetCertificateAlias(Certificate cert) {
+        return null;
+    }
+
+    @Override
+    public void engineStore(OutputStream stream, char[] password) {
+        throw new UnsupportedOperationException("Keys exist in memory only");
+    }
+
+    @Override
+    public void engineLoad(InputStream stream, char[] password) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+/**
+ * Time-bound operations initialize the keystore cipher on every call,
+ * {@link #encodeWithOperation()} is the path taken after a fingerprint authentication.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AesCryptographerBenchmark {
+
+    private static final String ALIAS = "benchmark-aes";
+
+    @Param({"32", "1024", "65536"})
+    private int mPayloadSize;
+
+    private AesCryptographer mCryptographer;
+    private byte[] mPayload;
+    private byte[] mEncoded;
+    private String mText;
+    private String mEncodedText;
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        mCryptographer = AesCryptographer.getInstance();
+
+        mPayload = new byte[mPayloadSize];
+        new Random(42).nextBytes(mPayload);
+        mEncoded = mCryptographer.encodeToBytes(mPayload, ALIAS, 0);
+
+        char[] chars = new char[mPayloadSize];
+        Arrays.fill(chars, 'a');
+        mText = new String(chars);
+        mEncodedText = mCryptographer.encode(mText, ALIAS, 0);
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes() throws Exception {
+        return mCryptographer.encodeToBytes(mPayload, ALIAS, 0);
+    }
+
+    @Benchmark
+    public byte[] decodeToBytes() throws Exception {
+        return mCryptographer.decodeToBytes(mEncoded, ALIAS);
+    }
+
+    @Benchmark
+    public String encode() throws Exception {
+        return mCryptographer.encode(mText, ALIAS, 0);
+    }
+
+    @Benchmark
+    public String decode() throws Exception {
+        return mCryptographer.decode(mEncodedText, ALIAS);
+    }
+
+    @Benchmark
+    public byte[] encodeWithOperation() throws Exception {
+        CryptoOperation operation = mCryptographer.newOperation(mPayload, Purpose.ENCODE, ALIAS);
+        Cipher cipher = operation.getCryptoObject().getCipher();
+        return mCryptographer.encodeToBytes(operation, cipher);
+    }
+}
@@ -0,0 +1,101 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.util.Base64;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization format without any cipher work: container parsing and writing,
+ * {@link AesData} parsing of the container and of the legacy separator format, and the Base64 layer on top.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainerBenchmark {
+
+    private static final String ALIAS = "benchmark-container";
+    private static final String LEGACY_SEPARATOR = "-SEPARATOR-";
+
+    @Param({"32", "1024", "65536"})
+    private int mPayloadSize;
+
+    private byte[] mIv;
+    private byte[] mCiphertext;
+    private byte[] mContainer;
+    private String mContainerText;
+    private String mLegacyText;
+    private final CipherContainer mReusableContainer = new CipherContainer();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mIv = new byte[16];
+        random.nextBytes(mIv);
+        // PKCS7 padded size of the payload
+        mCiphertext = new byte[(mPayloadSize / 16 + 1) * 16];
+        random.nextBytes(mCiphertext);
+
+        mContainer = AesData.makeContainer(ALIAS, mCiphertext, mIv);
+        mContainerText = Base64.encodeToString(mContainer, Base64.NO_WRAP);
+        mLegacyText = Base64.encodeToString(mCiphertext, Base64.NO_WRAP) + LEGACY_SEPARATOR + Base64.encodeToString(mIv, Base64.NO_WRAP);
+    }
+
+    @Benchmark
+    public byte[] makeContainer() {
+        return AesData.makeContainer(ALIAS, mCiphertext, mIv);
+    }
+
+    @Benchmark
+    public CipherContainer parse() {
+        return CipherContainer.parse(mContainer);
+    }
+
+    @Benchmark
+    public CipherContainer readReused() {
+        mReusableContainer.read(mContainer, 0, mContainer.length);
+        return mReusableContainer;
+    }
+
+    @Benchmark
+    public AesData parseBytes() {
+        return new AesData(Purpose.DECODE, mContainer, ALIAS);
+    }
+
+    @Benchmark
+    public AesData parseText() {
+        return new AesData(Purpose.DECODE, mContainerText, ALIAS);
+    }
+
+    @Benchmark
+    public AesData parseLegacyText() {
+        return new AesData(Purpose.DECODE, mLegacyText, ALIAS);
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64.encodeToString(mContainer, Base64.NO_WRAP);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.decode(mContainerText, Base64.NO_WRAP);
+    }
+}
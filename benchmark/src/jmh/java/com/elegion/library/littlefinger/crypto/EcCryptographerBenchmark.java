@@ -0,0 +1,63 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Both directions pay for one P-256 agreement, encoding also for the ephemeral key pair.
+ * Compare with {@link HybridCryptographerBenchmark} at the same sizes: the payload part is the same AES-GCM.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EcCryptographerBenchmark {
+
+    private static final String ALIAS = "benchmark-ec";
+    private static final int AUTH_VALIDITY_SECONDS = 30;
+
+    @Param({"190", "65536", "1048576"})
+    private int mPayloadSize;
+
+    private EcCryptographer mCryptographer;
+    private byte[] mPayload;
+    private byte[] mEncoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        mCryptographer = EcCryptographer.getInstance();
+
+        mPayload = new byte[mPayloadSize];
+        new Random(42).nextBytes(mPayload);
+        mEncoded = mCryptographer.encodeToBytes(mPayload, ALIAS, AUTH_VALIDITY_SECONDS);
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes() throws Exception {
+        return mCryptographer.encodeToBytes(mPayload, ALIAS, AUTH_VALIDITY_SECONDS);
+    }
+
+    @Benchmark
+    public byte[] decodeToBytes() throws Exception {
+        return mCryptographer.decodeToBytes(mEncoded, ALIAS);
+    }
+}
@@ -0,0 +1,98 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of a 4 KB page from an unlocked file, the time should not depend on the file size.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptedFileBenchmark {
+
+    private static final String ALIAS = "benchmark-encrypted-file";
+    private static final int PAGE_SIZE = 4096;
+
+    @Param({"1048576", "67108864"})
+    private int mFileSize;
+
+    private File mDirectory;
+    private File mEncoded;
+    private EncryptedFile mFile;
+    private final ByteBuffer mPage = ByteBuffer.allocate(PAGE_SIZE);
+    private final Random mRandom = new Random(42);
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        StreamCryptographer cryptographer = StreamCryptographer.getInstance();
+
+        mDirectory = Files.createTempDirectory("encrypted-file-benchmark").toFile();
+        File plain = new File(mDirectory, "plain");
+        mEncoded = new File(mDirectory, "encoded");
+
+        byte[] payload = new byte[mFileSize];
+        new Random(42).nextBytes(payload);
+        Files.write(plain.toPath(), payload);
+        try (FileChannel source = new FileInputStream(plain).getChannel();
+             FileChannel destination = new FileOutputStream(mEncoded).getChannel()) {
+            cryptographer.encodeParallel(cryptographer.getEncodeCryptoObject(ALIAS).getCipher(), source, destination);
+        }
+        Files.delete(plain.toPath());
+
+        mFile = EncryptedFile.open(mEncoded, ALIAS);
+        mFile.unlock(mFile.getCryptoObject().getCipher());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mFile.close();
+        Files.deleteIfExists(mEncoded.toPath());
+        Files.deleteIfExists(mDirectory.toPath());
+    }
+
+    @Benchmark
+    public int readRandomPage() throws IOException {
+        mPage.clear();
+        mFile.position(mRandom.nextInt(mFileSize - PAGE_SIZE));
+        return mFile.read(mPage);
+    }
+
+    /**
+     * The page is in the last decrypted segment
+     */
+    @Benchmark
+    public int readCachedPage() throws IOException {
+        mPage.clear();
+        mFile.position(0);
+        return mFile.read(mPage);
+    }
+}
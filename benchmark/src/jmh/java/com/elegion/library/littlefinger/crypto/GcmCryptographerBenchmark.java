@@ -0,0 +1,72 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+/**
+ * Same payloads as {@link AesCryptographerBenchmark}: GCM adds authentication of the payload and the record id
+ * in the same pass, compare the cost with CBC.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GcmCryptographerBenchmark {
+
+    private static final String ALIAS = "benchmark-gcm";
+    private static final String RECORD_ID = "record-42";
+
+    @Param({"32", "1024", "65536"})
+    private int mPayloadSize;
+
+    private GcmCryptographer mCryptographer;
+    private byte[] mPayload;
+    private byte[] mEncoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        mCryptographer = GcmCryptographer.getInstance();
+
+        mPayload = new byte[mPayloadSize];
+        new Random(42).nextBytes(mPayload);
+        mEncoded = mCryptographer.encodeToBytes(mPayload, ALIAS, RECORD_ID, 0);
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes() throws Exception {
+        return mCryptographer.encodeToBytes(mPayload, ALIAS, RECORD_ID, 0);
+    }
+
+    @Benchmark
+    public byte[] decodeToBytes() throws Exception {
+        return mCryptographer.decodeToBytes(mEncoded, ALIAS, RECORD_ID);
+    }
+
+    @Benchmark
+    public byte[] encodeWithOperation() throws Exception {
+        CryptoOperation operation = mCryptographer.newOperation(mPayload, Purpose.ENCODE, ALIAS, RECORD_ID);
+        Cipher cipher = operation.getCryptoObject().getCipher();
+        return mCryptographer.encodeToBytes(operation, cipher);
+    }
+}
@@ -0,0 +1,62 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the RSA operation is fixed, compare with {@link RsaCryptographerBenchmark} at 190 bytes
+ * to see the overhead of the data key, and at larger sizes to see the AES-GCM throughput.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HybridCryptographerBenchmark {
+
+    private static final String ALIAS = "benchmark-hybrid";
+
+    @Param({"190", "65536", "1048576"})
+    private int mPayloadSize;
+
+    private HybridCryptographer mCryptographer;
+    private byte[] mPayload;
+    private byte[] mEncoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        mCryptographer = HybridCryptographer.getInstance();
+
+        mPayload = new byte[mPayloadSize];
+        new Random(42).nextBytes(mPayload);
+        mEncoded = mCryptographer.encodeToBytes(mPayload, ALIAS, 0);
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes() throws Exception {
+        return mCryptographer.encodeToBytes(mPayload, ALIAS, 0);
+    }
+
+    @Benchmark
+    public byte[] decodeToBytes() throws Exception {
+        return mCryptographer.decodeToBytes(mEncoded, ALIAS);
+    }
+}
@@ -0,0 +1,60 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key handle lookups with and without the cache. The software keystore is a map lookup,
+ * so the misses show the overhead of the manager itself rather than the keystore IPC.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyStoreManagerBenchmark {
+
+    private static final String ALIAS = "benchmark-keystore";
+
+    private KeyStoreManager mKeyStoreManager;
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        AesCryptographer.getInstance().prewarm(ALIAS, 0);
+        mKeyStoreManager = KeyStoreManager.getInstance();
+    }
+
+    @Benchmark
+    public Key getKeyCached() throws Exception {
+        return mKeyStoreManager.getSecretKey(ALIAS);
+    }
+
+    @Benchmark
+    public Key getKeyUncached() throws Exception {
+        mKeyStoreManager.invalidateCache();
+        return mKeyStoreManager.getSecretKey(ALIAS);
+    }
+
+    @Benchmark
+    public boolean containsKeyUncached() throws Exception {
+        mKeyStoreManager.invalidateCache();
+        return mKeyStoreManager.containsKey(ALIAS);
+    }
+}
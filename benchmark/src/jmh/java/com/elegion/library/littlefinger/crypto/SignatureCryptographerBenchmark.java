@@ -0,0 +1,83 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch costs one signature plus hashing, compare {@code signBatch} with {@code sign} multiplied by the batch size.
+ * The keystore part of a signature is much slower on a device, so the gap only grows there.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureCryptographerBenchmark {
+
+    private static final String ALIAS = "benchmark-signature";
+    private static final int MESSAGE_SIZE = 256;
+    private static final int AUTH_VALIDITY_SECONDS = 30;
+
+    @Param({"16", "256", "4096"})
+    private int mBatchSize;
+
+    private SignatureCryptographer mCryptographer;
+    private List<byte[]> mMessages;
+    private byte[] mSignature;
+    private byte[] mBatchItemSignature;
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        mCryptographer = SignatureCryptographer.getInstance();
+
+        Random random = new Random(42);
+        mMessages = new ArrayList<>(mBatchSize);
+        for (int i = 0; i < mBatchSize; i++) {
+            byte[] message = new byte[MESSAGE_SIZE];
+            random.nextBytes(message);
+            mMessages.add(message);
+        }
+        mSignature = mCryptographer.sign(mMessages.get(0), ALIAS, AUTH_VALIDITY_SECONDS);
+        mBatchItemSignature = mCryptographer.signBatch(mMessages, ALIAS, AUTH_VALIDITY_SECONDS).get(0);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        return mCryptographer.sign(mMessages.get(0), ALIAS, AUTH_VALIDITY_SECONDS);
+    }
+
+    @Benchmark
+    public List<byte[]> signBatch() throws Exception {
+        return mCryptographer.signBatch(mMessages, ALIAS, AUTH_VALIDITY_SECONDS);
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return mCryptographer.verify(mMessages.get(0), mSignature, ALIAS);
+    }
+
+    @Benchmark
+    public boolean verifyBatchItem() throws Exception {
+        return mCryptographer.verify(mMessages.get(0), mBatchItemSignature, ALIAS);
+    }
+}
@@ -0,0 +1,112 @@
+package com.elegion.library.littlefinger.crypto;
+
+import com.elegion.library.littlefinger.benchmark.SoftwareKeyStoreProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential and parallel processing of the same file, both produce the same format.
+ * Wrap ciphers are created in every invocation, as after a fingerprint authentication.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamCryptographerBenchmark {
+
+    private static final String ALIAS = "benchmark-stream";
+
+    @Param({"1048576", "16777216"})
+    private int mPayloadSize;
+
+    private StreamCryptographer mCryptographer;
+    private File mDirectory;
+    private File mPlain;
+    private File mEncoded;
+    private File mOutput;
+
+    @Setup
+    public void setUp() throws Exception {
+        SoftwareKeyStoreProvider.install();
+        mCryptographer = StreamCryptographer.getInstance();
+
+        mDirectory = Files.createTempDirectory("stream-benchmark").toFile();
+        mPlain = new File(mDirectory, "plain");
+        mEncoded = new File(mDirectory, "encoded");
+        mOutput = new File(mDirectory, "output");
+
+        byte[] payload = new byte[mPayloadSize];
+        new Random(42).nextBytes(payload);
+        Files.write(mPlain.toPath(), payload);
+        try (FileChannel source = new FileInputStream(mPlain).getChannel();
+             FileChannel destination = new FileOutputStream(mEncoded).getChannel()) {
+            mCryptographer.encodeParallel(mCryptographer.getEncodeCryptoObject(ALIAS).getCipher(), source, destination);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (File file : new File[]{mPlain, mEncoded, mOutput}) {
+            Files.deleteIfExists(file.toPath());
+        }
+        Files.deleteIfExists(mDirectory.toPath());
+    }
+
+    @Benchmark
+    public long encode() throws Exception {
+        try (FileChannel source = new FileInputStream(mPlain).getChannel();
+             FileChannel destination = new FileOutputStream(mOutput).getChannel()) {
+            return mCryptographer.encode(mCryptographer.getEncodeCryptoObject(ALIAS).getCipher(), source, destination);
+        }
+    }
+
+    @Benchmark
+    public long encodeParallel() throws Exception {
+        try (FileChannel source = new FileInputStream(mPlain).getChannel();
+             FileChannel destination = new FileOutputStream(mOutput).getChannel()) {
+            return mCryptographer.encodeParallel(mCryptographer.getEncodeCryptoObject(ALIAS).getCipher(), source, destination);
+        }
+    }
+
+    @Benchmark
+    public long decode() throws Exception {
+        try (FileChannel source = new FileInputStream(mEncoded).getChannel();
+             FileChannel destination = new FileOutputStream(mOutput).getChannel()) {
+            StreamHeader header = mCryptographer.readHeader(source);
+            return mCryptographer.decode(mCryptographer.getDecodeCryptoObject(ALIAS, header).getCipher(), header, source, destination);
+        }
+    }
+
+    @Benchmark
+    public long decodeParallel() throws Exception {
+        try (FileChannel source = new FileInputStream(mEncoded).getChannel();
+             FileChannel destination = new FileOutputStream(mOutput).getChannel()) {
+            StreamHeader header = mCryptographer.readHeader(source);
+            return mCryptographer.decodeParallel(mCryptographer.getDecodeCryptoObject(ALIAS, header).getCipher(), header, source, destination);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.elegion.library.littlefinger.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log of {@code mRecordCount} container-sized records: a write must not depend on the number of records,
+ * {@code open} is the startup cost of the whole log.
+ *
+ * @author Azret Magometov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentLogBenchmark {
+
+    private static final String ALIAS = "benchmark-log";
+    private static final int VALUE_SIZE = 300;
+
+    @Param({"1000", "10000", "50000"})
+    private int mRecordCount;
+
+    private File mDirectory;
+    private SegmentLog mLog;
+    private byte[] mValue;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("segment-log").toFile();
+        mLog = SegmentLog.open(mDirectory);
+        mValue = new byte[VALUE_SIZE];
+        new Random(42).nextBytes(mValue);
+        for (int i = 0; i < mRecordCount; i++) {
+            mLog.put(ALIAS, String.valueOf(i), mValue);
+        }
+        mLog.sync();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mLog.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    /**
+     * Overwrites the records in a loop, superseded segments are compacted in the background meanwhile
+     */
+    @Benchmark
+    public void put() throws IOException {
+        mLog.put(ALIAS, String.valueOf(mNext++ % mRecordCount), mValue);
+    }
+
+    @Benchmark
+    public byte[] get() throws IOException {
+        return mLog.get(ALIAS, String.valueOf(mNext++ % mRecordCount));
+    }
+
+    @Benchmark
+    public int open() throws IOException {
+        try (SegmentLog log = SegmentLog.open(mDirectory)) {
+            return log.size();
+        }
+    }
+}
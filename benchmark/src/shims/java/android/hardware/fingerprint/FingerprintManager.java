@@ -0,0 +1,41 @@
+package android.hardware.fingerprint;
+
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+
+/**
+ * JVM shim, only {@link CryptoObject} is used by the crypto package
+ */
+public class FingerprintManager {
+
+    public static final class CryptoObject {
+
+        private final Object mCrypto;
+
+        public CryptoObject(Signature signature) {
+            mCrypto = signature;
+        }
+
+        public CryptoObject(Cipher cipher) {
+            mCrypto = cipher;
+        }
+
+        public CryptoObject(Mac mac) {
+            mCrypto = mac;
+        }
+
+        public Signature getSignature() {
+            return mCrypto instanceof Signature ? (Signature) mCrypto : null;
+        }
+
+        public Cipher getCipher() {
+            return mCrypto instanceof Cipher ? (Cipher) mCrypto : null;
+        }
+
+        public Mac getMac() {
+            return mCrypto instanceof Mac ? (Mac) mCrypto : null;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * JVM shim, the benchmarks run as the latest supported API level
+ */
+public class Build {
+
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.P;
+    }
+
+    public static class VERSION_CODES {
+        public static final int M = 23;
+        public static final int N = 24;
+        public static final int O = 26;
+        public static final int P = 28;
+        public static final int S = 31;
+    }
+}
@@ -0,0 +1,123 @@
+package android.security.keystore;
+
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * JVM shim keeping the parameters the software keystore needs
+ */
+public final class KeyGenParameterSpec implements AlgorithmParameterSpec {
+
+    private final String mKeystoreAlias;
+    private final int mPurposes;
+    private final int mKeySize;
+    private final AlgorithmParameterSpec mSpec;
+    private final String[] mBlockModes;
+    private final boolean mUserAuthenticationRequired;
+    private final int mUserAuthenticationValidityDurationSeconds;
+
+    private KeyGenParameterSpec(Builder builder) {
+        mKeystoreAlias = builder.mKeystoreAlias;
+        mPurposes = builder.mPurposes;
+        mKeySize = builder.mKeySize;
+        mSpec = builder.mSpec;
+        mBlockModes = builder.mBlockModes;
+        mUserAuthenticationRequired = builder.mUserAuthenticationRequired;
+        mUserAuthenticationValidityDurationSeconds = builder.mUserAuthenticationValidityDurationSeconds;
+    }
+
+    public String getKeystoreAlias() {
+        return mKeystoreAlias;
+    }
+
+    public int getPurposes() {
+        return mPurposes;
+    }
+
+    /**
+     * @return -1 if the key size isn't set
+     */
+    public int getKeySize() {
+        return mKeySize;
+    }
+
+    public AlgorithmParameterSpec getAlgorithmParameterSpec() {
+        return mSpec;
+    }
+
+    public String[] getBlockModes() {
+        return mBlockModes.clone();
+    }
+
+    public boolean isUserAuthenticationRequired() {
+        return mUserAuthenticationRequired;
+    }
+
+    public int getUserAuthenticationValidityDurationSeconds() {
+        return mUserAuthenticationValidityDurationSeconds;
+    }
+
+    public static final class Builder {
+
+        private final String mKeystoreAlias;
+        private final int mPurposes;
+        private int mKeySize = -1;
+        private AlgorithmParameterSpec mSpec;
+        private String[] mBlockModes = new String[0];
+        private boolean mUserAuthenticationRequired;
+        private int mUserAuthenticationValidityDurationSeconds = -1;
+
+        public Builder(String keystoreAlias, int purposes) {
+            mKeystoreAlias = keystoreAlias;
+            mPurposes = purposes;
+        }
+
+        public Builder setKeySize(int keySize) {
+            mKeySize = keySize;
+            return this;
+        }
+
+        public Builder setAlgorithmParameterSpec(AlgorithmParameterSpec spec) {
+            mSpec = spec;
+            return this;
+        }
+
+        public Builder setBlockModes(String... blockModes) {
+            mBlockModes = blockModes.clone();
+            return this;
+        }
+
+        public Builder setEncryptionPaddings(String... paddings) {
+            return this;
+        }
+
+        public Builder setSignaturePaddings(String... paddings) {
+            return this;
+        }
+
+        public Builder setDigests(String... digests) {
+            return this;
+        }
+
+        public Builder setRandomizedEncryptionRequired(boolean required) {
+            return this;
+        }
+
+        public Builder setUserAuthenticationRequired(boolean required) {
+            mUserAuthenticationRequired = required;
+            return this;
+        }
+
+        public Builder setUserAuthenticationValidityDurationSeconds(int seconds) {
+            mUserAuthenticationValidityDurationSeconds = seconds;
+            return this;
+        }
+
+        public Builder setInvalidatedByBiometricEnrollment(boolean invalidate) {
+            return this;
+        }
+
+        public KeyGenParameterSpec build() {
+            return new KeyGenParameterSpec(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package android.security.keystore;
+
+public abstract class KeyProperties {
+
+    public static final int PURPOSE_ENCRYPT = 1;
+    public static final int PURPOSE_DECRYPT = 1 << 1;
+    public static final int PURPOSE_SIGN = 1 << 2;
+    public static final int PURPOSE_VERIFY = 1 << 3;
+    public static final int PURPOSE_AGREE_KEY = 1 << 6;
+
+    public static final String KEY_ALGORITHM_RSA = "RSA";
+    public static final String KEY_ALGORITHM_EC = "EC";
+    public static final String KEY_ALGORITHM_AES = "AES";
+    public static final String KEY_ALGORITHM_HMAC_SHA256 = "HmacSHA256";
+
+    public static final String BLOCK_MODE_ECB = "ECB";
+    public static final String BLOCK_MODE_CBC = "CBC";
+    public static final String BLOCK_MODE_CTR = "CTR";
+    public static final String BLOCK_MODE_GCM = "GCM";
+
+    public static final String ENCRYPTION_PADDING_NONE = "NoPadding";
+    public static final String ENCRYPTION_PADDING_PKCS7 = "PKCS7Padding";
+    public static final String ENCRYPTION_PADDING_RSA_PKCS1 = "PKCS1Padding";
+    public static final String ENCRYPTION_PADDING_RSA_OAEP = "OAEPPadding";
+
+    public static final String SIGNATURE_PADDING_RSA_PKCS1 = "PKCS1";
+    public static final String SIGNATURE_PADDING_RSA_PSS = "PSS";
+
+    public static final String DIGEST_NONE = "NONE";
+    public static final String DIGEST_SHA1 = "SHA-1";
+    public static final String DIGEST_SHA256 = "SHA-256";
+    public static final String DIGEST_SHA512 = "SHA-512";
+
+    private KeyProperties() {
+    }
+}
@@ -0,0 +1,17 @@
+package android.text;
+
+/**
+ * JVM shim
+ */
+public final class TextUtils {
+
+    public static boolean equals(CharSequence a, CharSequence b) {
+        if (a == b) {
+            return true;
+        }
+        return a != null && b != null && a.toString().equals(b.toString());
+    }
+
+    private TextUtils() {
+    }
+}
@@ -0,0 +1,30 @@
+package android.util;
+
+/**
+ * JVM shim over {@link java.util.Base64}, only the flags used by the library are supported
+ */
+public class Base64 {
+
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+
+    public static String encodeToString(byte[] input, int flags) {
+        java.util.Base64.Encoder encoder = (flags & NO_WRAP) != 0 ? java.util.Base64.getEncoder() : java.util.Base64.getMimeEncoder();
+        if ((flags & NO_PADDING) != 0) {
+            encoder = encoder.withoutPadding();
+        }
+        return encoder.encodeToString(input);
+    }
+
+    public static byte[] decode(String input, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(input);
+    }
+
+    public static byte[] decode(byte[] input, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(input);
+    }
+
+    private Base64() {
+    }
+}
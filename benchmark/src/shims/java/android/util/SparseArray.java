@@ -0,0 +1,28 @@
+package android.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM shim backed by a map, only the methods the library uses
+ */
+public class SparseArray<E> {
+
+    private final Map<Integer, E> mValues = new HashMap<>();
+
+    public E get(int key) {
+        return mValues.get(key);
+    }
+
+    public void put(int key, E value) {
+        mValues.put(key, value);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    public void clear() {
+        mValues.clear();
+    }
+}
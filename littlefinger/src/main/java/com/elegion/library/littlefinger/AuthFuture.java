@@ -0,0 +1,187 @@
+package com.elegion.library.littlefinger;
+
+import com.elegion.library.littlefinger.fingerprint.AuthRequest;
+import com.elegion.library.littlefinger.fingerprint.AuthResult;
+import com.elegion.library.littlefinger.fingerprint.Callback;
+import com.elegion.library.littlefinger.fingerprint.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Final result of a {@link LittleFinger} operation.
+ * {@link State#HELP} and {@link State#FAIL} are not final, the future completes with the next result after them.
+ * Failures are returned as {@link State#EXCEPTION} results, so {@link #get()} never throws {@link java.util.concurrent.ExecutionException}.
+ * <p>
+ * Don't block the main thread with {@link #get()}: fingerprint callbacks are delivered there.
+ *
+ * @author Azret Magometov
+ */
+
+public final class AuthFuture implements Future<AuthResult> {
+
+    private final Executor mListenerExecutor;
+    private final Callback mCallback = new FutureCallback();
+    private final List<Callback> mListeners = new ArrayList<>();
+    private final List<AuthRequest> mRequests = new ArrayList<>();
+    private AuthResult mResult;
+    private boolean mCancelled;
+
+    AuthFuture(@NonNull Executor listenerExecutor) {
+        mListenerExecutor = listenerExecutor;
+    }
+
+    /**
+     * @return the future completed by the callback, null if it isn't a callback of a future
+     */
+    @Nullable
+    static AuthFuture of(@Nullable Callback callback) {
+        return callback instanceof FutureCallback ? ((FutureCallback) callback).getFuture() : null;
+    }
+
+    /**
+     * Listener is called once with the final result on the callback executor of {@link LittleFinger},
+     * right away if the future is already done. It isn't called if the future was cancelled.
+     */
+    public void addListener(@NonNull Callback listener) {
+        AuthResult result;
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            if (mResult == null) {
+                mListeners.add(listener);
+                return;
+            }
+            result = mResult;
+        }
+        notifyListener(listener, result);
+    }
+
+    /**
+     * Cancels the authentication of this operation, an operation still waiting for the crypto executor isn't started
+     * and one still preparing its key isn't queued for the sensor. Crypto work that already got the touch is finished,
+     * but its result isn't delivered. Authentications of other operations go on.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        List<AuthRequest> requests;
+        synchronized (this) {
+            if (mResult != null || mCancelled) {
+                return false;
+            }
+            mCancelled = true;
+            mListeners.clear();
+            requests = new ArrayList<>(mRequests);
+            mRequests.clear();
+            notifyAll();
+        }
+        for (AuthRequest request : requests) {
+            request.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Binds the authentication started by the operation to the future, it is canceled right away if the future is
+     */
+    void attach(@NonNull AuthRequest request) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mRequests.add(request);
+                return;
+            }
+        }
+        request.cancel();
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mResult != null || mCancelled;
+    }
+
+    @Override
+    public synchronized AuthResult get() throws InterruptedException {
+        while (!isDone()) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized AuthResult get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isDone()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    /**
+     * Callback to pass to the operation, it ignores intermediate results
+     */
+    @NonNull
+    Callback asCallback() {
+        return mCallback;
+    }
+
+    private void complete(@NonNull AuthResult result) {
+        if (result.getState().equals(State.HELP) || result.getState().equals(State.FAIL)) {
+            return;
+        }
+        List<Callback> listeners;
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            mResult = result;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+            mRequests.clear();
+            notifyAll();
+        }
+        for (Callback listener : listeners) {
+            notifyListener(listener, result);
+        }
+    }
+
+    private void notifyListener(final Callback listener, final AuthResult result) {
+        mListenerExecutor.execute(() -> listener.onCompleted(result));
+    }
+
+    private final class FutureCallback implements Callback {
+
+        @Override
+        public void onCompleted(@NonNull AuthResult result) {
+            complete(result);
+        }
+
+        private AuthFuture getFuture() {
+            return AuthFuture.this;
+        }
+    }
+
+    private AuthResult getResult() {
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+        return mResult;
+    }
+}
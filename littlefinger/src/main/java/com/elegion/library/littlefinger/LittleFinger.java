@@ -2,22 +2,65 @@ package com.elegion.library.littlefinger;
 
 import android.content.Context;
 import android.hardware.fingerprint.FingerprintManager;
+import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
-import com.elegion.library.littlefinger.crypto.AesCryptographer;
 import com.elegion.library.littlefinger.crypto.CryptoAlgorithm;
+import com.elegion.library.littlefinger.crypto.Cryptographer;
+import com.elegion.library.littlefinger.crypto.Cryptographers;
+import com.elegion.library.littlefinger.crypto.EncryptedFile;
+import com.elegion.library.littlefinger.crypto.GcmCryptographer;
+import com.elegion.library.littlefinger.crypto.KeyCacheStats;
+import com.elegion.library.littlefinger.crypto.KeySpec;
+import com.elegion.library.littlefinger.crypto.KeyStoreBackend;
+import com.elegion.library.littlefinger.crypto.OperationCryptographer;
+import com.elegion.library.littlefinger.crypto.PrewarmCallback;
+import com.elegion.library.littlefinger.crypto.PrivateKeyCryptographer;
 import com.elegion.library.littlefinger.crypto.Purpose;
 import com.elegion.library.littlefinger.crypto.RsaCryptographer;
+import com.elegion.library.littlefinger.crypto.SignatureCryptographer;
+import com.elegion.library.littlefinger.fingerprint.AuthRequest;
 import com.elegion.library.littlefinger.fingerprint.AuthResult;
+import com.elegion.library.littlefinger.fingerprint.AuthSession;
+import com.elegion.library.littlefinger.fingerprint.BiometricAuthenticator;
 import com.elegion.library.littlefinger.fingerprint.Callback;
 import com.elegion.library.littlefinger.fingerprint.CancelCallback;
 import com.elegion.library.littlefinger.fingerprint.FingerprintManagerHelper;
+import com.elegion.library.littlefinger.fingerprint.SensorStateListener;
 import com.elegion.library.littlefinger.fingerprint.State;
+import com.elegion.library.littlefinger.metrics.MetricsListener;
+import com.elegion.library.littlefinger.metrics.OperationTrace;
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
 
-import javax.crypto.Cipher;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 
 import static com.elegion.library.littlefinger.crypto.Purpose.DECODE;
 import static com.elegion.library.littlefinger.crypto.Purpose.ENCODE;
@@ -28,10 +71,86 @@ import static com.elegion.library.littlefinger.crypto.Purpose.ENCODE;
 
 public class LittleFinger {
 
-    private FingerprintManagerHelper mFingerprintManagerHelper;
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+    private static final Object SESSION_AUTHENTICATION = new Object();
+    private static final ThreadLocal<AuthFuture> CURRENT_FUTURE = new ThreadLocal<>();
+    private static final String CANCELED_MESSAGE = "Authentication was canceled";
 
+    private final FingerprintManagerHelper mFingerprintManagerHelper;
+    private final Executor mCryptoExecutor;
+    private final Executor mCallbackExecutor;
+    private final MetricsListener mMetricsListener;
+    private volatile int mAuthValiditySeconds = 0;
+    private volatile AuthSession mAuthSession = new AuthSession(0);
+    private final PreparedCryptoObjects mPreparedCryptoObjects;
+    private final KeyStoreBackend mKeyStoreBackend;
+    private Cryptographers mCryptographers;
+    private final AtomicBoolean mReleased = new AtomicBoolean();
+    private final List<SensorStateListener> mSensorStateListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Crypto work and callbacks run in the calling thread and in the fingerprint callback thread,
+     * use {@link Builder} to move them to executors
+     */
     public LittleFinger(@NonNull Context context) {
-        mFingerprintManagerHelper = FingerprintManagerHelper.getInstance(context);
+        this(context, null, null, DIRECT_EXECUTOR, DIRECT_EXECUTOR, null);
+    }
+
+    /**
+     * @param authenticator null to use the sensor queue shared by the instances of the app
+     */
+    private LittleFinger(@NonNull Context context, @Nullable BiometricAuthenticator authenticator,
+                         @Nullable KeyStoreBackend keyStoreBackend, @NonNull Executor cryptoExecutor,
+                         @NonNull Executor callbackExecutor, @Nullable MetricsListener metricsListener) {
+        mFingerprintManagerHelper = authenticator == null
+                ? FingerprintManagerHelper.getInstance(context)
+                : FingerprintManagerHelper.getInstance(context, authenticator);
+        mKeyStoreBackend = keyStoreBackend;
+        mCryptoExecutor = cryptoExecutor;
+        mCallbackExecutor = callbackExecutor;
+        mMetricsListener = metricsListener;
+        mPreparedCryptoObjects = new PreparedCryptoObjects(getBackgroundExecutor(), new Handler(Looper.getMainLooper())::postDelayed);
+        if (metricsListener != null) {
+            Tracer.enable();
+        }
+    }
+
+    /**
+     * Turns on the session mode: keys generated afterwards stay usable for the given time after any successful authentication.
+     * Operations with such keys show a plain prompt and run without {@link FingerprintManager.CryptoObject},
+     * which is what lets {@link #decodeAll(Map, CryptoAlgorithm, Callback)} unlock many keys with one touch.
+     * While the session is active operations run immediately without the prompt.
+     * Keys that already exist keep their settings.
+     *
+     * @param seconds 0 (default) requires authentication for every operation
+     */
+    public void setAuthValidityDuration(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Validity duration can't be negative");
+        }
+        mAuthValiditySeconds = seconds;
+        mAuthSession = new AuthSession(seconds);
+        // operations of the session mode don't use crypto objects
+        mPreparedCryptoObjects.releaseAll();
+    }
+
+    /**
+     * @return true if operations with time-bound keys can run now without the prompt
+     */
+    public boolean isSessionActive() {
+        return mAuthSession.isActive();
+    }
+
+    /**
+     * Forgets the current session, the next operation shows the prompt.
+     * Keys themselves stay unlocked by the keystore until their validity window is over.
+     */
+    public void endSession() {
+        mAuthSession.invalidate();
+    }
+
+    public int getAuthValidityDuration() {
+        return mAuthValiditySeconds;
     }
 
     public boolean isFingerprintSupported() {
@@ -39,127 +158,968 @@ public class LittleFinger {
     }
 
     public boolean isReadyToUse() {
-        return mFingerprintManagerHelper.getSensorState().getState().equals(State.READY_TO_USE);
+        long start = Tracer.start();
+        State state = mFingerprintManagerHelper.getSensorState().getState();
+        Tracer.end(Phase.SENSOR_CHECK, start);
+        if (state.equals(State.NO_ENROLLED_FP) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // enrolled fingerprints were removed, cached key handles may belong to invalidated keys
+            getCryptographers().getKeyStoreManager().invalidateCache();
+        }
+        return state.equals(State.READY_TO_USE);
     }
 
+    /**
+     * @return counters of the keystore key handle cache, null if keystore isn't supported
+     */
+    @Nullable
+    public KeyCacheStats getKeyCacheStats() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return getCryptographers().getKeyStoreManager().getCacheStats();
+        }
+        return null;
+    }
+
+    /**
+     * Generates missing keys in the background, so the first operation with them only initializes the cipher.
+     * Keys get the current {@link #getAuthValidityDuration()}, existing keys are left untouched,
+     * so it is safe to call on every app start.
+     * Work runs on the crypto executor, or on {@link AsyncTask#THREAD_POOL_EXECUTOR} if this instance has none.
+     *
+     * @param callback gets progress and timings on the callback executor, may be null
+     */
+    public void prewarm(@NonNull Collection<KeySpec> keySpecs, @Nullable PrewarmCallback callback) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            if (callback != null) {
+                mCallbackExecutor.execute(() -> callback.onCompleted(0, 0));
+            }
+            return;
+        }
+        final List<KeySpec> specs = new ArrayList<>(keySpecs);
+        final int authValiditySeconds = mAuthValiditySeconds;
+        getBackgroundExecutor().execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            int generatedCount = 0;
+            for (KeySpec spec : specs) {
+                long keyStart = SystemClock.elapsedRealtime();
+                boolean generated = false;
+                Exception error = null;
+                try {
+                    Cryptographer cryptographer = getCryptographer(spec.getAlgorithm());
+                    if (cryptographer == null) {
+                        throw new NoSuchAlgorithmException(spec.getAlgorithm() + " isn't supported on this device");
+                    }
+                    generated = cryptographer.prewarm(spec.getAlias(), authValiditySeconds);
+                } catch (Exception e) {
+                    error = e;
+                }
+                if (generated) {
+                    generatedCount++;
+                }
+                if (callback != null) {
+                    final boolean keyGenerated = generated;
+                    final Exception keyError = error;
+                    final long keyElapsed = SystemClock.elapsedRealtime() - keyStart;
+                    mCallbackExecutor.execute(() -> callback.onKeyReady(spec, keyGenerated, keyElapsed, keyError));
+                }
+            }
+            if (callback != null) {
+                final int total = generatedCount;
+                final long elapsed = SystemClock.elapsedRealtime() - start;
+                mCallbackExecutor.execute(() -> callback.onCompleted(total, elapsed));
+            }
+        });
+    }
+
+    /**
+     * Initializes the crypto object of the next operation with the key in the background, e.g. when the login screen opens,
+     * so the prompt is shown right away and the touch is followed only by the cipher work.
+     * The object is used by one operation and the next one is prepared right after it, until {@link #releasePrepared(String, CryptoAlgorithm)}.
+     * An object that waited for longer than a minute isn't used, the operation initializes its own.
+     * <p>
+     * Only ciphers that don't depend on the input can be prepared: decoding for {@link CryptoAlgorithm#RSA} and
+     * {@link CryptoAlgorithm#HYBRID}, encoding for {@link CryptoAlgorithm#AES}, {@link CryptoAlgorithm#ENVELOPE}
+     * (including files) and {@link CryptoAlgorithm#GCM}. Other keys, and all keys in the session mode, are only prewarmed.
+     */
+    public void prepare(@NonNull String alias, @NonNull CryptoAlgorithm algorithm) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || getCryptographer(algorithm) == null) {
+            return;
+        }
+        KeySpec spec = new KeySpec(alias, algorithm);
+        PreparedCryptoObjects.Factory factory = mAuthValiditySeconds > 0 ? null : getPreparedFactory(spec);
+        if (factory == null) {
+            prewarm(Collections.singletonList(spec), null);
+        } else {
+            mPreparedCryptoObjects.prepare(spec, factory);
+        }
+    }
+
+    public void releasePrepared(@NonNull String alias, @NonNull CryptoAlgorithm algorithm) {
+        mPreparedCryptoObjects.release(new KeySpec(alias, algorithm));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    @Nullable
+    private PreparedCryptoObjects.Factory getPreparedFactory(KeySpec spec) {
+        final String alias = spec.getAlias();
+        switch (spec.getAlgorithm()) {
+            case RSA:
+            case HYBRID:
+                final PrivateKeyCryptographer privateKeyCryptographer = (PrivateKeyCryptographer) getCryptographer(spec.getAlgorithm());
+                return () -> privateKeyCryptographer.getCryptoObject(alias);
+            case AES:
+            case ENVELOPE:
+            case GCM:
+                final OperationCryptographer operationCryptographer = (OperationCryptographer) getCryptographer(spec.getAlgorithm());
+                return () -> operationCryptographer.getEncodeCryptoObject(alias);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return prepared object that is used by no other operation, null if there is none
+     */
+    @Nullable
+    private FingerprintManager.CryptoObject takePrepared(@Nullable String key, CryptoAlgorithm algorithm) {
+        return key == null ? null : mPreparedCryptoObjects.take(new KeySpec(key, algorithm));
+    }
+
+    private Executor getBackgroundExecutor() {
+        return mCryptoExecutor == DIRECT_EXECUTOR ? AsyncTask.THREAD_POOL_EXECUTOR : mCryptoExecutor;
+    }
+
+    /**
+     * @return cached snapshot of the sensor state, it is shared by the instances of the app and refreshed at most once a second
+     */
     public AuthResult getSensorState() {
         return mFingerprintManagerHelper.getSensorState();
     }
 
+    /**
+     * Makes the next check query the sensor again, call it when the app returns to the foreground
+     * as fingerprints or the lock screen could have been changed in the settings
+     */
+    public void invalidateSensorState() {
+        mFingerprintManagerHelper.invalidateSensorState();
+    }
+
+    /**
+     * Listener is called in the thread that noticed the change, remove it to stop listening to the system broadcasts
+     */
+    public void addSensorStateListener(@NonNull SensorStateListener listener) {
+        mSensorStateListeners.add(listener);
+        mFingerprintManagerHelper.addSensorStateListener(listener);
+    }
+
+    public void removeSensorStateListener(@NonNull SensorStateListener listener) {
+        mSensorStateListeners.remove(listener);
+        mFingerprintManagerHelper.removeSensorStateListener(listener);
+    }
+
     public void authenticate(Callback callback) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            mFingerprintManagerHelper.startAuth(null, callback);
-        } else {
+        authenticate(AuthRequest.PRIORITY_DEFAULT, callback);
+    }
+
+    /**
+     * Authentications are queued, the ones with a higher priority are shown first.
+     * A plain authentication joins the one that is already running or queued, the result is delivered to both.
+     */
+    public void authenticate(int priority, Callback callback) {
+        execute("authenticate", null, callback, cb -> {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                startAuth(null, priority, result -> {
+                    if (result.getState().equals(State.SUCCESS)) {
+                        mAuthSession.onAuthenticated();
+                    }
+                    cb.onCompleted(result);
+                });
+            } else {
+                cb.onCompleted(AuthResult.getNotSupportedResult());
+            }
+        });
+    }
+
+    @NonNull
+    public AuthFuture authenticate() {
+        AuthFuture future = newFuture();
+        authenticate(future.asCallback());
+        return future;
+    }
+
+    public void encode(String textToEncode, String key, CryptoAlgorithm algorithm, Callback callback) {
+        execute("encode", algorithm, callback, cb -> {
+            performCryptoOperation(textToEncode, null, key, algorithm, ENCODE, cb);
+        });
+    }
+
+    public void decode(final String textToDecode, String key, CryptoAlgorithm algorithm, final Callback callback) {
+        execute("decode", algorithm, callback, cb -> {
+            performCryptoOperation(textToDecode, null, key, algorithm, DECODE, cb);
+        });
+    }
+
+    /**
+     * Binary variant of {@link #encode(String, String, CryptoAlgorithm, Callback)},
+     * the result is a {@link com.elegion.library.littlefinger.crypto.CipherContainer} in {@link AuthResult#getBytes()}
+     */
+    public void encode(@NonNull byte[] dataToEncode, String key, CryptoAlgorithm algorithm, Callback callback) {
+        execute("encode", algorithm, callback, cb -> {
+            performCryptoOperation(null, dataToEncode, key, algorithm, ENCODE, cb);
+        });
+    }
+
+    public void decode(@NonNull byte[] dataToDecode, String key, CryptoAlgorithm algorithm, Callback callback) {
+        execute("decode", algorithm, callback, cb -> {
+            performCryptoOperation(null, dataToDecode, key, algorithm, DECODE, cb);
+        });
+    }
+
+    /**
+     * Encodes with {@link CryptoAlgorithm#GCM} binding the ciphertext to the record id,
+     * it decodes only with the same alias and record id
+     */
+    public void encode(@NonNull byte[] dataToEncode, String key, @NonNull String recordId, Callback callback) {
+        execute("encode", CryptoAlgorithm.GCM, callback, cb -> {
+            performRecordOperation(ENCODE, dataToEncode, key, recordId, cb);
+        });
+    }
+
+    public void decode(@NonNull byte[] dataToDecode, String key, @NonNull String recordId, Callback callback) {
+        execute("decode", CryptoAlgorithm.GCM, callback, cb -> {
+            performRecordOperation(DECODE, dataToDecode, key, recordId, cb);
+        });
+    }
+
+    /**
+     * Variants returning {@link AuthFuture} complete with the final result,
+     * intermediate {@link State#HELP} and {@link State#FAIL} results are skipped
+     */
+    @NonNull
+    public AuthFuture encode(String textToEncode, String key, CryptoAlgorithm algorithm) {
+        AuthFuture future = newFuture();
+        encode(textToEncode, key, algorithm, future.asCallback());
+        return future;
+    }
+
+    @NonNull
+    public AuthFuture decode(String textToDecode, String key, CryptoAlgorithm algorithm) {
+        AuthFuture future = newFuture();
+        decode(textToDecode, key, algorithm, future.asCallback());
+        return future;
+    }
+
+    @NonNull
+    public AuthFuture encode(@NonNull byte[] dataToEncode, String key, CryptoAlgorithm algorithm) {
+        AuthFuture future = newFuture();
+        encode(dataToEncode, key, algorithm, future.asCallback());
+        return future;
+    }
+
+    @NonNull
+    public AuthFuture decode(@NonNull byte[] dataToDecode, String key, CryptoAlgorithm algorithm) {
+        AuthFuture future = newFuture();
+        decode(dataToDecode, key, algorithm, future.asCallback());
+        return future;
+    }
+
+    @NonNull
+    public AuthFuture encode(@NonNull byte[] dataToEncode, String key, @NonNull String recordId) {
+        AuthFuture future = newFuture();
+        encode(dataToEncode, key, recordId, future.asCallback());
+        return future;
+    }
+
+    @NonNull
+    public AuthFuture decode(@NonNull byte[] dataToDecode, String key, @NonNull String recordId) {
+        AuthFuture future = newFuture();
+        decode(dataToDecode, key, recordId, future.asCallback());
+        return future;
+    }
+
+    /**
+     * Encodes all strings with the public key, no authentication is needed.
+     * The initialized cipher is reused for the whole batch.
+     *
+     * @param callback gets {@link AuthResult#getItems()} keyed by the position in the input list
+     */
+    public void encodeAll(@NonNull List<String> textsToEncode, String key, Callback callback) {
+        execute("encodeAll", CryptoAlgorithm.RSA, callback, cb -> {
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
+                RsaCryptographer cryptographer = getCryptographers().getRsaCryptographer();
+                Map<String, AuthResult> items = new LinkedHashMap<>();
+                try {
+                    List<String> encoded = cryptographer.encodeAll(textsToEncode, key, mAuthValiditySeconds);
+                    for (int i = 0; i < encoded.size(); i++) {
+                        items.put(String.valueOf(i), AuthResult.getCryptoOperationResult(encoded.get(i)));
+                    }
+                } catch (Exception batchError) {
+                    // e.g. a text longer than an RSA block, the items are encoded one by one to find the failed ones
+                    for (int i = 0; i < textsToEncode.size(); i++) {
+                        try {
+                            items.put(String.valueOf(i), AuthResult.getCryptoOperationResult(cryptographer.encode(textsToEncode.get(i), key, mAuthValiditySeconds)));
+                        } catch (Exception e) {
+                            items.put(String.valueOf(i), AuthResult.getExceptionResult(e));
+                        }
+                    }
+                }
+                cb.onCompleted(AuthResult.getBatchResult(items));
+            } else {
+                cb.onCompleted(AuthResult.getNotSupportedResult());
+            }
+        });
+    }
+
+    /**
+     * Decodes all ciphertexts after a single authentication.
+     * Works for keys generated with {@link #setAuthValidityDuration(int)}, items encoded with
+     * per-operation keys get {@link State#EXCEPTION} in their results.
+     *
+     * @param aliasToCiphertext key alias to the text returned by {@link #encode(String, String, CryptoAlgorithm, Callback)}
+     * @param callback          gets {@link AuthResult#getItems()} with a result per alias
+     */
+    public void decodeAll(@NonNull Map<String, String> aliasToCiphertext, CryptoAlgorithm algorithm, Callback callback) {
+        execute("decodeAll", algorithm, callback, cb -> {
+            if (!isReadyToUse()) {
+                cb.onCompleted(getSensorState());
+                return;
+            }
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                cb.onCompleted(AuthResult.getNotSupportedResult());
+                return;
+            }
+            AuthResult rejection = rejectUnsupported(algorithm);
+            if (rejection != null) {
+                cb.onCompleted(rejection);
+                return;
+            }
+            final Cryptographer cryptographer = getCryptographer(algorithm);
+            performInSession(() -> {
+                Map<String, AuthResult> items = new LinkedHashMap<>();
+                for (Map.Entry<String, String> entry : aliasToCiphertext.entrySet()) {
+                    items.put(entry.getKey(), performAuthenticatedOperation(cryptographer, entry.getValue(), null, entry.getKey(), DECODE));
+                }
+                return AuthResult.getBatchResult(items);
+            }, cb);
+        });
+    }
+
+    /**
+     * Signs the message with the fingerprint-bound ECDSA key of the alias, the DER signature is in {@link AuthResult#getBytes()}.
+     * Signing keys are separate from the encryption ones, don't share their aliases.
+     */
+    public void sign(@NonNull byte[] message, String key, Callback callback) {
+        execute("sign", null, callback, cb -> {
+            performSignOperation(Collections.singletonList(message), false, key, cb);
+        });
+    }
+
+    @NonNull
+    public AuthFuture sign(@NonNull byte[] message, String key) {
+        AuthFuture future = newFuture();
+        sign(message, key, future.asCallback());
+        return future;
+    }
+
+    /**
+     * Signs all messages after a single authentication with one keystore operation, for per-operation keys too:
+     * only the Merkle root of the batch is signed, every message gets a self-contained signature
+     * that {@link #verify(byte[], byte[], String)} checks on its own.
+     *
+     * @param callback gets {@link AuthResult#getItems()} keyed by the position in the input list
+     */
+    public void signBatch(@NonNull List<byte[]> messages, String key, Callback callback) {
+        execute("signBatch", null, callback, cb -> {
+            performSignOperation(new ArrayList<>(messages), true, key, cb);
+        });
+    }
+
+    @NonNull
+    public AuthFuture signBatch(@NonNull List<byte[]> messages, String key) {
+        AuthFuture future = newFuture();
+        signBatch(messages, key, future.asCallback());
+        return future;
+    }
+
+    /**
+     * Checks a signature of {@link #sign(byte[], String, Callback)} or {@link #signBatch(List, String, Callback)}
+     * with the cached public key, no authentication is needed. Runs on the calling thread.
+     *
+     * @return false if the signature doesn't match or the key doesn't exist
+     */
+    public boolean verify(@NonNull byte[] message, @NonNull byte[] signature, String key) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return false;
+        }
+        try {
+            return getCryptographers().getSignatureCryptographer().verify(message, signature, key);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Encrypts the stream in constant memory with the {@link CryptoAlgorithm#ENVELOPE} key.
+     * Streams are not closed.
+     */
+    public void encrypt(@NonNull InputStream source, @NonNull OutputStream destination, String key, Callback callback) {
+        encrypt(Channels.newChannel(source), Channels.newChannel(destination), key, callback);
+    }
+
+    public void decrypt(@NonNull InputStream source, @NonNull OutputStream destination, String key, Callback callback) {
+        decrypt(Channels.newChannel(source), Channels.newChannel(destination), key, callback);
+    }
+
+    /**
+     * Channels are not closed, pass {@link FileChannel} to work with files directly:
+     * their segments are processed in parallel, from the current positions to the end of the source.
+     */
+    public void encrypt(@NonNull ReadableByteChannel source, @NonNull WritableByteChannel destination, String key, Callback callback) {
+        execute("encrypt", CryptoAlgorithm.ENVELOPE, callback, cb -> {
+            performStreamOperation(ENCODE, source, destination, key, cb);
+        });
+    }
+
+    public void decrypt(@NonNull ReadableByteChannel source, @NonNull WritableByteChannel destination, String key, Callback callback) {
+        execute("decrypt", CryptoAlgorithm.ENVELOPE, callback, cb -> {
+            performStreamOperation(DECODE, source, destination, key, cb);
+        });
+    }
+
+    /**
+     * The destination is replaced only after the operation succeeds, it must not be the source
+     */
+    public void encrypt(@NonNull File source, @NonNull File destination, String key, Callback callback) {
+        execute("encrypt", CryptoAlgorithm.ENVELOPE, callback, cb -> performFileOperation(ENCODE, source, destination, key, cb));
+    }
+
+    public void decrypt(@NonNull File source, @NonNull File destination, String key, Callback callback) {
+        execute("decrypt", CryptoAlgorithm.ENVELOPE, callback, cb -> performFileOperation(DECODE, source, destination, key, cb));
+    }
+
+    /**
+     * Authenticates the key of the file opened with {@link EncryptedFile#open(File, String)},
+     * after that the file is readable until {@link EncryptedFile#lock()}
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public void unlock(@NonNull EncryptedFile file, Callback callback) {
+        execute("unlock", CryptoAlgorithm.ENVELOPE, callback, cb -> {
+            if (isReadyToUse()) {
+                perform(OperationStrategies.unlock(getCryptographers().getStreamCryptographer(), file), cb);
+            } else {
+                cb.onCompleted(getSensorState());
+            }
+        });
+    }
+
+    /**
+     * Cancels running and queued authentications of this instance, use {@link AuthFuture#cancel(boolean)} to cancel one operation.
+     * Authentications of other instances share the sensor queue but aren't affected.
+     */
+    public void cancelAuth() {
+        cancelAuth(null);
+    }
+
+    public void cancelAuth(@Nullable CancelCallback cancelCallback) {
+        mFingerprintManagerHelper.cancelAuth(this, cancelCallback);
+    }
+
+    /**
+     * Cancels the authentications of this instance, removes its sensor state listeners and gives back the shared sensor queue,
+     * the instance can't be used afterwards. The queue is freed when the last instance of the app is released.
+     */
+    public void release() {
+        if (!mReleased.compareAndSet(false, true)) {
+            return;
+        }
+        cancelAuth(null);
+        for (SensorStateListener listener : mSensorStateListeners) {
+            removeSensorStateListener(listener);
+        }
+        mPreparedCryptoObjects.releaseAll();
+        mFingerprintManagerHelper.release();
+    }
+
+    /**
+     * The output is written to a temporary file next to the destination, which replaces the destination
+     * only after the operation succeeds: a canceled or failed operation leaves the destination as it was
+     */
+    private void performFileOperation(Purpose purpose, File source, File destination, String key, Callback callback) {
+        if (isSameFile(source, destination)) {
+            callback.onCompleted(AuthResult.getExceptionResult(
+                    new IllegalArgumentException("Source and destination are the same file: " + source)));
+            return;
+        }
+        if (!isReadyToUse()) {
+            callback.onCompleted(getSensorState());
+            return;
+        }
+        ReadableByteChannel input = null;
+        WritableByteChannel output = null;
+        File temporary = null;
+        try {
+            input = new FileInputStream(source).getChannel();
+            temporary = File.createTempFile(destination.getName(), ".tmp", destination.getAbsoluteFile().getParentFile());
+            output = new FileOutputStream(temporary).getChannel();
+        } catch (IOException e) {
+            closeQuietly(input, output);
+            if (temporary != null) {
+                temporary.delete();
+            }
+            callback.onCompleted(AuthResult.getExceptionResult(e));
+            return;
+        }
+        performStreamOperation(purpose, input, output, key,
+                closingCallback(replacingCallback(callback, temporary, destination), input, output));
+    }
+
+    /**
+     * Exactly one of the text and data is set, the result has the same form as the input
+     */
+    private void performCryptoOperation(@Nullable String inputText, @Nullable byte[] inputData, String key, CryptoAlgorithm algorithm,
+                                        Purpose purpose, Callback callback) {
+        if (!isReadyToUse()) {
+            callback.onCompleted(getSensorState());
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
             callback.onCompleted(AuthResult.getNotSupportedResult());
+            return;
+        }
+        AuthResult rejection = rejectUnsupported(algorithm);
+        if (rejection != null) {
+            callback.onCompleted(rejection);
+            return;
+        }
+        final Cryptographer cryptographer = getCryptographer(algorithm);
+        boolean publicKeyEncoding = algorithm.equals(CryptoAlgorithm.RSA) || algorithm.equals(CryptoAlgorithm.HYBRID)
+                || algorithm.equals(CryptoAlgorithm.EC);
+        if (publicKeyEncoding && purpose.equals(ENCODE)) {
+            callback.onCompleted(performAuthenticatedOperation(cryptographer, inputText, inputData, key, ENCODE));
+            return;
+        }
+        if (mAuthValiditySeconds > 0) {
+            performInSession(() -> performAuthenticatedOperation(cryptographer, inputText, inputData, key, purpose), callback);
+            return;
+        }
+        if (cryptographer instanceof PrivateKeyCryptographer) {
+            perform(OperationStrategies.decode((PrivateKeyCryptographer) cryptographer, inputText, inputData, key,
+                    takePrepared(key, algorithm)), callback);
+            return;
         }
+        // decoding ciphers depend on the IV of the input, only encoding ones are prepared
+        FingerprintManager.CryptoObject prepared = purpose.equals(ENCODE) ? takePrepared(key, algorithm) : null;
+        perform(OperationStrategies.cipher((OperationCryptographer) cryptographer, purpose, inputText, inputData, key, prepared), callback);
     }
 
-    public void encode(String textToEncode, String key, CryptoAlgorithm algorithm, Callback callback) {
-        if (isReadyToUse()) {
-            performCryptoOperation(textToEncode, key, algorithm, ENCODE, callback);
-        } else {
+    private void performRecordOperation(final Purpose purpose, final byte[] data, final String key, final String recordId,
+                                        Callback callback) {
+        if (!isReadyToUse()) {
             callback.onCompleted(getSensorState());
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            callback.onCompleted(AuthResult.getNotSupportedResult());
+            return;
         }
+        final GcmCryptographer cryptographer = getCryptographers().getGcmCryptographer();
+        if (mAuthValiditySeconds > 0) {
+            performInSession(() -> AuthResult.getCryptoOperationResult(purpose.equals(ENCODE) ?
+                    cryptographer.encodeToBytes(data, key, recordId, mAuthValiditySeconds) :
+                    cryptographer.decodeToBytes(data, key, recordId)), callback);
+            return;
+        }
+        FingerprintManager.CryptoObject prepared = purpose.equals(ENCODE) ? takePrepared(key, CryptoAlgorithm.GCM) : null;
+        perform(OperationStrategies.record(cryptographer, purpose, data, key, recordId, prepared), callback);
     }
 
-    public void decode(final String textToDecode, String key, CryptoAlgorithm algorithm, final Callback callback) {
-        if (isReadyToUse()) {
-            performCryptoOperation(textToDecode, key, algorithm, DECODE, callback);
-        } else {
+    private void performSignOperation(final List<byte[]> messages, final boolean batch, final String key, Callback callback) {
+        if (!isReadyToUse()) {
+            callback.onCompleted(getSensorState());
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            callback.onCompleted(AuthResult.getNotSupportedResult());
+            return;
+        }
+        final SignatureCryptographer cryptographer = getCryptographers().getSignatureCryptographer();
+        if (mAuthValiditySeconds > 0) {
+            performInSession(() -> batch ?
+                    OperationStrategies.getSignedBatchResult(cryptographer.signBatch(messages, key, mAuthValiditySeconds)) :
+                    AuthResult.getCryptoOperationResult(cryptographer.sign(messages.get(0), key, mAuthValiditySeconds)), callback);
+            return;
+        }
+        perform(OperationStrategies.sign(cryptographer, messages, batch, key, mAuthValiditySeconds), callback);
+    }
+
+    private void performStreamOperation(Purpose purpose, ReadableByteChannel source, WritableByteChannel destination,
+                                        String key, Callback callback) {
+        if (!isReadyToUse()) {
             callback.onCompleted(getSensorState());
+            return;
         }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            callback.onCompleted(AuthResult.getNotSupportedResult());
+            return;
+        }
+        // the stream header is wrapped with the envelope key, so a prepared envelope object fits
+        FingerprintManager.CryptoObject prepared = purpose.equals(ENCODE) ? takePrepared(key, CryptoAlgorithm.ENVELOPE) : null;
+        perform(OperationStrategies.stream(getCryptographers().getStreamCryptographer(), purpose, source, destination, key, prepared), callback);
     }
 
-    private void performCryptoOperation(String inputText, String key, CryptoAlgorithm algorithm, Purpose purpose, Callback callback) {
-        if (algorithm.equals(CryptoAlgorithm.AES)) {
-            performCryptoOperationWithAes(purpose, inputText, key, callback);
+    /**
+     * Shared path of the operations authorized with a crypto object: the strategy initializes the object,
+     * the prompt is shown and the strategy completes the operation after a successful authentication
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void perform(final OperationStrategy strategy, final Callback callback) {
+        try {
+            startAuth(strategy.init(), result -> {
+                switch (result.getState()) {
+                    case SUCCESS:
+                        try {
+                            callback.onCompleted(strategy.complete(result.getCryptoObject()));
+                        } catch (Exception e) {
+                            callback.onCompleted(AuthResult.getExceptionResult(e));
+                        }
+                        break;
+                    default:
+                        callback.onCompleted(result);
+                }
+            });
+        } catch (Exception e) {
+            callback.onCompleted(AuthResult.getExceptionResult(e));
         }
+    }
 
-        if (algorithm.equals(CryptoAlgorithm.RSA)) {
-            if (purpose.equals(ENCODE)) {
-                encodeWithRsa(inputText, key, callback);
-            } else if (purpose.equals(DECODE)) {
-                decodeWithRsa(inputText, key, callback);
+    /**
+     * Runs the operation right away while the session is active, otherwise after a plain authentication
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void performInSession(final AuthenticatedOperation operation, final Callback callback) {
+        if (mAuthSession.isActive()) {
+            AuthResult result = runAuthenticated(operation);
+            if (!result.isAuthenticationExpired()) {
+                callback.onCompleted(result);
+                return;
             }
+            mAuthSession.invalidate();
         }
+        startAuth(null, result -> {
+            switch (result.getState()) {
+                case SUCCESS:
+                    mAuthSession.onAuthenticated();
+                    callback.onCompleted(runAuthenticated(operation));
+                    break;
+                default:
+                    callback.onCompleted(result);
+            }
+        });
     }
 
-    public void cancelAuth() {
-        mFingerprintManagerHelper.cancelAuth(null);
+    private static AuthResult runAuthenticated(AuthenticatedOperation operation) {
+        try {
+            return operation.run();
+        } catch (Exception e) {
+            return AuthResult.getExceptionResult(e);
+        }
     }
 
-    public void cancelAuth(@Nullable CancelCallback cancelCallback) {
-        mFingerprintManagerHelper.cancelAuth(cancelCallback);
+    /**
+     * Runs the operation without {@link FingerprintManager.CryptoObject}, relying on a recent authentication
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private AuthResult performAuthenticatedOperation(Cryptographer cryptographer, @Nullable String inputText, @Nullable byte[] inputData,
+                                                     String key, Purpose purpose) {
+        try {
+            if (inputData == null) {
+                return AuthResult.getCryptoOperationResult(purpose.equals(ENCODE) ?
+                        cryptographer.encode(inputText, key, mAuthValiditySeconds) :
+                        cryptographer.decode(inputText, key));
+            }
+            return AuthResult.getCryptoOperationResult(purpose.equals(ENCODE) ?
+                    cryptographer.encodeToBytes(inputData, key, mAuthValiditySeconds) :
+                    cryptographer.decodeToBytes(inputData, key));
+        } catch (Exception e) {
+            return AuthResult.getExceptionResult(e);
+        }
     }
 
-    private void encodeWithRsa(String textToEncode, String key, Callback callback) {
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-            RsaCryptographer cryptographer = RsaCryptographer.getInstance();
-            try {
-                String encoded = cryptographer.encode(textToEncode, key);
-                callback.onCompleted(AuthResult.getCryptoOperationResult(encoded));
-            } catch (Exception e) {
-                callback.onCompleted(AuthResult.getExceptionResult(e));
+    /**
+     * @return result rejecting the algorithm before any work, null if this instance can run it
+     */
+    @Nullable
+    private AuthResult rejectUnsupported(CryptoAlgorithm algorithm) {
+        if (getCryptographer(algorithm) == null) {
+            return AuthResult.getNotSupportedResult();
+        }
+        if (algorithm.equals(CryptoAlgorithm.EC) && mAuthValiditySeconds == 0) {
+            // key agreement can't be bound to a crypto object, EC keys rely on a recent authentication
+            return AuthResult.getExceptionResult(new IllegalStateException("EC keys need the session mode, see setAuthValidityDuration"));
+        }
+        return null;
+    }
+
+    /**
+     * @return null if the algorithm isn't supported on this device
+     */
+    @Nullable
+    private Cryptographer getCryptographer(CryptoAlgorithm algorithm) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return null;
+        }
+        Cryptographers cryptographers = getCryptographers();
+        switch (algorithm) {
+            case AES:
+                return cryptographers.getAesCryptographer();
+            case ENVELOPE:
+                return cryptographers.getEnvelopeCryptographer();
+            case GCM:
+                return cryptographers.getGcmCryptographer();
+            case HYBRID:
+                return cryptographers.getHybridCryptographer();
+            case EC:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? cryptographers.getEcCryptographer() : null;
+            case RSA:
+            default:
+                return cryptographers.getRsaCryptographer();
+        }
+    }
+
+    /**
+     * Keystore of this instance, the process-wide one unless the builder got a backend
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private synchronized Cryptographers getCryptographers() {
+        if (mCryptographers == null) {
+            mCryptographers = mKeyStoreBackend == null ? Cryptographers.getDefault() : new Cryptographers(mKeyStoreBackend);
+        }
+        return mCryptographers;
+    }
+
+    /**
+     * Runs the task on the crypto executor, its results are delivered on the callback executor.
+     * The task is skipped if its future was cancelled while it waited for the executor.
+     * With a metrics listener the task is traced, the trace is reported when the final result is produced.
+     *
+     * @param operation name of the public method for the trace
+     */
+    private void execute(String operation, @Nullable CryptoAlgorithm algorithm, final Callback callback, final Task task) {
+        // help and fail results are delivered as is when there is no executor to hop to
+        final Callback delivering = mCallbackExecutor == DIRECT_EXECUTOR ?
+                callback :
+                result -> mCallbackExecutor.execute(() -> callback.onCompleted(result));
+        final AuthFuture future = AuthFuture.of(callback);
+        if (mMetricsListener == null) {
+            mCryptoExecutor.execute(() -> {
+                if (future == null || !future.isCancelled()) {
+                    runFor(future, () -> task.run(delivering));
+                }
+            });
+            return;
+        }
+        final OperationTrace trace = Tracer.newTrace(operation, algorithm);
+        final Callback tracing = result -> {
+            if (Tracer.onResult(trace, result)) {
+                mMetricsListener.onOperationCompleted(trace);
             }
-        } else {
-            callback.onCompleted(AuthResult.getNotSupportedResult());
+            delivering.onCompleted(result);
+        };
+        mCryptoExecutor.execute(() -> {
+            if (future == null || !future.isCancelled()) {
+                runFor(future, () -> Tracer.run(trace, () -> task.run(tracing)));
+            }
+        });
+    }
+
+    /**
+     * Authentications started by the work are bound to the future, so cancelling it cancels only them
+     */
+    private static void runFor(@Nullable AuthFuture future, Runnable work) {
+        AuthFuture previous = CURRENT_FUTURE.get();
+        CURRENT_FUTURE.set(future);
+        try {
+            work.run();
+        } finally {
+            CURRENT_FUTURE.set(previous);
         }
     }
 
-    private void decodeWithRsa(final String textToDecode, String key, final Callback callback) {
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-            final RsaCryptographer cryptographer = RsaCryptographer.getInstance();
-            try {
-                FingerprintManager.CryptoObject cryptoObject = cryptographer.getCryptoObject(key);
-                mFingerprintManagerHelper.startAuth(cryptoObject, result -> {
-                    switch (result.getState()) {
-                        case SUCCESS:
-                            try {
-                                String decoded = cryptographer.decode(textToDecode, result.getCryptoObject().getCipher());
-                                callback.onCompleted(AuthResult.getCryptoOperationResult(decoded));
-                            } catch (Exception e) {
-                                callback.onCompleted(AuthResult.getExceptionResult(e));
-                            }
-                            break;
-                        default:
-                            callback.onCompleted(result);
-                    }
-                });
-            } catch (Exception e) {
-                callback.onCompleted(AuthResult.getExceptionResult(e));
+    /**
+     * Successful authentication is followed by cipher work, so it is moved from the fingerprint callback thread to the crypto executor.
+     * Authentications without a crypto object only open the validity window, concurrent ones share a single prompt.
+     * An operation whose future was cancelled during the preparation isn't queued, it gets the canceled error right away.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void startAuth(@Nullable FingerprintManager.CryptoObject cryptoObject, final Callback callback) {
+        startAuth(cryptoObject, AuthRequest.PRIORITY_DEFAULT, callback);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void startAuth(@Nullable FingerprintManager.CryptoObject cryptoObject, int priority, final Callback callback) {
+        final OperationTrace trace = Tracer.current();
+        final AuthFuture future = CURRENT_FUTURE.get();
+        if (future != null && future.isCancelled()) {
+            // the error lets the operation free what it has opened, e.g. file channels
+            callback.onCompleted(AuthResult.getErrorResult(FingerprintManager.FINGERPRINT_ERROR_CANCELED, CANCELED_MESSAGE, true));
+            return;
+        }
+        final long start = Tracer.start();
+        Object coalescingKey = cryptoObject == null ? SESSION_AUTHENTICATION : null;
+        AuthRequest request = mFingerprintManagerHelper.startAuth(cryptoObject, coalescingKey, priority, this, result -> {
+            State state = result.getState();
+            if (state.equals(State.HELP) || state.equals(State.FAIL)) {
+                callback.onCompleted(result);
+                return;
             }
-        } else {
-            callback.onCompleted(AuthResult.getNotSupportedResult());
+            Tracer.end(trace, Phase.WAIT_FOR_TOUCH, start);
+            if (state.equals(State.SUCCESS)) {
+                mCryptoExecutor.execute(() -> runFor(future, () -> Tracer.run(trace, () -> callback.onCompleted(result))));
+            } else {
+                callback.onCompleted(result);
+            }
+        });
+        if (future != null) {
+            future.attach(request);
         }
     }
 
-    private void performCryptoOperationWithAes(final Purpose purpose, String text, String key, final Callback callback) {
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-            final AesCryptographer aesCryptographer = AesCryptographer.getInstance();
-            try {
-                FingerprintManager.CryptoObject cryptoObject = aesCryptographer.getCryptoObject(text, purpose, key);
-                mFingerprintManagerHelper.startAuth(cryptoObject, result -> {
-                    switch (result.getState()) {
-                        case SUCCESS:
-                            try {
-                                Cipher cipher = result.getCryptoObject().getCipher();
-                                String resultString = purpose.equals(ENCODE) ?
-                                        aesCryptographer.encode(cipher) :
-                                        aesCryptographer.decode(cipher);
-                                callback.onCompleted(AuthResult.getCryptoOperationResult(resultString));
-                            } catch (Exception e) {
-                                callback.onCompleted(AuthResult.getExceptionResult(e));
-                            }
-                            break;
-                        default:
-                            callback.onCompleted(result);
+    @NonNull
+    private AuthFuture newFuture() {
+        return new AuthFuture(mCallbackExecutor);
+    }
+
+    private static Callback closingCallback(final Callback callback, final Closeable... closeables) {
+        return result -> {
+            if (!result.getState().equals(State.HELP) && !result.getState().equals(State.FAIL)) {
+                closeQuietly(closeables);
+            }
+            callback.onCompleted(result);
+        };
+    }
+
+    /**
+     * Moves the temporary file over the destination on success and deletes it on any other final result.
+     * Channels of the temporary file are closed by the time the callback is called.
+     */
+    private static Callback replacingCallback(final Callback callback, final File temporary, final File destination) {
+        return result -> {
+            switch (result.getState()) {
+                case HELP:
+                case FAIL:
+                    break;
+                case SUCCESS:
+                    if (!temporary.renameTo(destination)) {
+                        temporary.delete();
+                        callback.onCompleted(AuthResult.getExceptionResult(
+                                new IOException("Can't replace " + destination + " with " + temporary)));
+                        return;
                     }
-                });
-            } catch (Exception e) {
-                callback.onCompleted(AuthResult.getExceptionResult(e));
+                    break;
+                default:
+                    temporary.delete();
+                    break;
             }
-        } else {
-            callback.onCompleted(AuthResult.getNotSupportedResult());
+            callback.onCompleted(result);
+        };
+    }
+
+    private static boolean isSameFile(File first, File second) {
+        try {
+            return first.getCanonicalFile().equals(second.getCanonicalFile());
+        } catch (IOException e) {
+            return first.getAbsoluteFile().equals(second.getAbsoluteFile());
+        }
+    }
+
+    private static void closeQuietly(Closeable... closeables) {
+        for (Closeable closeable : closeables) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private interface AuthenticatedOperation {
+        AuthResult run() throws Exception;
+    }
+
+    private interface Task {
+        void run(Callback callback);
+    }
+
+    /**
+     * Configures where the work runs. By default crypto work runs on {@link AsyncTask#THREAD_POOL_EXECUTOR}
+     * and callbacks are delivered on the main thread.
+     * The callback executor should be serial, otherwise {@link State#HELP} and {@link State#FAIL} results may be reordered.
+     * <p>
+     * Off-device (CI, profiling) pass {@link com.elegion.library.littlefinger.crypto.FakeKeyStoreBackend}
+     * and {@link com.elegion.library.littlefinger.fingerprint.FakeBiometricAuthenticator} linked to it,
+     * together with a callback executor, as there is no main looper.
+     */
+    public static class Builder {
+
+        private final Context mContext;
+        private Executor mCryptoExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+        private Executor mCallbackExecutor;
+        private KeyStoreBackend mKeyStoreBackend;
+        private BiometricAuthenticator mAuthenticator;
+        private MetricsListener mMetricsListener;
+
+        public Builder(@NonNull Context context) {
+            mContext = context;
+        }
+
+        /**
+         * Executor for key generation, keystore calls and ciphers
+         */
+        @NonNull
+        public Builder cryptoExecutor(@NonNull Executor executor) {
+            mCryptoExecutor = executor;
+            return this;
+        }
+
+        @NonNull
+        public Builder callbackExecutor(@NonNull Executor executor) {
+            mCallbackExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Keystore of the built instance, other instances keep working with their own keystores
+         */
+        @NonNull
+        public Builder keyStoreBackend(@NonNull KeyStoreBackend backend) {
+            mKeyStoreBackend = backend;
+            return this;
+        }
+
+        @NonNull
+        public Builder authenticator(@NonNull BiometricAuthenticator authenticator) {
+            mAuthenticator = authenticator;
+            return this;
+        }
+
+        /**
+         * Turns on tracing of the operations, e.g. pass {@link com.elegion.library.littlefinger.metrics.MetricsRegistry}.
+         * Without a listener tracing costs next to nothing.
+         */
+        @NonNull
+        public Builder metricsListener(@NonNull MetricsListener listener) {
+            mMetricsListener = listener;
+            return this;
+        }
+
+        @NonNull
+        public LittleFinger build() {
+            Executor callbackExecutor = mCallbackExecutor;
+            if (callbackExecutor == null) {
+                final Handler handler = new Handler(Looper.getMainLooper());
+                callbackExecutor = handler::post;
+            }
+            return new LittleFinger(mContext, mAuthenticator, mKeyStoreBackend, mCryptoExecutor, callbackExecutor, mMetricsListener);
         }
     }
 
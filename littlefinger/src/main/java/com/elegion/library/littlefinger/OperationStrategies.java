@@ -0,0 +1,239 @@
+package com.elegion.library.littlefinger;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+
+import com.elegion.library.littlefinger.crypto.CryptoOperation;
+import com.elegion.library.littlefinger.crypto.EncryptedFile;
+import com.elegion.library.littlefinger.crypto.GcmCryptographer;
+import com.elegion.library.littlefinger.crypto.OperationCryptographer;
+import com.elegion.library.littlefinger.crypto.PrivateKeyCryptographer;
+import com.elegion.library.littlefinger.crypto.Purpose;
+import com.elegion.library.littlefinger.crypto.SignatureCryptographer;
+import com.elegion.library.littlefinger.crypto.StreamCryptographer;
+import com.elegion.library.littlefinger.crypto.StreamHeader;
+import com.elegion.library.littlefinger.fingerprint.AuthResult;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import static com.elegion.library.littlefinger.crypto.Purpose.ENCODE;
+
+/**
+ * {@link OperationStrategy} of every operation {@link LittleFinger} authorizes with a crypto object.
+ * Text input gives a text result, binary input gives a binary one.
+ *
+ * @author Azret Magometov
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+final class OperationStrategies {
+
+    private OperationStrategies() {
+    }
+
+    /**
+     * Exactly one of the text and data is set
+     *
+     * @param prepared encoding object initialized ahead, null to initialize a new one
+     */
+    @NonNull
+    static OperationStrategy cipher(final OperationCryptographer cryptographer, final Purpose purpose, @Nullable final String text,
+                                    @Nullable final byte[] data, final String key, @Nullable final FingerprintManager.CryptoObject prepared) {
+        return new CipherStrategy(cryptographer, purpose, text != null) {
+            @Override
+            CryptoOperation newOperation() throws Exception {
+                if (prepared != null) {
+                    return text != null ?
+                            cryptographer.newEncodeOperation(text, key, prepared) :
+                            cryptographer.newEncodeOperation(data, key, prepared);
+                }
+                return text != null ?
+                        cryptographer.newOperation(text, purpose, key) :
+                        cryptographer.newOperation(data, purpose, key);
+            }
+        };
+    }
+
+    /**
+     * @param recordId bound to the ciphertext as associated data
+     */
+    @NonNull
+    static OperationStrategy record(final GcmCryptographer cryptographer, final Purpose purpose, final byte[] data, final String key,
+                                    final String recordId, @Nullable final FingerprintManager.CryptoObject prepared) {
+        return new CipherStrategy(cryptographer, purpose, false) {
+            @Override
+            CryptoOperation newOperation() throws Exception {
+                return prepared != null ?
+                        cryptographer.newEncodeOperation(data, key, recordId, prepared) :
+                        cryptographer.newOperation(data, purpose, key, recordId);
+            }
+        };
+    }
+
+    @NonNull
+    static OperationStrategy decode(final PrivateKeyCryptographer cryptographer, @Nullable final String text, @Nullable final byte[] data,
+                                    final String key, @Nullable final FingerprintManager.CryptoObject prepared) {
+        return new OperationStrategy() {
+            @NonNull
+            @Override
+            public FingerprintManager.CryptoObject init() throws Exception {
+                return prepared != null ? prepared : cryptographer.getCryptoObject(key);
+            }
+
+            @NonNull
+            @Override
+            public AuthResult complete(@NonNull FingerprintManager.CryptoObject cryptoObject) throws Exception {
+                Cipher cipher = cryptoObject.getCipher();
+                return text != null ?
+                        AuthResult.getCryptoOperationResult(cryptographer.decode(text, cipher)) :
+                        AuthResult.getCryptoOperationResult(cryptographer.decodeToBytes(data, cipher));
+            }
+        };
+    }
+
+    /**
+     * @param batch true to sign all messages with one Merkle root signature, otherwise there is one message
+     */
+    @NonNull
+    static OperationStrategy sign(final SignatureCryptographer cryptographer, final List<byte[]> messages, final boolean batch,
+                                  final String key, final int authValiditySeconds) {
+        return new OperationStrategy() {
+            private CryptoOperation mOperation;
+
+            @NonNull
+            @Override
+            public FingerprintManager.CryptoObject init() throws Exception {
+                mOperation = batch ?
+                        cryptographer.newBatchOperation(messages, key, authValiditySeconds) :
+                        cryptographer.newOperation(messages.get(0), key, authValiditySeconds);
+                return mOperation.getCryptoObject();
+            }
+
+            @NonNull
+            @Override
+            public AuthResult complete(@NonNull FingerprintManager.CryptoObject cryptoObject) throws Exception {
+                return batch ?
+                        getSignedBatchResult(cryptographer.signBatch(mOperation, cryptoObject.getSignature())) :
+                        AuthResult.getCryptoOperationResult(cryptographer.sign(mOperation, cryptoObject.getSignature()));
+            }
+        };
+    }
+
+    /**
+     * Segments of file channels are processed in parallel, other channels are processed in order
+     *
+     * @param prepared encoding object of the envelope key initialized ahead, the stream header is wrapped with that key
+     */
+    @NonNull
+    static OperationStrategy stream(final StreamCryptographer cryptographer, final Purpose purpose, final ReadableByteChannel source,
+                                    final WritableByteChannel destination, final String key,
+                                    @Nullable final FingerprintManager.CryptoObject prepared) {
+        return new OperationStrategy() {
+            private StreamHeader mHeader;
+
+            @NonNull
+            @Override
+            public FingerprintManager.CryptoObject init() throws Exception {
+                if (purpose.equals(ENCODE)) {
+                    return prepared != null ? prepared : cryptographer.getEncodeCryptoObject(key);
+                }
+                mHeader = cryptographer.readHeader(source);
+                return cryptographer.getDecodeCryptoObject(key, mHeader);
+            }
+
+            @NonNull
+            @Override
+            public AuthResult complete(@NonNull FingerprintManager.CryptoObject cryptoObject) throws Exception {
+                Cipher cipher = cryptoObject.getCipher();
+                boolean files = source instanceof FileChannel && destination instanceof FileChannel;
+                if (files && purpose.equals(ENCODE)) {
+                    cryptographer.encodeParallel(cipher, (FileChannel) source, (FileChannel) destination);
+                } else if (files) {
+                    cryptographer.decodeParallel(cipher, mHeader, (FileChannel) source, (FileChannel) destination);
+                } else if (purpose.equals(ENCODE)) {
+                    cryptographer.encode(cipher, source, destination);
+                } else {
+                    cryptographer.decode(cipher, mHeader, source, destination);
+                }
+                return AuthResult.getStreamOperationResult();
+            }
+        };
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @NonNull
+    static OperationStrategy unlock(final StreamCryptographer cryptographer, final EncryptedFile file) {
+        return new OperationStrategy() {
+            @NonNull
+            @Override
+            public FingerprintManager.CryptoObject init() throws Exception {
+                return file.getCryptoObject(cryptographer);
+            }
+
+            @NonNull
+            @Override
+            public AuthResult complete(@NonNull FingerprintManager.CryptoObject cryptoObject) throws Exception {
+                file.unlock(cryptoObject.getCipher());
+                return AuthResult.getEmptyResult();
+            }
+        };
+    }
+
+    @NonNull
+    static AuthResult getSignedBatchResult(List<byte[]> signatures) {
+        Map<String, AuthResult> items = new LinkedHashMap<>();
+        for (int i = 0; i < signatures.size(); i++) {
+            items.put(String.valueOf(i), AuthResult.getCryptoOperationResult(signatures.get(i)));
+        }
+        return AuthResult.getBatchResult(items);
+    }
+
+    /**
+     * Keystore secret key operation, the input is bound to the operation when it is created
+     */
+    private abstract static class CipherStrategy implements OperationStrategy {
+        private final OperationCryptographer mCryptographer;
+        private final Purpose mPurpose;
+        private final boolean mText;
+        private CryptoOperation mOperation;
+
+        private CipherStrategy(OperationCryptographer cryptographer, Purpose purpose, boolean text) {
+            mCryptographer = cryptographer;
+            mPurpose = purpose;
+            mText = text;
+        }
+
+        abstract CryptoOperation newOperation() throws Exception;
+
+        @NonNull
+        @Override
+        public FingerprintManager.CryptoObject init() throws Exception {
+            mOperation = newOperation();
+            return mOperation.getCryptoObject();
+        }
+
+        @NonNull
+        @Override
+        public AuthResult complete(@NonNull FingerprintManager.CryptoObject cryptoObject) throws Exception {
+            Cipher cipher = cryptoObject.getCipher();
+            if (mText) {
+                return AuthResult.getCryptoOperationResult(mPurpose.equals(ENCODE) ?
+                        mCryptographer.encode(mOperation, cipher) :
+                        mCryptographer.decode(mOperation, cipher));
+            }
+            return AuthResult.getCryptoOperationResult(mPurpose.equals(ENCODE) ?
+                    mCryptographer.encodeToBytes(mOperation, cipher) :
+                    mCryptographer.decodeToBytes(mOperation, cipher));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.elegion.library.littlefinger;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import com.elegion.library.littlefinger.fingerprint.AuthResult;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Algorithm-specific steps of an operation authorized with {@link FingerprintManager.CryptoObject},
+ * {@link LittleFinger} shows the prompt between them
+ *
+ * @author Azret Magometov
+ */
+
+interface OperationStrategy {
+
+    /**
+     * Parses the input, looks the key up and initializes the object to authenticate
+     */
+    @NonNull
+    FingerprintManager.CryptoObject init() throws Exception;
+
+    /**
+     * Runs the crypto work with the authenticated object on the crypto executor
+     */
+    @NonNull
+    AuthResult complete(@NonNull FingerprintManager.CryptoObject cryptoObject) throws Exception;
+}
@@ -0,0 +1,174 @@
+package com.elegion.library.littlefinger;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.SystemClock;
+
+import com.elegion.library.littlefinger.crypto.KeySpec;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Crypto objects initialized ahead of the operations, one per key.
+ * An object is taken by one operation and the next one is initialized in the background right away.
+ * Objects are replaced in the background when they get {@link #TTL_MILLIS} old: the keystore may prune an operation
+ * left open for long, and the touch would be wasted on it. Every initialized keystore operation takes a slot of the app,
+ * so at most {@link #MAX_KEYS} keys are kept prepared.
+ *
+ * @author Azret Magometov
+ */
+
+final class PreparedCryptoObjects {
+
+    static final long TTL_MILLIS = 60 * 1000;
+    static final int MAX_KEYS = 8;
+
+    interface Factory {
+        @NonNull
+        FingerprintManager.CryptoObject create() throws Exception;
+    }
+
+    interface Scheduler {
+        void schedule(@NonNull Runnable task, long delayMillis);
+    }
+
+    private final Executor mExecutor;
+    private final Scheduler mScheduler;
+    private final Map<KeySpec, Slot> mSlots = new LinkedHashMap<>();
+
+    /**
+     * @param executor  initializes the objects
+     * @param scheduler wakes up the slots when their objects expire, the object is replaced on the executor
+     */
+    PreparedCryptoObjects(@NonNull Executor executor, @NonNull Scheduler scheduler) {
+        mExecutor = executor;
+        mScheduler = scheduler;
+    }
+
+    void prepare(@NonNull KeySpec spec, @NonNull Factory factory) {
+        Slot slot;
+        synchronized (this) {
+            slot = mSlots.get(spec);
+            if (slot == null) {
+                if (mSlots.size() >= MAX_KEYS) {
+                    Iterator<Slot> eldest = mSlots.values().iterator();
+                    eldest.next().release();
+                    eldest.remove();
+                }
+                slot = new Slot(factory);
+                mSlots.put(spec, slot);
+            }
+        }
+        arm(slot);
+    }
+
+    /**
+     * @return object that is used by no other operation, null if there is no fresh one
+     */
+    @Nullable
+    FingerprintManager.CryptoObject take(@NonNull KeySpec spec) {
+        Slot slot;
+        FingerprintManager.CryptoObject cryptoObject;
+        synchronized (this) {
+            slot = mSlots.get(spec);
+            if (slot == null) {
+                return null;
+            }
+            cryptoObject = slot.take();
+        }
+        arm(slot);
+        return cryptoObject;
+    }
+
+    synchronized void release(@NonNull KeySpec spec) {
+        Slot slot = mSlots.remove(spec);
+        if (slot != null) {
+            slot.release();
+        }
+    }
+
+    synchronized void releaseAll() {
+        for (Slot slot : mSlots.values()) {
+            slot.release();
+        }
+        mSlots.clear();
+    }
+
+    private void arm(final Slot slot) {
+        if (slot.startArming()) {
+            mExecutor.execute(() -> {
+                if (slot.arm()) {
+                    mScheduler.schedule(() -> arm(slot), TTL_MILLIS);
+                }
+            });
+        }
+    }
+
+    private static final class Slot {
+        private final Factory mFactory;
+        private FingerprintManager.CryptoObject mCryptoObject;
+        private long mPreparedAt;
+        private boolean mArming;
+        private boolean mReleased;
+
+        private Slot(Factory factory) {
+            mFactory = factory;
+        }
+
+        @Nullable
+        private synchronized FingerprintManager.CryptoObject take() {
+            FingerprintManager.CryptoObject cryptoObject = mCryptoObject;
+            mCryptoObject = null;
+            if (cryptoObject == null || isExpired()) {
+                return null;
+            }
+            return cryptoObject;
+        }
+
+        private synchronized boolean startArming() {
+            if (mCryptoObject != null && isExpired()) {
+                mCryptoObject = null;
+            }
+            if (mReleased || mArming || mCryptoObject != null) {
+                return false;
+            }
+            mArming = true;
+            return true;
+        }
+
+        /**
+         * @return true if the slot got an object
+         */
+        private boolean arm() {
+            FingerprintManager.CryptoObject cryptoObject = null;
+            try {
+                cryptoObject = mFactory.create();
+            } catch (Exception ignored) {
+                // e.g. the key is missing or invalidated, the operation gets the error when it initializes its own object
+            }
+            synchronized (this) {
+                mArming = false;
+                if (mReleased) {
+                    return false;
+                }
+                mCryptoObject = cryptoObject;
+                mPreparedAt = SystemClock.elapsedRealtime();
+                return cryptoObject != null;
+            }
+        }
+
+        private boolean isExpired() {
+            return SystemClock.elapsedRealtime() - mPreparedAt >= TTL_MILLIS;
+        }
+
+        private synchronized void release() {
+            mReleased = true;
+            mCryptoObject = null;
+        }
+    }
+}
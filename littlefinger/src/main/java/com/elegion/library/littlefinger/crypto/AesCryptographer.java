@@ -6,19 +6,18 @@ import android.os.Build;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyPermanentlyInvalidatedException;
 import android.security.keystore.KeyProperties;
+import android.security.keystore.UserNotAuthenticatedException;
 import android.util.Log;
 
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
 import java.security.GeneralSecurityException;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.UnrecoverableKeyException;
-import java.security.spec.InvalidParameterSpecException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 
@@ -28,122 +27,236 @@ import androidx.annotation.NonNull;
  * @author Azret Magometov
  */
 @TargetApi(Build.VERSION_CODES.M)
-public class AesCryptographer {
+public class AesCryptographer implements OperationCryptographer {
 
     private static final String TAG = AesCryptographer.class.getSimpleName();
 
     private static final String TRANSFORMATION = "AES/CBC/PKCS7Padding";
-    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
 
     private static AesCryptographer INSTANCE;
-    private KeyStoreManager mKeyStoreManager;
-    private AesData mAesData;
+    private final KeyStoreManager mKeyStoreManager;
 
     @NonNull
     public synchronized static AesCryptographer getInstance() {
         if (INSTANCE == null) {
-            INSTANCE = new AesCryptographer();
+            INSTANCE = new AesCryptographer(KeyStoreManager.getInstance());
         }
         return INSTANCE;
     }
 
-    private AesCryptographer() {
-        mKeyStoreManager = KeyStoreManager.getInstance();
+    AesCryptographer(KeyStoreManager keyStoreManager) {
+        mKeyStoreManager = keyStoreManager;
+    }
+
+    @NonNull
+    @Override
+    public String encode(CryptoOperation operation, Cipher cipher) throws Exception {
+        return Base64Text.encode(encodeToBytes(operation, cipher));
+    }
+
+    /**
+     * @return binary {@link CipherContainer}
+     */
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(CryptoOperation operation, Cipher cipher) throws Exception {
+        return encodeToBytes(operation.<AesData>getData(), cipher);
+    }
+
+    @NonNull
+    @Override
+    public String decode(CryptoOperation operation, Cipher cipher) throws Exception {
+        return new String(decodeToBytes(operation, cipher));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(CryptoOperation operation, Cipher cipher) throws Exception {
+        return decodeToBytes(operation.<AesData>getData(), cipher);
+    }
+
+    /**
+     * Encodes without {@link FingerprintManager.CryptoObject}. The key is generated with the given
+     * authentication validity window, the user must have been authenticated within it.
+     */
+    @NonNull
+    @Override
+    public String encode(String text, String key, int authValiditySeconds) throws Exception {
+        return Base64Text.encode(encodeToBytes(text.getBytes(), key, authValiditySeconds));
+    }
+
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(byte[] data, String key, int authValiditySeconds) throws Exception {
+        AesData aesData = new AesData(Purpose.ENCODE, data, key);
+        return encodeToBytes(aesData, initEncodeCipher(key, authValiditySeconds));
+    }
+
+    /**
+     * Decodes without {@link FingerprintManager.CryptoObject}, works only for keys with authentication validity window
+     */
+    @NonNull
+    @Override
+    public String decode(String text, String key) throws Exception {
+        AesData aesData = new AesData(Purpose.DECODE, text, key);
+        return new String(decodeToBytes(aesData, initDecodeCipher(aesData)));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(byte[] data, String key) throws Exception {
+        AesData aesData = new AesData(Purpose.DECODE, data, key);
+        return decodeToBytes(aesData, initDecodeCipher(aesData));
     }
 
     @NonNull
-    public String encode(Cipher cipher) throws Exception {
+    private static byte[] encodeToBytes(AesData aesData, Cipher cipher) throws Exception {
+        long start = Tracer.start();
         try {
-            byte[] bytes = cipher.doFinal(mAesData.getBytes());
-            byte[] iv = cipher.getParameters().getParameterSpec(IvParameterSpec.class).getIV();
-            return AesData.makeString(bytes, iv);
-        } catch (IllegalBlockSizeException | BadPaddingException | InvalidParameterSpecException exception) {
+            byte[] bytes = cipher.doFinal(aesData.getBytes(), aesData.getOffset(), aesData.getLength());
+            byte[] iv = cipher.getIV();
+            return AesData.makeContainer(aesData.getKey(), bytes, iv);
+        } catch (IllegalBlockSizeException | BadPaddingException exception) {
             throw new Exception("exception while encoding with cipher", exception);
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
         }
     }
 
     @NonNull
-    public String decode(Cipher cipher) throws Exception {
+    private static byte[] decodeToBytes(AesData aesData, Cipher cipher) throws Exception {
+        long start = Tracer.start();
         try {
-            byte[] bytes = mAesData.getBytes();
-            return new String(cipher.doFinal(bytes));
+            return cipher.doFinal(aesData.getBytes(), aesData.getOffset(), aesData.getLength());
         } catch (IllegalBlockSizeException | BadPaddingException exception) {
             throw new Exception("exception while decoding with cipher", exception);
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
         }
     }
 
+    /**
+     * Parses the input and prepares the keystore cipher, pass {@link CryptoOperation#getCryptoObject()} to the authentication
+     */
+    @NonNull
+    @Override
+    public CryptoOperation newOperation(String text, Purpose purpose, String key) throws Exception {
+        return newOperation(new AesData(purpose, text, key));
+    }
+
+    @NonNull
+    @Override
+    public CryptoOperation newOperation(byte[] data, Purpose purpose, String key) throws Exception {
+        return newOperation(new AesData(purpose, data, key));
+    }
+
+    /**
+     * Encoding cipher doesn't depend on the input, so it can be initialized before the input is known
+     */
+    @NonNull
+    @Override
+    public FingerprintManager.CryptoObject getEncodeCryptoObject(String key) throws Exception {
+        return new FingerprintManager.CryptoObject(initEncodeCipher(key, 0));
+    }
+
+    /**
+     * Encoding operation with the cipher of {@link #getEncodeCryptoObject(String)}
+     */
     @NonNull
-    public FingerprintManager.CryptoObject getCryptoObject(String text, Purpose purpose, String key) throws Exception {
-        mAesData = new AesData(purpose, text, key);
+    @Override
+    public CryptoOperation newEncodeOperation(String text, String key, FingerprintManager.CryptoObject cryptoObject) {
+        return new CryptoOperation(Purpose.ENCODE, key, new AesData(Purpose.ENCODE, text, key), cryptoObject);
+    }
+
+    @NonNull
+    @Override
+    public CryptoOperation newEncodeOperation(byte[] data, String key, FingerprintManager.CryptoObject cryptoObject) {
+        return new CryptoOperation(Purpose.ENCODE, key, new AesData(Purpose.ENCODE, data, key), cryptoObject);
+    }
+
+    @NonNull
+    private CryptoOperation newOperation(AesData aesData) throws Exception {
         Cipher cipher = null;
-        switch (purpose) {
+        switch (aesData.getPurpose()) {
             case DECODE:
-                cipher = initDecodeCipher(mAesData.getKey(), mAesData.getIv());
+                cipher = initDecodeCipher(aesData);
                 break;
             case ENCODE:
-                cipher = initEncodeCipher(mAesData.getKey());
+                cipher = initEncodeCipher(aesData.getKey(), 0);
                 break;
         }
-        return new FingerprintManager.CryptoObject(cipher);
+        return new CryptoOperation(aesData.getPurpose(), aesData.getKey(), aesData, new FingerprintManager.CryptoObject(cipher));
     }
 
     @NonNull
-    private Cipher initDecodeCipher(String key, byte[] iv) throws Exception {
+    private Cipher initDecodeCipher(AesData aesData) throws Exception {
+        String key = aesData.getKey();
+        IvParameterSpec iv = new IvParameterSpec(aesData.getIv(), aesData.getIvOffset(), aesData.getIvLength());
         try {
             SecretKey secretKey = mKeyStoreManager.getSecretKey(key);
-
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
-            return cipher;
+            return mKeyStoreManager.initCipher(TRANSFORMATION, Cipher.DECRYPT_MODE, secretKey, iv);
         } catch (KeyPermanentlyInvalidatedException | UnrecoverableKeyException e) {
             mKeyStoreManager.deleteKey(key);
             if (e instanceof UnrecoverableKeyException) {
                 throw new KeyPermanentlyInvalidatedException("An exception happens while getting Key", e);
             }
             throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
         } catch (GeneralSecurityException e) {
             throw new Exception("An exception happens while initializing Cipher", e);
         }
     }
 
     @NonNull
-    private Cipher initEncodeCipher(String key) throws Exception {
-        if (!mKeyStoreManager.containsKey(key)) {
-            generateKey(key);
-        }
-
-        SecretKey secretKey = mKeyStoreManager.getSecretKey(key);
+    private Cipher initEncodeCipher(String key, int authValiditySeconds) throws Exception {
+        createKey(key, authValiditySeconds);
 
         try {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            return cipher;
+            SecretKey secretKey = mKeyStoreManager.getSecretKey(key);
+            return mKeyStoreManager.initCipher(TRANSFORMATION, Cipher.ENCRYPT_MODE, secretKey, null);
         } catch (KeyPermanentlyInvalidatedException e) {
             mKeyStoreManager.deleteKey(key);
             throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
         } catch (GeneralSecurityException e) {
             Log.e(TAG, "initEncodeCipher: ", e);
             throw new Exception("An exception happens while initializing Cipher", e);
         }
     }
 
-    private void generateKey(String alias) throws Exception {
-        try {
-            KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
-            if (keyGenerator != null) {
-                KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
-                        .setBlockModes(KeyProperties.BLOCK_MODE_CBC)
-                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_PKCS7)
-                        .setUserAuthenticationRequired(true);
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    builder.setInvalidatedByBiometricEnrollment(false);
-                }
-
-                keyGenerator.init(builder.build());
-                keyGenerator.generateKey();
+    /**
+     * Generates the key if it doesn't exist yet and caches its handle, so the first operation only initializes the cipher
+     *
+     * @return true if the key was generated
+     */
+    @Override
+    public boolean prewarm(String key, int authValiditySeconds) throws Exception {
+        boolean generated = createKey(key, authValiditySeconds);
+        mKeyStoreManager.getSecretKey(key);
+        return generated;
+    }
+
+    private boolean createKey(String key, int authValiditySeconds) throws Exception {
+        synchronized (mKeyStoreManager.getKeyLock(key)) {
+            if (mKeyStoreManager.containsKey(key)) {
+                return false;
             }
-        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidAlgorithmParameterException e) {
+            generateKey(key, authValiditySeconds);
+            return true;
+        }
+    }
+
+    private void generateKey(String alias, int authValiditySeconds) throws Exception {
+        try {
+            KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_CBC)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_PKCS7);
+            KeyStoreManager.requireUserAuthentication(builder, authValiditySeconds);
+
+            mKeyStoreManager.generateSecretKey(KeyProperties.KEY_ALGORITHM_AES, builder.build());
+        } catch (GeneralSecurityException e) {
             throw new Exception("Can't generate key " + alias, e);
         }
     }
@@ -10,40 +10,75 @@ import androidx.annotation.NonNull;
 
 class AesData {
 
+    /**
+     * Separator of the legacy {@code Base64(ciphertext) + SEPARATOR + Base64(iv)} format, it is only read now
+     */
     private static final String SEPARATOR = "-SEPARATOR-";
+    private static final byte[] NO_KEY = new byte[0];
 
-    private String mKey;
-    private Purpose mPurpose;
-    private byte[] mBytes = null;
-    private byte[] mIv = null;
+    private final String mKey;
+    private final Purpose mPurpose;
+    private final byte[] mBytes;
+    private final int mOffset;
+    private final int mLength;
+    private final byte[] mIv;
+    private final int mIvOffset;
+    private final int mIvLength;
 
     @NonNull
-    static String makeString(byte[] bytes, byte[] iv) {
-        String encodedString = Base64.encodeToString(bytes, Base64.NO_WRAP);
-        String initialVector = Base64.encodeToString(iv, Base64.NO_WRAP);
-        return String.format("%1$s%2$s%3$s", encodedString, SEPARATOR, initialVector);
+    static byte[] makeContainer(String key, byte[] bytes, byte[] iv) {
+        return CipherContainer.toByteArray(CipherContainer.ALGORITHM_AES_CBC, CipherContainer.aliasHash(key), iv, NO_KEY, bytes, 0);
+    }
+
+    @NonNull
+    static String makeString(String key, byte[] bytes, byte[] iv) {
+        return Base64.encodeToString(makeContainer(key, bytes, iv), Base64.NO_WRAP);
     }
 
     AesData(Purpose purpose, String inputText, String key) {
+        this(purpose, purpose == Purpose.DECODE ? parseText(inputText, key) : inputText.getBytes(), key);
+    }
+
+    AesData(Purpose purpose, byte[] input, String key) {
         mKey = key;
         mPurpose = purpose;
         switch (purpose) {
             case DECODE:
-                if (inputText.contains(SEPARATOR)) {
-                    String[] temp = inputText.split(SEPARATOR);
-                    mBytes = Base64.decode(temp[0], Base64.NO_WRAP);
-                    mIv = Base64.decode(temp[1], Base64.NO_WRAP);
-                } else {
-                    throw new IllegalArgumentException("Input string isn't valid. Missing SEPARATOR. Are you trying to decode not encoded string?");
-                }
+                CipherContainer container = CipherContainer.parse(input);
+                container.checkAlgorithm(CipherContainer.ALGORITHM_AES_CBC, key);
+                mBytes = input;
+                mOffset = container.getCiphertextOffset();
+                mLength = container.getSealedLength();
+                mIv = input;
+                mIvOffset = container.getIvOffset();
+                mIvLength = container.getIvLength();
                 break;
             case ENCODE:
             default:
-                mBytes = inputText.getBytes();
+                mBytes = input;
+                mOffset = 0;
+                mLength = input.length;
+                mIv = null;
+                mIvOffset = 0;
+                mIvLength = 0;
                 break;
         }
     }
 
+    /**
+     * Converts the legacy {@code Base64(ciphertext) + SEPARATOR + Base64(iv)} string to a container,
+     * current strings are just Base64 of the container
+     */
+    private static byte[] parseText(String inputText, String key) {
+        int separatorIndex = inputText.indexOf(SEPARATOR);
+        if (separatorIndex < 0) {
+            return Base64Text.decode(inputText);
+        }
+        byte[] bytes = Base64.decode(inputText.substring(0, separatorIndex), Base64.NO_WRAP);
+        byte[] iv = Base64.decode(inputText.substring(separatorIndex + SEPARATOR.length()), Base64.NO_WRAP);
+        return CipherContainer.toByteArray(CipherContainer.ALGORITHM_AES_CBC, CipherContainer.aliasHash(key), iv, NO_KEY, bytes, 0);
+    }
+
     String getKey() {
         return mKey;
     }
@@ -56,8 +91,24 @@ class AesData {
         return mBytes;
     }
 
+    int getOffset() {
+        return mOffset;
+    }
+
+    int getLength() {
+        return mLength;
+    }
+
     byte[] getIv() {
         return mIv;
     }
 
-}
\ No newline at end of file
+    int getIvOffset() {
+        return mIvOffset;
+    }
+
+    int getIvLength() {
+        return mIvLength;
+    }
+
+}
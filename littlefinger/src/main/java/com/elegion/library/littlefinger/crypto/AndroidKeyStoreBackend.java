@@ -0,0 +1,113 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.spec.X509EncodedKeySpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.KeyGenerator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * @author Azret Magometov
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class AndroidKeyStoreBackend implements KeyStoreBackend {
+
+    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+
+    private KeyStore mKeyStore;
+
+    @Override
+    public synchronized void load() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+        keyStore.load(null);
+        mKeyStore = keyStore;
+    }
+
+    @Nullable
+    @Override
+    public Key getKey(@NonNull String alias) throws GeneralSecurityException {
+        return getKeyStore().getKey(alias, null);
+    }
+
+    @Nullable
+    @Override
+    public PublicKey getPublicKey(@NonNull String alias) throws GeneralSecurityException {
+        Certificate certificate = getKeyStore().getCertificate(alias);
+        if (certificate == null) {
+            return null;
+        }
+        PublicKey publicKey = certificate.getPublicKey();
+        // workaround for using public key
+        // from https://developer.android.com/reference/android/security/keystore/KeyGenParameterSpec.html
+        // from https://code.google.com/p/android/issues/detail?id=197719
+        return KeyFactory.getInstance(publicKey.getAlgorithm()).generatePublic(new X509EncodedKeySpec(publicKey.getEncoded()));
+    }
+
+    @Override
+    public boolean containsAlias(@NonNull String alias) throws GeneralSecurityException {
+        return getKeyStore().containsAlias(alias);
+    }
+
+    @Override
+    public void deleteEntry(@NonNull String alias) throws GeneralSecurityException {
+        KeyStore keyStore = getKeyStore();
+        if (keyStore.containsAlias(alias)) {
+            keyStore.deleteEntry(alias);
+        }
+    }
+
+    @Override
+    public void generateSecretKey(@NonNull String algorithm, @NonNull KeyGenParameterSpec spec) throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(algorithm, ANDROID_KEY_STORE);
+        keyGenerator.init(spec);
+        keyGenerator.generateKey();
+    }
+
+    @Override
+    public void generateKeyPair(@NonNull String algorithm, @NonNull KeyGenParameterSpec spec) throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm, ANDROID_KEY_STORE);
+        keyPairGenerator.initialize(spec);
+        keyPairGenerator.generateKeyPair();
+    }
+
+    @NonNull
+    @Override
+    public Cipher getCipher(@NonNull String transformation) throws GeneralSecurityException {
+        return Cipher.getInstance(transformation);
+    }
+
+    @NonNull
+    @Override
+    public KeyAgreement getKeyAgreement(@NonNull String algorithm) throws GeneralSecurityException {
+        return KeyAgreement.getInstance(algorithm, ANDROID_KEY_STORE);
+    }
+
+    @NonNull
+    @Override
+    public Signature getSignature(@NonNull String algorithm) throws GeneralSecurityException {
+        return Signature.getInstance(algorithm);
+    }
+
+    private synchronized KeyStore getKeyStore() throws GeneralSecurityException {
+        if (mKeyStore == null) {
+            throw new IllegalStateException("KeyStore isn't loaded");
+        }
+        return mKeyStore;
+    }
+}
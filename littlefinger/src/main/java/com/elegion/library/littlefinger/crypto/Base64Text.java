@@ -0,0 +1,39 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.util.Base64;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Base64 form of the text results, measured as {@link Phase#ENCODING}
+ *
+ * @author Azret Magometov
+ */
+final class Base64Text {
+
+    private Base64Text() {
+    }
+
+    @NonNull
+    static String encode(@NonNull byte[] bytes) {
+        long start = Tracer.start();
+        try {
+            return Base64.encodeToString(bytes, Base64.NO_WRAP);
+        } finally {
+            Tracer.end(Phase.ENCODING, start);
+        }
+    }
+
+    @NonNull
+    static byte[] decode(@NonNull String text) {
+        long start = Tracer.start();
+        try {
+            return Base64.decode(text, Base64.NO_WRAP);
+        } finally {
+            Tracer.end(Phase.ENCODING, start);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.elegion.library.littlefinger.crypto;
+
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Versioned binary ciphertext container:
+ * <pre>
+ * magic "LF" | version (1) | algorithm (1) | alias hash (4) |
+ * iv length (1) | iv | key length (2) | key | tag length (1) | ciphertext length (4) | ciphertext | tag
+ * </pre>
+ * The key field carries wrapped key material when the algorithm needs it.
+ * Parsing doesn't copy the source, all fields are exposed as offsets into {@link #getSource()}.
+ *
+ * @author Azret Magometov
+ */
+
+public final class CipherContainer {
+
+    static final byte ALGORITHM_AES_CBC = 1;
+    static final byte ALGORITHM_ENVELOPE_GCM = 2;
+    static final byte ALGORITHM_RSA_OAEP = 3;
+    static final byte ALGORITHM_RSA_AES_GCM = 4;
+    static final byte ALGORITHM_ECDH_AES_GCM = 5;
+    static final byte ALGORITHM_AES_GCM = 6;
+
+    private static final byte MAGIC_0 = 'L';
+    private static final byte MAGIC_1 = 'F';
+    private static final byte VERSION = 1;
+
+    private static final int FIXED_SIZE = 2 + 1 + 1 + 4 + 1 + 2 + 1 + 4;
+
+    private byte[] mSource;
+    private byte mAlgorithm;
+    private int mAliasHash;
+    private int mIvOffset;
+    private int mIvLength;
+    private int mKeyOffset;
+    private int mKeyLength;
+    private int mCiphertextOffset;
+    private int mCiphertextLength;
+    private int mTagLength;
+
+    /**
+     * Creates an empty container to be reused with {@link #read(byte[], int, int)}
+     */
+    public CipherContainer() {
+    }
+
+    @NonNull
+    public static CipherContainer parse(@NonNull byte[] source) {
+        CipherContainer container = new CipherContainer();
+        container.read(source, 0, source.length);
+        return container;
+    }
+
+    /**
+     * Heap buffers are parsed in place, direct ones are copied once.
+     * Buffer position is moved past the container.
+     */
+    @NonNull
+    public static CipherContainer parse(@NonNull ByteBuffer source) {
+        CipherContainer container = new CipherContainer();
+        int length = source.remaining();
+        if (source.hasArray()) {
+            container.read(source.array(), source.arrayOffset() + source.position(), length);
+        } else {
+            byte[] copy = new byte[length];
+            source.duplicate().get(copy);
+            container.read(copy, 0, length);
+        }
+        source.position(source.position() + length);
+        return container;
+    }
+
+    public static boolean hasMagic(@NonNull byte[] source, int offset, int length) {
+        return length >= FIXED_SIZE
+                && source[offset] == MAGIC_0
+                && source[offset + 1] == MAGIC_1;
+    }
+
+    public static int sizeOf(int ivLength, int keyLength, int sealedLength) {
+        return FIXED_SIZE + ivLength + keyLength + sealedLength;
+    }
+
+    /**
+     * Resets this container to the content of the source, nothing is copied or allocated.
+     *
+     * @throws IllegalArgumentException if the source isn't a valid container
+     */
+    public void read(@NonNull byte[] source, int offset, int length) {
+        if (!hasMagic(source, offset, length)) {
+            throw new IllegalArgumentException("Input isn't valid. Are you trying to decode not encoded data?");
+        }
+        int end = offset + length;
+        int position = offset + 2;
+        byte version = source[position++];
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported container version " + version);
+        }
+        mAlgorithm = source[position++];
+        mAliasHash = getInt(source, position);
+        position += 4;
+
+        mIvLength = source[position++] & 0xFF;
+        mIvOffset = position;
+        position += mIvLength;
+
+        checkBounds(position + 2, end);
+        mKeyLength = ((source[position] & 0xFF) << 8) | (source[position + 1] & 0xFF);
+        mKeyOffset = position + 2;
+        position = mKeyOffset + mKeyLength;
+
+        checkBounds(position + 5, end);
+        mTagLength = source[position++] & 0xFF;
+        mCiphertextLength = getInt(source, position);
+        mCiphertextOffset = position + 4;
+        if (mCiphertextLength < 0 || (long) mCiphertextOffset + mCiphertextLength + mTagLength != end) {
+            throw new IllegalArgumentException("Input isn't valid. Container is truncated or has trailing data");
+        }
+        mSource = source;
+    }
+
+    /**
+     * @param sealed ciphertext with the authentication tag (if any) appended, as returned by {@link javax.crypto.Cipher#doFinal()}
+     * @return count of written bytes
+     */
+    public static int write(@NonNull byte[] destination, int offset, byte algorithm, int aliasHash,
+                            @NonNull byte[] iv, @NonNull byte[] key, @NonNull byte[] sealed, int tagLength) {
+        return write(ByteBuffer.wrap(destination, offset, destination.length - offset), algorithm, aliasHash, iv, key, sealed, tagLength);
+    }
+
+    public static int write(@NonNull ByteBuffer destination, byte algorithm, int aliasHash,
+                            @NonNull byte[] iv, @NonNull byte[] key, @NonNull byte[] sealed, int tagLength) {
+        int start = destination.position();
+        destination.put(MAGIC_0)
+                .put(MAGIC_1)
+                .put(VERSION)
+                .put(algorithm)
+                .putInt(aliasHash)
+                .put((byte) iv.length)
+                .put(iv)
+                .putShort((short) key.length)
+                .put(key)
+                .put((byte) tagLength)
+                .putInt(sealed.length - tagLength)
+                .put(sealed);
+        return destination.position() - start;
+    }
+
+    @NonNull
+    public static byte[] toByteArray(byte algorithm, int aliasHash, @NonNull byte[] iv, @NonNull byte[] key, @NonNull byte[] sealed, int tagLength) {
+        byte[] result = new byte[sizeOf(iv.length, key.length, sealed.length)];
+        write(result, 0, algorithm, aliasHash, iv, key, sealed, tagLength);
+        return result;
+    }
+
+    /**
+     * Hash stored in the container to detect decoding with a wrong alias before touching the keystore
+     */
+    public static int aliasHash(@NonNull String alias) {
+        return alias.hashCode();
+    }
+
+    void checkAlgorithm(byte algorithm, String alias) {
+        if (mAlgorithm != algorithm) {
+            throw new IllegalArgumentException("Data was encoded with another algorithm");
+        }
+        if (mAliasHash != aliasHash(alias)) {
+            throw new IllegalArgumentException("Data was encoded with another key");
+        }
+    }
+
+    private static void checkBounds(int position, int end) {
+        if (position > end) {
+            throw new IllegalArgumentException("Input isn't valid. Container is truncated");
+        }
+    }
+
+    private static int getInt(byte[] source, int position) {
+        return ((source[position] & 0xFF) << 24)
+                | ((source[position + 1] & 0xFF) << 16)
+                | ((source[position + 2] & 0xFF) << 8)
+                | (source[position + 3] & 0xFF);
+    }
+
+    public byte[] getSource() {
+        return mSource;
+    }
+
+    public byte getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    public int getAliasHash() {
+        return mAliasHash;
+    }
+
+    public int getIvOffset() {
+        return mIvOffset;
+    }
+
+    public int getIvLength() {
+        return mIvLength;
+    }
+
+    public int getKeyOffset() {
+        return mKeyOffset;
+    }
+
+    public int getKeyLength() {
+        return mKeyLength;
+    }
+
+    public int getCiphertextOffset() {
+        return mCiphertextOffset;
+    }
+
+    public int getCiphertextLength() {
+        return mCiphertextLength;
+    }
+
+    public int getTagLength() {
+        return mTagLength;
+    }
+
+    /**
+     * Ciphertext and tag are adjacent, so they can be passed to {@link javax.crypto.Cipher#doFinal(byte[], int, int)} at once
+     */
+    public int getSealedLength() {
+        return mCiphertextLength + mTagLength;
+    }
+}
@@ -5,5 +5,36 @@ package com.elegion.library.littlefinger.crypto;
  */
 
 public enum CryptoAlgorithm {
-    RSA, AES
+    RSA, AES,
+
+    /**
+     * Fingerprint-bound keystore key only wraps a random AES-256-GCM data key,
+     * the payload itself is encrypted in software.
+     * Uses its own keystore key, so don't share aliases with {@link #AES}.
+     */
+    ENVELOPE,
+
+    /**
+     * Random AES-256-GCM data key wrapped with the {@link #RSA} public key: encoding needs no fingerprint
+     * and isn't limited to one RSA block, decoding unwraps the data key with the fingerprint-bound private key.
+     * Uses the same key pair as {@link #RSA}, so their aliases can be shared.
+     */
+    HYBRID,
+
+    /**
+     * ECIES with a P-256 keystore key: encoding needs no fingerprint and adds only 65 bytes of ephemeral key,
+     * decoding agrees on the data key with the fingerprint-bound private key.
+     * Needs Android 12 and the session mode, as key agreement can't be bound to a crypto object.
+     * Otherwise operations get {@link com.elegion.library.littlefinger.fingerprint.State#NOT_SUPPORTED}
+     * and {@link com.elegion.library.littlefinger.fingerprint.State#EXCEPTION} respectively.
+     */
+    EC,
+
+    /**
+     * Keystore AES-256-GCM key encrypts the payload itself, modification is detected on decoding.
+     * The alias and an optional record id are bound to the ciphertext as associated data,
+     * see {@link com.elegion.library.littlefinger.LittleFinger#encode(byte[], String, String, com.elegion.library.littlefinger.fingerprint.Callback)}.
+     * Uses its own keystore key, so don't share aliases with {@link #AES}.
+     */
+    GCM
 }
@@ -0,0 +1,46 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable context of a single crypto operation: its parsed input and the keystore cipher
+ * to be unlocked by the user. Every operation has its own context, so cryptographers keep
+ * no per-operation state and can run operations concurrently.
+ *
+ * @author Azret Magometov
+ */
+
+public final class CryptoOperation {
+
+    private final Purpose mPurpose;
+    private final String mKey;
+    private final Object mData;
+    private final FingerprintManager.CryptoObject mCryptoObject;
+
+    CryptoOperation(Purpose purpose, String key, Object data, FingerprintManager.CryptoObject cryptoObject) {
+        mPurpose = purpose;
+        mKey = key;
+        mData = data;
+        mCryptoObject = cryptoObject;
+    }
+
+    @NonNull
+    public FingerprintManager.CryptoObject getCryptoObject() {
+        return mCryptoObject;
+    }
+
+    public Purpose getPurpose() {
+        return mPurpose;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T getData() {
+        return (T) mData;
+    }
+}
@@ -0,0 +1,39 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Operations of a {@link CryptoAlgorithm} that run without {@link FingerprintManager.CryptoObject}:
+ * encoding with a public key and everything with keys that have an authentication validity window
+ *
+ * @author Azret Magometov
+ */
+public interface Cryptographer {
+
+    /**
+     * @param authValiditySeconds authentication validity window of the key, used only if the key doesn't exist yet
+     */
+    @NonNull
+    String encode(String text, String key, int authValiditySeconds) throws Exception;
+
+    /**
+     * @return binary {@link CipherContainer}
+     */
+    @NonNull
+    byte[] encodeToBytes(byte[] data, String key, int authValiditySeconds) throws Exception;
+
+    @NonNull
+    String decode(String text, String key) throws Exception;
+
+    @NonNull
+    byte[] decodeToBytes(byte[] data, String key) throws Exception;
+
+    /**
+     * Generates the key if it doesn't exist yet and caches its handle
+     *
+     * @return true if the key was generated
+     */
+    boolean prewarm(String key, int authValiditySeconds) throws Exception;
+}
@@ -0,0 +1,113 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Cryptographers sharing one {@link KeyStoreManager}. Sets with different backends don't see keys and caches of each other,
+ * the default set is made of the process-wide instances working with AndroidKeyStore.
+ *
+ * @author Azret Magometov
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public final class Cryptographers {
+
+    private static Cryptographers DEFAULT;
+
+    private final KeyStoreManager mKeyStoreManager;
+    private final AesCryptographer mAesCryptographer;
+    private final EnvelopeCryptographer mEnvelopeCryptographer;
+    private final GcmCryptographer mGcmCryptographer;
+    private final RsaCryptographer mRsaCryptographer;
+    private final HybridCryptographer mHybridCryptographer;
+    private final SignatureCryptographer mSignatureCryptographer;
+    private final StreamCryptographer mStreamCryptographer;
+    private final boolean mDefault;
+    private EcCryptographer mEcCryptographer;
+
+    @NonNull
+    public synchronized static Cryptographers getDefault() {
+        if (DEFAULT == null) {
+            DEFAULT = new Cryptographers();
+        }
+        return DEFAULT;
+    }
+
+    private Cryptographers() {
+        mKeyStoreManager = KeyStoreManager.getInstance();
+        mAesCryptographer = AesCryptographer.getInstance();
+        mEnvelopeCryptographer = EnvelopeCryptographer.getInstance();
+        mGcmCryptographer = GcmCryptographer.getInstance();
+        mRsaCryptographer = RsaCryptographer.getInstance();
+        mHybridCryptographer = HybridCryptographer.getInstance();
+        mSignatureCryptographer = SignatureCryptographer.getInstance();
+        mStreamCryptographer = StreamCryptographer.getInstance();
+        mDefault = true;
+    }
+
+    /**
+     * Set working with its own keystore, e.g. {@link FakeKeyStoreBackend} off-device
+     */
+    public Cryptographers(@NonNull KeyStoreBackend backend) {
+        mKeyStoreManager = new KeyStoreManager(backend);
+        mAesCryptographer = new AesCryptographer(mKeyStoreManager);
+        mEnvelopeCryptographer = new EnvelopeCryptographer(mKeyStoreManager);
+        mGcmCryptographer = new GcmCryptographer(mKeyStoreManager);
+        mRsaCryptographer = new RsaCryptographer(mKeyStoreManager);
+        mHybridCryptographer = new HybridCryptographer(mRsaCryptographer, mEnvelopeCryptographer);
+        mSignatureCryptographer = new SignatureCryptographer(mKeyStoreManager);
+        mStreamCryptographer = new StreamCryptographer(mEnvelopeCryptographer);
+        mDefault = false;
+    }
+
+    @NonNull
+    public KeyStoreManager getKeyStoreManager() {
+        return mKeyStoreManager;
+    }
+
+    @NonNull
+    public AesCryptographer getAesCryptographer() {
+        return mAesCryptographer;
+    }
+
+    @NonNull
+    public EnvelopeCryptographer getEnvelopeCryptographer() {
+        return mEnvelopeCryptographer;
+    }
+
+    @NonNull
+    public GcmCryptographer getGcmCryptographer() {
+        return mGcmCryptographer;
+    }
+
+    @NonNull
+    public RsaCryptographer getRsaCryptographer() {
+        return mRsaCryptographer;
+    }
+
+    @NonNull
+    public HybridCryptographer getHybridCryptographer() {
+        return mHybridCryptographer;
+    }
+
+    @NonNull
+    public SignatureCryptographer getSignatureCryptographer() {
+        return mSignatureCryptographer;
+    }
+
+    @NonNull
+    public StreamCryptographer getStreamCryptographer() {
+        return mStreamCryptographer;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.S)
+    @NonNull
+    public synchronized EcCryptographer getEcCryptographer() {
+        if (mEcCryptographer == null) {
+            mEcCryptographer = mDefault ? EcCryptographer.getInstance() : new EcCryptographer(mKeyStoreManager);
+        }
+        return mEcCryptographer;
+    }
+}
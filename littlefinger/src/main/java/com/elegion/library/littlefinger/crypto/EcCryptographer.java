@@ -0,0 +1,290 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.KeyProperties;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.UnrecoverableKeyException;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.DATA_KEY_SIZE_BITS;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.DATA_TRANSFORMATION;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_IV_SIZE_BYTES;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_TAG_SIZE_BITS;
+
+/**
+ * {@link CryptoAlgorithm#EC}: ECIES over a P-256 keystore key. Encoding agrees on a secret between a fresh
+ * software key pair and the keystore public key, so it needs no fingerprint; decoding repeats the agreement
+ * with the fingerprint-bound private key. The secret is expanded with HKDF-SHA256 to an AES-256-GCM key.
+ * Container key field is the uncompressed ephemeral public point.
+ * <p>
+ * Key agreement can't be authorized by {@code FingerprintManager.CryptoObject}, so keys are generated only
+ * with an authentication validity window, per-operation authentication is rejected.
+ *
+ * @author Azret Magometov
+ */
+@RequiresApi(api = Build.VERSION_CODES.S)
+public class EcCryptographer implements Cryptographer {
+
+    private static final String CURVE = "secp256r1";
+    private static final String KEY_AGREEMENT = "ECDH";
+    private static final String KDF_MAC = "HmacSHA256";
+    private static final byte[] KDF_INFO = "LittleFinger EC AES-256-GCM".getBytes();
+    private static final byte UNCOMPRESSED_POINT = 0x04;
+    private static final int GCM_TAG_SIZE_BYTES = GCM_TAG_SIZE_BITS / 8;
+
+    private static EcCryptographer INSTANCE;
+    private final KeyStoreManager mKeyStoreManager;
+    private SecureRandom mSecureRandom;
+
+    @NonNull
+    public synchronized static EcCryptographer getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new EcCryptographer(KeyStoreManager.getInstance());
+        }
+        return INSTANCE;
+    }
+
+    EcCryptographer(KeyStoreManager keyStoreManager) {
+        mKeyStoreManager = keyStoreManager;
+        mSecureRandom = new SecureRandom();
+    }
+
+    /**
+     * Encodes with the public key, no authentication is needed
+     *
+     * @param authValiditySeconds authentication validity window of the private key, used only if the key doesn't exist yet
+     */
+    @NonNull
+    @Override
+    public String encode(String text, String key, int authValiditySeconds) throws Exception {
+        return Base64Text.encode(encodeToBytes(text.getBytes(), key, authValiditySeconds));
+    }
+
+    /**
+     * @return binary {@link CipherContainer}
+     */
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(byte[] data, String key, int authValiditySeconds) throws Exception {
+        createKey(key, authValiditySeconds);
+        ECPublicKey recipientKey = (ECPublicKey) mKeyStoreManager.getPublicKey(key);
+
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_EC);
+            keyPairGenerator.initialize(new ECGenParameterSpec(CURVE), mSecureRandom);
+            KeyPair ephemeral = keyPairGenerator.generateKeyPair();
+            byte[] ephemeralPoint = encodePoint((ECPublicKey) ephemeral.getPublic());
+
+            KeyAgreement keyAgreement = KeyAgreement.getInstance(KEY_AGREEMENT);
+            keyAgreement.init(ephemeral.getPrivate());
+            dataKey = deriveKey(agree(keyAgreement, recipientKey), ephemeralPoint);
+
+            byte[] iv = new byte[GCM_IV_SIZE_BYTES];
+            mSecureRandom.nextBytes(iv);
+            Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+            dataCipher.init(Cipher.ENCRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey), new GCMParameterSpec(GCM_TAG_SIZE_BITS, iv));
+            byte[] bytes = dataCipher.doFinal(data);
+
+            return CipherContainer.toByteArray(CipherContainer.ALGORITHM_ECDH_AES_GCM, CipherContainer.aliasHash(key), iv, ephemeralPoint, bytes, GCM_TAG_SIZE_BYTES);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while encoding with agreed key", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Decodes with the private key, the user must have been authenticated within its validity window
+     */
+    @NonNull
+    @Override
+    public String decode(String text, String key) throws Exception {
+        return new String(decodeToBytes(Base64Text.decode(text), key));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(byte[] data, String key) throws Exception {
+        CipherContainer container = CipherContainer.parse(data);
+        container.checkAlgorithm(CipherContainer.ALGORITHM_ECDH_AES_GCM, key);
+        if (container.getKeyLength() == 0 || container.getIvLength() != GCM_IV_SIZE_BYTES) {
+            throw new IllegalArgumentException("Input isn't valid. Ephemeral key is missing");
+        }
+        byte[] source = container.getSource();
+        ECPublicKey recipientKey = (ECPublicKey) mKeyStoreManager.getPublicKey(key);
+        KeyAgreement keyAgreement = initKeyAgreement(key);
+
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            byte[] ephemeralPoint = Arrays.copyOfRange(source, container.getKeyOffset(), container.getKeyOffset() + container.getKeyLength());
+            PublicKey ephemeralKey = decodePoint(ephemeralPoint, recipientKey.getParams());
+            dataKey = deriveKey(agree(keyAgreement, ephemeralKey), ephemeralPoint);
+
+            Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+            dataCipher.init(Cipher.DECRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey),
+                    new GCMParameterSpec(GCM_TAG_SIZE_BITS, source, container.getIvOffset(), container.getIvLength()));
+            return dataCipher.doFinal(source, container.getCiphertextOffset(), container.getSealedLength());
+        } catch (AEADBadTagException exception) {
+            throw new Exception("ciphertext was modified or key doesn't match", exception);
+        } catch (IllegalBlockSizeException | BadPaddingException exception) {
+            throw new Exception("exception while decoding with cipher", exception);
+        } catch (UserNotAuthenticatedException exception) {
+            throw exception;
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while agreeing on data key", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Generates the key if it doesn't exist yet and caches its public key,
+     * so the first encoding only runs the software agreement
+     *
+     * @return true if the key was generated
+     */
+    @Override
+    public boolean prewarm(String key, int authValiditySeconds) throws Exception {
+        boolean generated = createKey(key, authValiditySeconds);
+        mKeyStoreManager.getPublicKey(key);
+        return generated;
+    }
+
+    private KeyAgreement initKeyAgreement(String key) throws Exception {
+        try {
+            PrivateKey privateKey = mKeyStoreManager.getPrivateKey(key);
+            return mKeyStoreManager.initKeyAgreement(KEY_AGREEMENT, privateKey);
+        } catch (KeyPermanentlyInvalidatedException | UnrecoverableKeyException e) {
+            mKeyStoreManager.deleteKey(key);
+            if (e instanceof UnrecoverableKeyException) {
+                throw new KeyPermanentlyInvalidatedException("An exception happens while getting Key", e);
+            }
+            throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new Exception("Exception while initializing key agreement", e);
+        }
+    }
+
+    private static byte[] agree(KeyAgreement keyAgreement, PublicKey publicKey) throws GeneralSecurityException {
+        keyAgreement.doPhase(publicKey, true);
+        return keyAgreement.generateSecret();
+    }
+
+    /**
+     * HKDF-SHA256 of the shared secret, salted with the ephemeral point so every message gets its own key
+     */
+    private static byte[] deriveKey(byte[] sharedSecret, byte[] salt) throws GeneralSecurityException {
+        try {
+            Mac mac = Mac.getInstance(KDF_MAC);
+            mac.init(new SecretKeySpec(salt, KDF_MAC));
+            byte[] pseudoRandomKey = mac.doFinal(sharedSecret);
+
+            mac.init(new SecretKeySpec(pseudoRandomKey, KDF_MAC));
+            EnvelopeCryptographer.wipe(pseudoRandomKey);
+            mac.update(KDF_INFO);
+            mac.update((byte) 1);
+            byte[] output = mac.doFinal();
+            if (output.length == DATA_KEY_SIZE_BITS / 8) {
+                return output;
+            }
+            byte[] dataKey = Arrays.copyOf(output, DATA_KEY_SIZE_BITS / 8);
+            EnvelopeCryptographer.wipe(output);
+            return dataKey;
+        } finally {
+            EnvelopeCryptographer.wipe(sharedSecret);
+        }
+    }
+
+    private static byte[] encodePoint(ECPublicKey publicKey) {
+        int size = fieldSize(publicKey.getParams());
+        byte[] point = new byte[1 + 2 * size];
+        point[0] = UNCOMPRESSED_POINT;
+        writeCoordinate(publicKey.getW().getAffineX(), point, 1, size);
+        writeCoordinate(publicKey.getW().getAffineY(), point, 1 + size, size);
+        return point;
+    }
+
+    private static PublicKey decodePoint(byte[] point, ECParameterSpec params) throws GeneralSecurityException {
+        int size = fieldSize(params);
+        if (point.length != 1 + 2 * size || point[0] != UNCOMPRESSED_POINT) {
+            throw new IllegalArgumentException("Input isn't valid. Ephemeral key isn't an uncompressed point");
+        }
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(point, 1, 1 + size));
+        BigInteger y = new BigInteger(1, Arrays.copyOfRange(point, 1 + size, point.length));
+        return KeyFactory.getInstance(KeyProperties.KEY_ALGORITHM_EC).generatePublic(new ECPublicKeySpec(new ECPoint(x, y), params));
+    }
+
+    private static int fieldSize(ECParameterSpec params) {
+        return (params.getCurve().getField().getFieldSize() + 7) / 8;
+    }
+
+    private static void writeCoordinate(BigInteger coordinate, byte[] destination, int offset, int size) {
+        byte[] bytes = coordinate.toByteArray();
+        // toByteArray adds a sign byte or drops leading zeros
+        int length = Math.min(bytes.length, size);
+        System.arraycopy(bytes, bytes.length - length, destination, offset + size - length, length);
+    }
+
+    private boolean createKey(String key, int authValiditySeconds) throws Exception {
+        synchronized (mKeyStoreManager.getKeyLock(key)) {
+            if (mKeyStoreManager.containsKey(key)) {
+                return false;
+            }
+            generateKey(key, authValiditySeconds);
+            return true;
+        }
+    }
+
+    private void generateKey(String alias, int authValiditySeconds) throws Exception {
+        if (authValiditySeconds <= 0) {
+            throw new IllegalArgumentException("EC keys need an authentication validity window");
+        }
+        try {
+            KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_AGREE_KEY)
+                    .setAlgorithmParameterSpec(new ECGenParameterSpec(CURVE));
+            KeyStoreManager.requireUserAuthentication(builder, authValiditySeconds);
+
+            mKeyStoreManager.generateKeyPair(KeyProperties.KEY_ALGORITHM_EC, builder.build());
+        } catch (GeneralSecurityException e) {
+            throw new Exception("An exception happens while generating a new KeyPair", e);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.DATA_TRANSFORMATION;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_IV_SIZE_BYTES;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_TAG_SIZE_BITS;
+import static com.elegion.library.littlefinger.crypto.SegmentTask.TAG_SIZE_BYTES;
+
+/**
+ * Read-only seekable view of a file written by {@link StreamCryptographer}.
+ * <p>
+ * The file is opened locked, {@link #unlock(Cipher)} unwraps the data key with the cipher of the authenticated
+ * {@link #getCryptoObject()}. After that a read decrypts only the segments covering the requested range,
+ * the last decrypted segment is kept, so sequential small reads don't decrypt it again.
+ * {@link #lock()} and {@link #close()} wipe the data key and the decrypted segment.
+ * {@link SeekableByteChannel} appeared in Android 7.0.
+ *
+ * @author Azret Magometov
+ */
+@RequiresApi(api = Build.VERSION_CODES.N)
+public final class EncryptedFile implements SeekableByteChannel {
+
+    private final FileChannel mChannel;
+    private final String mKey;
+    private final StreamHeader mHeader;
+    private final long mDataOffset;
+    private final long mSize;
+    private final int mSegmentCount;
+
+    private byte[] mDataKey;
+    private SecretKey mSecretKey;
+    private Cipher mCipher;
+    private final byte[] mNonce = new byte[GCM_IV_SIZE_BYTES];
+    private final ByteBuffer mSealed;
+    private final ByteBuffer mSegment;
+    private int mSegmentIndex = -1;
+    private long mPosition;
+
+    private EncryptedFile(FileChannel channel, String key) throws IOException {
+        mChannel = channel;
+        mKey = key;
+        mHeader = StreamHeader.read(channel);
+        mDataOffset = channel.position();
+
+        int segmentSize = mHeader.getSegmentSize();
+        mSize = SegmentTask.plaintextLength(channel.size() - mDataOffset, segmentSize);
+        if (mSize < 0) {
+            throw new EOFException("File is truncated");
+        }
+        mSegmentCount = SegmentTask.segmentCount(mSize, segmentSize);
+        mSealed = ByteBuffer.allocate(segmentSize + TAG_SIZE_BYTES);
+        mSegment = ByteBuffer.allocate(segmentSize + TAG_SIZE_BYTES);
+        System.arraycopy(mHeader.getNoncePrefix(), 0, mNonce, 0, StreamHeader.NONCE_PREFIX_SIZE);
+    }
+
+    /**
+     * Reads the header, the file stays locked until {@link #unlock(Cipher)}
+     */
+    @NonNull
+    public static EncryptedFile open(@NonNull File file, String key) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            return new EncryptedFile(channel, key);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Crypto object to authenticate, its cipher unwraps the data key of this file
+     */
+    @NonNull
+    public FingerprintManager.CryptoObject getCryptoObject() throws Exception {
+        return getCryptoObject(StreamCryptographer.getInstance());
+    }
+
+    /**
+     * @param cryptographer cryptographer of the keystore the file was encrypted with
+     */
+    @NonNull
+    public FingerprintManager.CryptoObject getCryptoObject(@NonNull StreamCryptographer cryptographer) throws Exception {
+        return cryptographer.getDecodeCryptoObject(mKey, mHeader);
+    }
+
+    public synchronized void unlock(Cipher unwrapCipher) throws Exception {
+        ensureOpen();
+        byte[] dataKey = null;
+        try {
+            dataKey = unwrapCipher.doFinal(mHeader.getWrappedKey());
+            Cipher cipher = Cipher.getInstance(DATA_TRANSFORMATION);
+            lock();
+            mDataKey = dataKey;
+            mSecretKey = EnvelopeCryptographer.toSecretKey(dataKey);
+            mCipher = cipher;
+            dataKey = null;
+        } catch (AEADBadTagException exception) {
+            throw new Exception("file was modified or key doesn't match", exception);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while unlocking file", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+        }
+    }
+
+    public synchronized boolean isUnlocked() {
+        return mSecretKey != null;
+    }
+
+    /**
+     * Wipes the data key and the decrypted segment, the file stays open
+     */
+    public synchronized void lock() {
+        EnvelopeCryptographer.wipe(mDataKey);
+        mDataKey = null;
+        mSecretKey = null;
+        mCipher = null;
+        wipeSegment();
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (mSecretKey == null) {
+            throw new IllegalStateException("File is locked");
+        }
+        if (mPosition >= mSize) {
+            return -1;
+        }
+        int segmentSize = mHeader.getSegmentSize();
+        int count = 0;
+        while (dst.hasRemaining() && mPosition < mSize) {
+            int index = (int) (mPosition / segmentSize);
+            loadSegment(index);
+            int offset = (int) (mPosition - (long) index * segmentSize);
+            int length = Math.min(dst.remaining(), mSegment.limit() - offset);
+            ByteBuffer slice = mSegment.duplicate();
+            slice.position(offset).limit(offset + length);
+            dst.put(slice);
+            mPosition += length;
+            count += length;
+        }
+        return count;
+    }
+
+    private void loadSegment(int index) throws IOException {
+        if (index == mSegmentIndex) {
+            return;
+        }
+        mSegmentIndex = -1;
+        int segmentSize = mHeader.getSegmentSize();
+        boolean last = index == mSegmentCount - 1;
+        int plaintextSize = last ? (int) (mSize - (long) index * segmentSize) : segmentSize;
+
+        mSealed.clear();
+        mSealed.limit(plaintextSize + TAG_SIZE_BYTES);
+        long position = mDataOffset + (long) index * (segmentSize + TAG_SIZE_BYTES);
+        while (mSealed.hasRemaining()) {
+            if (mChannel.read(mSealed, position + mSealed.position()) < 0) {
+                throw new EOFException("File is truncated");
+            }
+        }
+        mSealed.flip();
+
+        StreamCryptographer.setSegmentNonce(mNonce, index, last);
+        try {
+            mCipher.init(Cipher.DECRYPT_MODE, mSecretKey, new GCMParameterSpec(GCM_TAG_SIZE_BITS, mNonce));
+            mSegment.clear();
+            mCipher.doFinal(mSealed, mSegment);
+        } catch (GeneralSecurityException exception) {
+            wipeSegment();
+            throw new IOException("segment " + index + " was modified or key doesn't match", exception);
+        }
+        mSegment.flip();
+        mSegmentIndex = index;
+    }
+
+    private void wipeSegment() {
+        Arrays.fill(mSegment.array(), (byte) 0);
+        mSegment.clear().limit(0);
+        mSegmentIndex = -1;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return mPosition;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position is negative");
+        }
+        mPosition = newPosition;
+        return this;
+    }
+
+    /**
+     * @return size of the plaintext, it is known before the unlock
+     */
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return mSize;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mChannel.isOpen();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        lock();
+        mChannel.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!mChannel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
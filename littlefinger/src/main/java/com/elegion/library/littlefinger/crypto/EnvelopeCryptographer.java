@@ -0,0 +1,330 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.annotation.TargetApi;
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.KeyProperties;
+import android.security.keystore.UserNotAuthenticatedException;
+import android.util.Log;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.UnrecoverableKeyException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Envelope encryption: the fingerprint-bound keystore key wraps only a random data key,
+ * the payload is encrypted with that data key in process, so the keystore is touched
+ * once per operation regardless of the payload size.
+ *
+ * @author Azret Magometov
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class EnvelopeCryptographer implements OperationCryptographer {
+
+    private static final String TAG = EnvelopeCryptographer.class.getSimpleName();
+
+    private static final String KEYSTORE_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    static final String DATA_TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int DATA_KEY_SIZE_BITS = 256;
+    static final int GCM_IV_SIZE_BYTES = 12;
+    static final int GCM_TAG_SIZE_BITS = 128;
+
+    private static EnvelopeCryptographer INSTANCE;
+    private final KeyStoreManager mKeyStoreManager;
+    private SecureRandom mSecureRandom;
+
+    @NonNull
+    public synchronized static EnvelopeCryptographer getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new EnvelopeCryptographer(KeyStoreManager.getInstance());
+        }
+        return INSTANCE;
+    }
+
+    EnvelopeCryptographer(KeyStoreManager keyStoreManager) {
+        mKeyStoreManager = keyStoreManager;
+        mSecureRandom = new SecureRandom();
+    }
+
+    @NonNull
+    @Override
+    public String encode(CryptoOperation operation, Cipher wrapCipher) throws Exception {
+        return Base64Text.encode(encodeToBytes(operation, wrapCipher));
+    }
+
+    /**
+     * @return binary {@link CipherContainer}
+     */
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(CryptoOperation operation, Cipher wrapCipher) throws Exception {
+        return encodeToBytes(operation.<EnvelopeData>getData(), wrapCipher);
+    }
+
+    @NonNull
+    @Override
+    public String decode(CryptoOperation operation, Cipher unwrapCipher) throws Exception {
+        return new String(decodeToBytes(operation, unwrapCipher));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(CryptoOperation operation, Cipher unwrapCipher) throws Exception {
+        return decodeToBytes(operation.<EnvelopeData>getData(), unwrapCipher);
+    }
+
+    /**
+     * Encodes without {@link FingerprintManager.CryptoObject}. The key is generated with the given
+     * authentication validity window, the user must have been authenticated within it.
+     */
+    @NonNull
+    @Override
+    public String encode(String text, String key, int authValiditySeconds) throws Exception {
+        return Base64Text.encode(encodeToBytes(text.getBytes(), key, authValiditySeconds));
+    }
+
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(byte[] data, String key, int authValiditySeconds) throws Exception {
+        EnvelopeData envelopeData = new EnvelopeData(Purpose.ENCODE, data, key);
+        return encodeToBytes(envelopeData, initWrapCipher(key, authValiditySeconds));
+    }
+
+    /**
+     * Decodes without {@link FingerprintManager.CryptoObject}, works only for keys with authentication validity window
+     */
+    @NonNull
+    @Override
+    public String decode(String text, String key) throws Exception {
+        EnvelopeData envelopeData = new EnvelopeData(Purpose.DECODE, text, key);
+        return new String(decodeToBytes(envelopeData, initUnwrapCipher(envelopeData)));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(byte[] data, String key) throws Exception {
+        EnvelopeData envelopeData = new EnvelopeData(Purpose.DECODE, data, key);
+        return decodeToBytes(envelopeData, initUnwrapCipher(envelopeData));
+    }
+
+    @NonNull
+    private byte[] encodeToBytes(EnvelopeData envelopeData, Cipher wrapCipher) throws Exception {
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            dataKey = newDataKey();
+
+            byte[] wrappedKey = wrapCipher.doFinal(dataKey);
+            byte[] wrapIv = wrapCipher.getIV();
+
+            byte[] iv = new byte[GCM_IV_SIZE_BYTES];
+            mSecureRandom.nextBytes(iv);
+            Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+            dataCipher.init(Cipher.ENCRYPT_MODE, toSecretKey(dataKey), new GCMParameterSpec(GCM_TAG_SIZE_BITS, iv));
+            byte[] bytes = dataCipher.doFinal(envelopeData.getBytes(), envelopeData.getOffset(), envelopeData.getLength());
+
+            return EnvelopeData.makeContainer(envelopeData.getKey(), wrappedKey, wrapIv, bytes, iv, GCM_TAG_SIZE_BITS / 8);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while encoding with cipher", exception);
+        } finally {
+            wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    @NonNull
+    private static byte[] decodeToBytes(EnvelopeData envelopeData, Cipher unwrapCipher) throws Exception {
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            byte[] source = envelopeData.getSource();
+            dataKey = unwrapCipher.doFinal(source, envelopeData.getWrappedKeyOffset(), envelopeData.getWrappedKeyLength());
+
+            Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+            dataCipher.init(Cipher.DECRYPT_MODE, toSecretKey(dataKey),
+                    new GCMParameterSpec(GCM_TAG_SIZE_BITS, source, envelopeData.getIvOffset(), envelopeData.getIvLength()));
+            return dataCipher.doFinal(envelopeData.getBytes(), envelopeData.getOffset(), envelopeData.getLength());
+        } catch (AEADBadTagException exception) {
+            throw new Exception("ciphertext was modified or key doesn't match", exception);
+        } catch (IllegalBlockSizeException | BadPaddingException exception) {
+            throw new Exception("exception while decoding with cipher", exception);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while initializing data cipher", exception);
+        } finally {
+            wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Parses the input and prepares the keystore cipher, pass {@link CryptoOperation#getCryptoObject()} to the authentication
+     */
+    @NonNull
+    @Override
+    public CryptoOperation newOperation(String text, Purpose purpose, String key) throws Exception {
+        return newOperation(new EnvelopeData(purpose, text, key));
+    }
+
+    @NonNull
+    @Override
+    public CryptoOperation newOperation(byte[] data, Purpose purpose, String key) throws Exception {
+        return newOperation(new EnvelopeData(purpose, data, key));
+    }
+
+    /**
+     * Wrapping cipher doesn't depend on the input, so it can be initialized before the input is known
+     */
+    @NonNull
+    @Override
+    public FingerprintManager.CryptoObject getEncodeCryptoObject(String key) throws Exception {
+        return new FingerprintManager.CryptoObject(initWrapCipher(key, 0));
+    }
+
+    /**
+     * Encoding operation with the cipher of {@link #getEncodeCryptoObject(String)}
+     */
+    @NonNull
+    @Override
+    public CryptoOperation newEncodeOperation(String text, String key, FingerprintManager.CryptoObject cryptoObject) {
+        return new CryptoOperation(Purpose.ENCODE, key, new EnvelopeData(Purpose.ENCODE, text, key), cryptoObject);
+    }
+
+    @NonNull
+    @Override
+    public CryptoOperation newEncodeOperation(byte[] data, String key, FingerprintManager.CryptoObject cryptoObject) {
+        return new CryptoOperation(Purpose.ENCODE, key, new EnvelopeData(Purpose.ENCODE, data, key), cryptoObject);
+    }
+
+    @NonNull
+    private CryptoOperation newOperation(EnvelopeData envelopeData) throws Exception {
+        Cipher cipher = null;
+        switch (envelopeData.getPurpose()) {
+            case DECODE:
+                cipher = initUnwrapCipher(envelopeData);
+                break;
+            case ENCODE:
+                cipher = initWrapCipher(envelopeData.getKey(), 0);
+                break;
+        }
+        return new CryptoOperation(envelopeData.getPurpose(), envelopeData.getKey(), envelopeData, new FingerprintManager.CryptoObject(cipher));
+    }
+
+    @NonNull
+    byte[] newDataKey() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES);
+        keyGenerator.init(DATA_KEY_SIZE_BITS, mSecureRandom);
+        return keyGenerator.generateKey().getEncoded();
+    }
+
+    void nextBytes(byte[] bytes) {
+        mSecureRandom.nextBytes(bytes);
+    }
+
+    @NonNull
+    static SecretKey toSecretKey(byte[] dataKey) {
+        return new SecretKeySpec(dataKey, KeyProperties.KEY_ALGORITHM_AES);
+    }
+
+    static void wipe(byte[] dataKey) {
+        if (dataKey != null) {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    @NonNull
+    private Cipher initUnwrapCipher(EnvelopeData envelopeData) throws Exception {
+        return initUnwrapCipher(envelopeData.getKey(), new GCMParameterSpec(GCM_TAG_SIZE_BITS,
+                envelopeData.getSource(), envelopeData.getWrapIvOffset(), GCM_IV_SIZE_BYTES));
+    }
+
+    @NonNull
+    Cipher initUnwrapCipher(String key, GCMParameterSpec wrapSpec) throws Exception {
+        try {
+            SecretKey secretKey = mKeyStoreManager.getSecretKey(key);
+            return mKeyStoreManager.initCipher(KEYSTORE_TRANSFORMATION, Cipher.DECRYPT_MODE, secretKey, wrapSpec);
+        } catch (KeyPermanentlyInvalidatedException | UnrecoverableKeyException e) {
+            mKeyStoreManager.deleteKey(key);
+            if (e instanceof UnrecoverableKeyException) {
+                throw new KeyPermanentlyInvalidatedException("An exception happens while getting Key", e);
+            }
+            throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new Exception("An exception happens while initializing Cipher", e);
+        }
+    }
+
+    @NonNull
+    Cipher initWrapCipher(String key, int authValiditySeconds) throws Exception {
+        createKey(key, authValiditySeconds);
+
+        try {
+            SecretKey secretKey = mKeyStoreManager.getSecretKey(key);
+            return mKeyStoreManager.initCipher(KEYSTORE_TRANSFORMATION, Cipher.ENCRYPT_MODE, secretKey, null);
+        } catch (KeyPermanentlyInvalidatedException e) {
+            mKeyStoreManager.deleteKey(key);
+            throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "initWrapCipher: ", e);
+            throw new Exception("An exception happens while initializing Cipher", e);
+        }
+    }
+
+    /**
+     * Generates the key if it doesn't exist yet and caches its handle, so the first operation only initializes the cipher
+     *
+     * @return true if the key was generated
+     */
+    @Override
+    public boolean prewarm(String key, int authValiditySeconds) throws Exception {
+        boolean generated = createKey(key, authValiditySeconds);
+        mKeyStoreManager.getSecretKey(key);
+        return generated;
+    }
+
+    private boolean createKey(String key, int authValiditySeconds) throws Exception {
+        synchronized (mKeyStoreManager.getKeyLock(key)) {
+            if (mKeyStoreManager.containsKey(key)) {
+                return false;
+            }
+            generateKey(key, authValiditySeconds);
+            return true;
+        }
+    }
+
+    private void generateKey(String alias, int authValiditySeconds) throws Exception {
+        try {
+            KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                    .setKeySize(DATA_KEY_SIZE_BITS);
+            KeyStoreManager.requireUserAuthentication(builder, authValiditySeconds);
+
+            mKeyStoreManager.generateSecretKey(KeyProperties.KEY_ALGORITHM_AES, builder.build());
+        } catch (GeneralSecurityException e) {
+            throw new Exception("Can't generate key " + alias, e);
+        }
+    }
+
+}
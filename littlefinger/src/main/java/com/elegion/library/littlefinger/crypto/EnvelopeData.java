@@ -0,0 +1,101 @@
+package com.elegion.library.littlefinger.crypto;
+
+import androidx.annotation.NonNull;
+
+/**
+ * @author Azret Magometov
+ */
+
+class EnvelopeData {
+
+    private final String mKey;
+    private final Purpose mPurpose;
+    private final byte[] mBytes;
+    private final int mOffset;
+    private final int mLength;
+    private final CipherContainer mContainer;
+
+    /**
+     * Key field of the container is the keystore iv followed by the wrapped data key
+     */
+    @NonNull
+    static byte[] makeContainer(String key, byte[] wrappedKey, byte[] wrapIv, byte[] bytes, byte[] iv, int tagLength) {
+        byte[] keyField = new byte[wrapIv.length + wrappedKey.length];
+        System.arraycopy(wrapIv, 0, keyField, 0, wrapIv.length);
+        System.arraycopy(wrappedKey, 0, keyField, wrapIv.length, wrappedKey.length);
+        return CipherContainer.toByteArray(CipherContainer.ALGORITHM_ENVELOPE_GCM, CipherContainer.aliasHash(key), iv, keyField, bytes, tagLength);
+    }
+
+    EnvelopeData(Purpose purpose, String inputText, String key) {
+        this(purpose, purpose == Purpose.DECODE ? Base64Text.decode(inputText) : inputText.getBytes(), key);
+    }
+
+    EnvelopeData(Purpose purpose, byte[] input, String key) {
+        mKey = key;
+        mPurpose = purpose;
+        switch (purpose) {
+            case DECODE:
+                mContainer = CipherContainer.parse(input);
+                mContainer.checkAlgorithm(CipherContainer.ALGORITHM_ENVELOPE_GCM, key);
+                if (mContainer.getKeyLength() <= EnvelopeCryptographer.GCM_IV_SIZE_BYTES) {
+                    throw new IllegalArgumentException("Input isn't valid. Wrapped key is missing");
+                }
+                mBytes = input;
+                mOffset = mContainer.getCiphertextOffset();
+                mLength = mContainer.getSealedLength();
+                break;
+            case ENCODE:
+            default:
+                mBytes = input;
+                mOffset = 0;
+                mLength = input.length;
+                mContainer = null;
+                break;
+        }
+    }
+
+    String getKey() {
+        return mKey;
+    }
+
+    Purpose getPurpose() {
+        return mPurpose;
+    }
+
+    byte[] getBytes() {
+        return mBytes;
+    }
+
+    int getOffset() {
+        return mOffset;
+    }
+
+    int getLength() {
+        return mLength;
+    }
+
+    byte[] getSource() {
+        return mContainer.getSource();
+    }
+
+    int getIvOffset() {
+        return mContainer.getIvOffset();
+    }
+
+    int getIvLength() {
+        return mContainer.getIvLength();
+    }
+
+    int getWrapIvOffset() {
+        return mContainer.getKeyOffset();
+    }
+
+    int getWrappedKeyOffset() {
+        return mContainer.getKeyOffset() + EnvelopeCryptographer.GCM_IV_SIZE_BYTES;
+    }
+
+    int getWrappedKeyLength() {
+        return mContainer.getKeyLength() - EnvelopeCryptographer.GCM_IV_SIZE_BYTES;
+    }
+
+}
@@ -0,0 +1,572 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyAgreement;
+import javax.crypto.KeyAgreementSpi;
+import javax.crypto.KeyGenerator;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * In-memory keystore for running the library on a JVM: CI load tests, profiling, Robolectric.
+ * Keys are software keys of the default provider, but the keystore rules are simulated:
+ * <ul>
+ * <li>keys without a validity window are usable for one operation after {@link #onAuthenticated(FingerprintManager.CryptoObject)}
+ * with the cipher or signature of that operation, otherwise doFinal and sign fail like the keystore does;</li>
+ * <li>keys with a validity window can be initialized for that long after any authentication,
+ * otherwise {@link UserNotAuthenticatedException} is thrown;</li>
+ * <li>{@link #invalidateKeys()} makes keys throw {@link KeyPermanentlyInvalidatedException}, as enrolling a fingerprint does;</li>
+ * <li>key generation and cipher calls can be slowed down to the latency of the keystore service.</li>
+ * </ul>
+ * Pair it with {@code FakeBiometricAuthenticator}, which calls {@link #onAuthenticated(FingerprintManager.CryptoObject)}.
+ *
+ * @author Azret Magometov
+ */
+public class FakeKeyStoreBackend implements KeyStoreBackend {
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private volatile long mAuthenticatedAtNanos = NEVER;
+    private volatile long mKeyGenerationLatencyMillis;
+    private volatile long mOperationLatencyMillis;
+
+    /**
+     * Generating a key in the hardware keystore takes from tens of milliseconds for AES to seconds for RSA
+     */
+    public void setKeyGenerationLatencyMillis(long latencyMillis) {
+        mKeyGenerationLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * Latency added to every lookup, cipher init and doFinal, each of them is a call to the keystore service on a device
+     */
+    public void setOperationLatencyMillis(long latencyMillis) {
+        mOperationLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * Marks the successful user authentication: starts the validity windows and authorizes the cipher of the crypto object
+     */
+    public void onAuthenticated(@Nullable FingerprintManager.CryptoObject cryptoObject) {
+        mAuthenticatedAtNanos = System.nanoTime();
+        if (cryptoObject != null && cryptoObject.getCipher() instanceof FakeCipher) {
+            ((FakeCipher) cryptoObject.getCipher()).mSpi.mAuthorized = true;
+        }
+        if (cryptoObject != null && cryptoObject.getSignature() instanceof FakeSignature) {
+            ((FakeSignature) cryptoObject.getSignature()).mAuthorized = true;
+        }
+    }
+
+    /**
+     * Ends the validity windows, as the keystore does when the device is locked
+     */
+    public void resetAuthentication() {
+        mAuthenticatedAtNanos = NEVER;
+    }
+
+    /**
+     * Invalidates all keys that require user authentication, as enrolling a new fingerprint does
+     */
+    public void invalidateKeys() {
+        for (Entry entry : mEntries.values()) {
+            if (entry.mAuthenticationRequired) {
+                entry.mInvalidated = true;
+            }
+        }
+    }
+
+    public void invalidateKey(@NonNull String alias) {
+        Entry entry = mEntries.get(alias);
+        if (entry != null) {
+            entry.mInvalidated = true;
+        }
+    }
+
+    @Override
+    public void load() {
+    }
+
+    @Nullable
+    @Override
+    public Key getKey(@NonNull String alias) {
+        simulateLatency(mOperationLatencyMillis);
+        Entry entry = mEntries.get(alias);
+        return entry == null ? null : entry.mKey;
+    }
+
+    @Nullable
+    @Override
+    public PublicKey getPublicKey(@NonNull String alias) {
+        simulateLatency(mOperationLatencyMillis);
+        Entry entry = mEntries.get(alias);
+        return entry == null ? null : entry.mPublicKey;
+    }
+
+    @Override
+    public boolean containsAlias(@NonNull String alias) {
+        return mEntries.containsKey(alias);
+    }
+
+    @Override
+    public void deleteEntry(@NonNull String alias) {
+        mEntries.remove(alias);
+    }
+
+    @Override
+    public void generateSecretKey(@NonNull String algorithm, @NonNull KeyGenParameterSpec spec) throws GeneralSecurityException {
+        simulateLatency(mKeyGenerationLatencyMillis);
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(algorithm);
+        if (spec.getKeySize() > 0) {
+            keyGenerator.init(spec.getKeySize());
+        }
+        Entry entry = new Entry(spec);
+        entry.mKey = new FakeSecretKey(entry, keyGenerator.generateKey());
+        mEntries.put(spec.getKeystoreAlias(), entry);
+    }
+
+    @Override
+    public void generateKeyPair(@NonNull String algorithm, @NonNull KeyGenParameterSpec spec) throws GeneralSecurityException {
+        simulateLatency(mKeyGenerationLatencyMillis);
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm);
+        if (spec.getAlgorithmParameterSpec() != null) {
+            keyPairGenerator.initialize(spec.getAlgorithmParameterSpec());
+        } else if (spec.getKeySize() > 0) {
+            keyPairGenerator.initialize(spec.getKeySize());
+        }
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        Entry entry = new Entry(spec);
+        entry.mKey = new FakePrivateKey(entry, keyPair.getPrivate());
+        entry.mPublicKey = keyPair.getPublic();
+        mEntries.put(spec.getKeystoreAlias(), entry);
+    }
+
+    @NonNull
+    @Override
+    public Cipher getCipher(@NonNull String transformation) throws GeneralSecurityException {
+        // the default providers know PKCS7 padding of AndroidKeyStore as PKCS5 one
+        Cipher delegate = Cipher.getInstance(transformation.replace("PKCS7Padding", "PKCS5Padding"));
+        return new FakeCipher(new EnforcingCipherSpi(delegate), delegate.getProvider(), transformation);
+    }
+
+    @NonNull
+    @Override
+    public KeyAgreement getKeyAgreement(@NonNull String algorithm) throws GeneralSecurityException {
+        KeyAgreement delegate = KeyAgreement.getInstance(algorithm);
+        return new FakeKeyAgreement(new EnforcingKeyAgreementSpi(delegate), delegate.getProvider(), algorithm);
+    }
+
+    @NonNull
+    @Override
+    public Signature getSignature(@NonNull String algorithm) throws GeneralSecurityException {
+        return new FakeSignature(Signature.getInstance(algorithm));
+    }
+
+    private void checkAuthorized(Entry entry) throws InvalidKeyException {
+        if (entry.mInvalidated) {
+            throw new KeyPermanentlyInvalidatedException();
+        }
+        if (entry.mAuthenticationRequired && entry.mValiditySeconds > 0) {
+            long authenticatedAt = mAuthenticatedAtNanos;
+            if (authenticatedAt == NEVER
+                    || System.nanoTime() - authenticatedAt > TimeUnit.SECONDS.toNanos(entry.mValiditySeconds)) {
+                throw new UserNotAuthenticatedException("User not authenticated");
+            }
+        }
+    }
+
+    private static void simulateLatency(long latencyMillis) {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Entry {
+        private final boolean mAuthenticationRequired;
+        private final int mValiditySeconds;
+        private volatile boolean mInvalidated;
+        private Key mKey;
+        private PublicKey mPublicKey;
+
+        private Entry(KeyGenParameterSpec spec) {
+            mAuthenticationRequired = spec.isUserAuthenticationRequired();
+            mValiditySeconds = spec.getUserAuthenticationValidityDurationSeconds();
+        }
+    }
+
+    /**
+     * Handle of the key, like the keys of AndroidKeyStore it doesn't expose the key material
+     */
+    private abstract static class FakeKey implements Key {
+        private static final long serialVersionUID = 1L;
+
+        private final Entry mEntry;
+        private final Key mDelegate;
+
+        private FakeKey(Entry entry, Key delegate) {
+            mEntry = entry;
+            mDelegate = delegate;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return mDelegate.getAlgorithm();
+        }
+
+        @Nullable
+        @Override
+        public String getFormat() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public byte[] getEncoded() {
+            return null;
+        }
+    }
+
+    private static final class FakeSecretKey extends FakeKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+
+        private FakeSecretKey(Entry entry, Key delegate) {
+            super(entry, delegate);
+        }
+    }
+
+    private static final class FakePrivateKey extends FakeKey implements PrivateKey {
+        private static final long serialVersionUID = 1L;
+
+        private FakePrivateKey(Entry entry, Key delegate) {
+            super(entry, delegate);
+        }
+    }
+
+    private static final class FakeCipher extends Cipher {
+        private final EnforcingCipherSpi mSpi;
+
+        private FakeCipher(EnforcingCipherSpi spi, Provider provider, String transformation) {
+            super(spi, provider, transformation);
+            mSpi = spi;
+        }
+    }
+
+    /**
+     * Checks the key rules and delegates the work to the cipher of the default provider
+     */
+    private final class EnforcingCipherSpi extends CipherSpi {
+        private final Cipher mDelegate;
+        private Entry mEntry;
+        private volatile boolean mAuthorized;
+
+        private EnforcingCipherSpi(Cipher delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+            mDelegate.init(opmode, unwrap(key), random);
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            Key delegateKey = unwrap(key);
+            if (params == null) {
+                mDelegate.init(opmode, delegateKey, random);
+            } else {
+                mDelegate.init(opmode, delegateKey, params, random);
+            }
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            Key delegateKey = unwrap(key);
+            if (params == null) {
+                mDelegate.init(opmode, delegateKey, random);
+            } else {
+                mDelegate.init(opmode, delegateKey, params, random);
+            }
+        }
+
+        /**
+         * Every init starts a new keystore operation, it needs a new authentication
+         */
+        private Key unwrap(Key key) throws InvalidKeyException {
+            simulateLatency(mOperationLatencyMillis);
+            mAuthorized = false;
+            if (!(key instanceof FakeKey)) {
+                mEntry = null;
+                return key;
+            }
+            FakeKey fakeKey = (FakeKey) key;
+            checkAuthorized(fakeKey.mEntry);
+            mEntry = fakeKey.mEntry;
+            return fakeKey.mDelegate;
+        }
+
+        private void checkOperation() throws IllegalBlockSizeException {
+            Entry entry = mEntry;
+            if (entry != null && entry.mAuthenticationRequired && entry.mValiditySeconds <= 0 && !mAuthorized) {
+                // that's how the keystore reports a key used without the authentication
+                throw new IllegalBlockSizeException("Key user not authenticated");
+            }
+        }
+
+        @Override
+        protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+            throw new NoSuchAlgorithmException("Mode is set by the transformation");
+        }
+
+        @Override
+        protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+            throw new NoSuchPaddingException("Padding is set by the transformation");
+        }
+
+        @Override
+        protected int engineGetBlockSize() {
+            return mDelegate.getBlockSize();
+        }
+
+        @Override
+        protected int engineGetOutputSize(int inputLen) {
+            return mDelegate.getOutputSize(inputLen);
+        }
+
+        @Override
+        protected byte[] engineGetIV() {
+            return mDelegate.getIV();
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return mDelegate.getParameters();
+        }
+
+        @Override
+        protected void engineUpdateAAD(byte[] src, int offset, int len) {
+            mDelegate.updateAAD(src, offset, len);
+        }
+
+        @Override
+        protected void engineUpdateAAD(ByteBuffer src) {
+            mDelegate.updateAAD(src);
+        }
+
+        @Override
+        protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+            return mDelegate.update(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+                throws ShortBufferException {
+            return mDelegate.update(input, inputOffset, inputLen, output, outputOffset);
+        }
+
+        @Override
+        protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
+                throws IllegalBlockSizeException, BadPaddingException {
+            simulateLatency(mOperationLatencyMillis);
+            checkOperation();
+            return mDelegate.doFinal(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+                throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+            simulateLatency(mOperationLatencyMillis);
+            checkOperation();
+            return mDelegate.doFinal(input, inputOffset, inputLen, output, outputOffset);
+        }
+    }
+
+    private static final class FakeKeyAgreement extends KeyAgreement {
+        private FakeKeyAgreement(KeyAgreementSpi spi, Provider provider, String algorithm) {
+            super(spi, provider, algorithm);
+        }
+    }
+
+    /**
+     * Checks the key rules on init and delegates the agreement to the default provider.
+     * Agreement can't be authorized by a crypto object, so keys without a validity window are never usable
+     */
+    private final class EnforcingKeyAgreementSpi extends KeyAgreementSpi {
+        private final KeyAgreement mDelegate;
+
+        private EnforcingKeyAgreementSpi(KeyAgreement delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(Key key, SecureRandom random) throws InvalidKeyException {
+            mDelegate.init(unwrap(key), random);
+        }
+
+        @Override
+        protected void engineInit(Key key, AlgorithmParameterSpec params, SecureRandom random)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            Key delegateKey = unwrap(key);
+            if (params == null) {
+                mDelegate.init(delegateKey, random);
+            } else {
+                mDelegate.init(delegateKey, params, random);
+            }
+        }
+
+        private Key unwrap(Key key) throws InvalidKeyException {
+            simulateLatency(mOperationLatencyMillis);
+            if (!(key instanceof FakeKey)) {
+                return key;
+            }
+            FakeKey fakeKey = (FakeKey) key;
+            checkAuthorized(fakeKey.mEntry);
+            if (fakeKey.mEntry.mAuthenticationRequired && fakeKey.mEntry.mValiditySeconds <= 0) {
+                throw new UserNotAuthenticatedException("Key agreement needs an authentication validity window");
+            }
+            return fakeKey.mDelegate;
+        }
+
+        @Override
+        protected Key engineDoPhase(Key key, boolean lastPhase) throws InvalidKeyException {
+            return mDelegate.doPhase(key, lastPhase);
+        }
+
+        @Override
+        protected byte[] engineGenerateSecret() {
+            simulateLatency(mOperationLatencyMillis);
+            return mDelegate.generateSecret();
+        }
+
+        @Override
+        protected int engineGenerateSecret(byte[] sharedSecret, int offset) throws ShortBufferException {
+            simulateLatency(mOperationLatencyMillis);
+            return mDelegate.generateSecret(sharedSecret, offset);
+        }
+
+        @Override
+        protected SecretKey engineGenerateSecret(String algorithm) throws NoSuchAlgorithmException, InvalidKeyException {
+            simulateLatency(mOperationLatencyMillis);
+            return mDelegate.generateSecret(algorithm);
+        }
+    }
+
+    /**
+     * Checks the key rules and delegates to the signature of the default provider.
+     * Like a keystore operation, an authorization covers a single signature
+     */
+    private final class FakeSignature extends Signature {
+        private final Signature mDelegate;
+        private Entry mEntry;
+        private volatile boolean mAuthorized;
+
+        private FakeSignature(Signature delegate) {
+            super(delegate.getAlgorithm());
+            mDelegate = delegate;
+        }
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            mEntry = null;
+            mDelegate.initVerify(publicKey);
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            simulateLatency(mOperationLatencyMillis);
+            mAuthorized = false;
+            if (!(privateKey instanceof FakeKey)) {
+                mEntry = null;
+                mDelegate.initSign(privateKey);
+                return;
+            }
+            FakeKey fakeKey = (FakeKey) privateKey;
+            checkAuthorized(fakeKey.mEntry);
+            mEntry = fakeKey.mEntry;
+            mDelegate.initSign((PrivateKey) fakeKey.mDelegate);
+        }
+
+        @Override
+        protected void engineUpdate(byte b) throws SignatureException {
+            mDelegate.update(b);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+            mDelegate.update(b, off, len);
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            simulateLatency(mOperationLatencyMillis);
+            Entry entry = mEntry;
+            if (entry != null && entry.mAuthenticationRequired && entry.mValiditySeconds <= 0) {
+                if (!mAuthorized) {
+                    throw new SignatureException("Key user not authenticated");
+                }
+                mAuthorized = false;
+            }
+            return mDelegate.sign();
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+            return mDelegate.verify(sigBytes);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        protected void engineSetParameter(String param, Object value) {
+            mDelegate.setParameter(param, value);
+        }
+
+        @Override
+        protected void engineSetParameter(AlgorithmParameterSpec params) throws InvalidAlgorithmParameterException {
+            mDelegate.setParameter(params);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        protected Object engineGetParameter(String param) {
+            return mDelegate.getParameter(param);
+        }
+    }
+}
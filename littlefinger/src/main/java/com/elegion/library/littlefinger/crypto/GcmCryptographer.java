@@ -0,0 +1,305 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.annotation.TargetApi;
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.KeyProperties;
+import android.security.keystore.UserNotAuthenticatedException;
+import android.util.Log;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
+import java.security.GeneralSecurityException;
+import java.security.UnrecoverableKeyException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link CryptoAlgorithm#GCM}: the payload is encrypted with the fingerprint-bound keystore AES-GCM key itself.
+ * The alias and an optional record id are authenticated as associated data, so a ciphertext moved
+ * to another record or alias fails to decode like a modified one. Container carries only the nonce and the tag.
+ *
+ * @author Azret Magometov
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class GcmCryptographer implements OperationCryptographer {
+
+    private static final String TAG = GcmCryptographer.class.getSimpleName();
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_SIZE_BITS = 256;
+    private static final int TAG_SIZE_BITS = 128;
+
+    static final int IV_SIZE_BYTES = 12;
+    static final int TAG_SIZE_BYTES = TAG_SIZE_BITS / 8;
+
+    private static GcmCryptographer INSTANCE;
+    private final KeyStoreManager mKeyStoreManager;
+
+    @NonNull
+    public synchronized static GcmCryptographer getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new GcmCryptographer(KeyStoreManager.getInstance());
+        }
+        return INSTANCE;
+    }
+
+    GcmCryptographer(KeyStoreManager keyStoreManager) {
+        mKeyStoreManager = keyStoreManager;
+    }
+
+    @NonNull
+    @Override
+    public String encode(CryptoOperation operation, Cipher cipher) throws Exception {
+        return Base64Text.encode(encodeToBytes(operation, cipher));
+    }
+
+    /**
+     * @return binary {@link CipherContainer}
+     */
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(CryptoOperation operation, Cipher cipher) throws Exception {
+        return encodeToBytes(operation.<GcmData>getData(), cipher);
+    }
+
+    @NonNull
+    @Override
+    public String decode(CryptoOperation operation, Cipher cipher) throws Exception {
+        return new String(decodeToBytes(operation, cipher));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(CryptoOperation operation, Cipher cipher) throws Exception {
+        return decodeToBytes(operation.<GcmData>getData(), cipher);
+    }
+
+    /**
+     * Encodes without {@link FingerprintManager.CryptoObject}. The key is generated with the given
+     * authentication validity window, the user must have been authenticated within it.
+     */
+    @NonNull
+    @Override
+    public String encode(String text, String key, int authValiditySeconds) throws Exception {
+        return Base64Text.encode(encodeToBytes(text.getBytes(), key, null, authValiditySeconds));
+    }
+
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(byte[] data, String key, int authValiditySeconds) throws Exception {
+        return encodeToBytes(data, key, null, authValiditySeconds);
+    }
+
+    /**
+     * @param recordId bound to the ciphertext, the same id must be passed to decode
+     */
+    @NonNull
+    public byte[] encodeToBytes(byte[] data, String key, @Nullable String recordId, int authValiditySeconds) throws Exception {
+        GcmData gcmData = new GcmData(Purpose.ENCODE, data, key, recordId);
+        return encodeToBytes(gcmData, initEncodeCipher(key, authValiditySeconds));
+    }
+
+    /**
+     * Decodes without {@link FingerprintManager.CryptoObject}, works only for keys with authentication validity window
+     */
+    @NonNull
+    @Override
+    public String decode(String text, String key) throws Exception {
+        GcmData gcmData = new GcmData(Purpose.DECODE, text, key, null);
+        return new String(decodeToBytes(gcmData, initDecodeCipher(gcmData)));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(byte[] data, String key) throws Exception {
+        return decodeToBytes(data, key, null);
+    }
+
+    @NonNull
+    public byte[] decodeToBytes(byte[] data, String key, @Nullable String recordId) throws Exception {
+        GcmData gcmData = new GcmData(Purpose.DECODE, data, key, recordId);
+        return decodeToBytes(gcmData, initDecodeCipher(gcmData));
+    }
+
+    @NonNull
+    private static byte[] encodeToBytes(GcmData gcmData, Cipher cipher) throws Exception {
+        long start = Tracer.start();
+        try {
+            cipher.updateAAD(gcmData.getAssociatedData());
+            byte[] sealed = cipher.doFinal(gcmData.getBytes(), gcmData.getOffset(), gcmData.getLength());
+            return GcmData.makeContainer(gcmData.getKey(), sealed, cipher.getIV(), TAG_SIZE_BYTES);
+        } catch (IllegalBlockSizeException | BadPaddingException exception) {
+            throw new Exception("exception while encoding with cipher", exception);
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    @NonNull
+    private static byte[] decodeToBytes(GcmData gcmData, Cipher cipher) throws Exception {
+        long start = Tracer.start();
+        try {
+            cipher.updateAAD(gcmData.getAssociatedData());
+            return cipher.doFinal(gcmData.getBytes(), gcmData.getOffset(), gcmData.getLength());
+        } catch (AEADBadTagException exception) {
+            throw new Exception("ciphertext was modified or belongs to another record", exception);
+        } catch (IllegalBlockSizeException | BadPaddingException exception) {
+            throw new Exception("exception while decoding with cipher", exception);
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Parses the input and prepares the keystore cipher, pass {@link CryptoOperation#getCryptoObject()} to the authentication
+     */
+    @NonNull
+    @Override
+    public CryptoOperation newOperation(String text, Purpose purpose, String key) throws Exception {
+        return newOperation(new GcmData(purpose, text, key, null));
+    }
+
+    @NonNull
+    @Override
+    public CryptoOperation newOperation(byte[] data, Purpose purpose, String key) throws Exception {
+        return newOperation(data, purpose, key, null);
+    }
+
+    @NonNull
+    public CryptoOperation newOperation(byte[] data, Purpose purpose, String key, @Nullable String recordId) throws Exception {
+        return newOperation(new GcmData(purpose, data, key, recordId));
+    }
+
+    /**
+     * Encoding cipher doesn't depend on the input, so it can be initialized before the input is known
+     */
+    @NonNull
+    @Override
+    public FingerprintManager.CryptoObject getEncodeCryptoObject(String key) throws Exception {
+        return new FingerprintManager.CryptoObject(initEncodeCipher(key, 0));
+    }
+
+    /**
+     * Encoding operation with the cipher of {@link #getEncodeCryptoObject(String)}
+     */
+    @NonNull
+    @Override
+    public CryptoOperation newEncodeOperation(String text, String key, FingerprintManager.CryptoObject cryptoObject) {
+        return new CryptoOperation(Purpose.ENCODE, key, new GcmData(Purpose.ENCODE, text, key, null), cryptoObject);
+    }
+
+    @NonNull
+    @Override
+    public CryptoOperation newEncodeOperation(byte[] data, String key, FingerprintManager.CryptoObject cryptoObject) {
+        return newEncodeOperation(data, key, null, cryptoObject);
+    }
+
+    @NonNull
+    public CryptoOperation newEncodeOperation(byte[] data, String key, @Nullable String recordId, FingerprintManager.CryptoObject cryptoObject) {
+        return new CryptoOperation(Purpose.ENCODE, key, new GcmData(Purpose.ENCODE, data, key, recordId), cryptoObject);
+    }
+
+    @NonNull
+    private CryptoOperation newOperation(GcmData gcmData) throws Exception {
+        Cipher cipher = null;
+        switch (gcmData.getPurpose()) {
+            case DECODE:
+                cipher = initDecodeCipher(gcmData);
+                break;
+            case ENCODE:
+                cipher = initEncodeCipher(gcmData.getKey(), 0);
+                break;
+        }
+        return new CryptoOperation(gcmData.getPurpose(), gcmData.getKey(), gcmData, new FingerprintManager.CryptoObject(cipher));
+    }
+
+    @NonNull
+    private Cipher initDecodeCipher(GcmData gcmData) throws Exception {
+        String key = gcmData.getKey();
+        GCMParameterSpec spec = new GCMParameterSpec(TAG_SIZE_BITS, gcmData.getSource(), gcmData.getIvOffset(), IV_SIZE_BYTES);
+        try {
+            SecretKey secretKey = mKeyStoreManager.getSecretKey(key);
+            return mKeyStoreManager.initCipher(TRANSFORMATION, Cipher.DECRYPT_MODE, secretKey, spec);
+        } catch (KeyPermanentlyInvalidatedException | UnrecoverableKeyException e) {
+            mKeyStoreManager.deleteKey(key);
+            if (e instanceof UnrecoverableKeyException) {
+                throw new KeyPermanentlyInvalidatedException("An exception happens while getting Key", e);
+            }
+            throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new Exception("An exception happens while initializing Cipher", e);
+        }
+    }
+
+    /**
+     * The keystore picks a random nonce for every encryption, a nonce can't be reused with the key
+     */
+    @NonNull
+    private Cipher initEncodeCipher(String key, int authValiditySeconds) throws Exception {
+        createKey(key, authValiditySeconds);
+
+        try {
+            SecretKey secretKey = mKeyStoreManager.getSecretKey(key);
+            return mKeyStoreManager.initCipher(TRANSFORMATION, Cipher.ENCRYPT_MODE, secretKey, null);
+        } catch (KeyPermanentlyInvalidatedException e) {
+            mKeyStoreManager.deleteKey(key);
+            throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "initEncodeCipher: ", e);
+            throw new Exception("An exception happens while initializing Cipher", e);
+        }
+    }
+
+    /**
+     * Generates the key if it doesn't exist yet and caches its handle, so the first operation only initializes the cipher
+     *
+     * @return true if the key was generated
+     */
+    @Override
+    public boolean prewarm(String key, int authValiditySeconds) throws Exception {
+        boolean generated = createKey(key, authValiditySeconds);
+        mKeyStoreManager.getSecretKey(key);
+        return generated;
+    }
+
+    private boolean createKey(String key, int authValiditySeconds) throws Exception {
+        synchronized (mKeyStoreManager.getKeyLock(key)) {
+            if (mKeyStoreManager.containsKey(key)) {
+                return false;
+            }
+            generateKey(key, authValiditySeconds);
+            return true;
+        }
+    }
+
+    private void generateKey(String alias, int authValiditySeconds) throws Exception {
+        try {
+            KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                    .setKeySize(KEY_SIZE_BITS);
+            KeyStoreManager.requireUserAuthentication(builder, authValiditySeconds);
+
+            mKeyStoreManager.generateSecretKey(KeyProperties.KEY_ALGORITHM_AES, builder.build());
+        } catch (GeneralSecurityException e) {
+            throw new Exception("Can't generate key " + alias, e);
+        }
+    }
+
+}
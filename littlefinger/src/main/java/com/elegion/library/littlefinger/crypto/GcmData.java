@@ -0,0 +1,103 @@
+package com.elegion.library.littlefinger.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * @author Azret Magometov
+ */
+
+class GcmData {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] NO_KEY = new byte[0];
+
+    private final String mKey;
+    private final String mRecordId;
+    private final Purpose mPurpose;
+    private final byte[] mBytes;
+    private final int mOffset;
+    private final int mLength;
+    private final CipherContainer mContainer;
+
+    @NonNull
+    static byte[] makeContainer(String key, byte[] sealed, byte[] iv, int tagLength) {
+        return CipherContainer.toByteArray(CipherContainer.ALGORITHM_AES_GCM, CipherContainer.aliasHash(key), iv, NO_KEY, sealed, tagLength);
+    }
+
+    GcmData(Purpose purpose, String inputText, String key, @Nullable String recordId) {
+        this(purpose, purpose == Purpose.DECODE ? Base64Text.decode(inputText) : inputText.getBytes(), key, recordId);
+    }
+
+    GcmData(Purpose purpose, byte[] input, String key, @Nullable String recordId) {
+        mKey = key;
+        mRecordId = recordId;
+        mPurpose = purpose;
+        switch (purpose) {
+            case DECODE:
+                mContainer = CipherContainer.parse(input);
+                mContainer.checkAlgorithm(CipherContainer.ALGORITHM_AES_GCM, key);
+                if (mContainer.getIvLength() != GcmCryptographer.IV_SIZE_BYTES || mContainer.getTagLength() != GcmCryptographer.TAG_SIZE_BYTES) {
+                    throw new IllegalArgumentException("Input isn't valid. Nonce or tag is missing");
+                }
+                mBytes = input;
+                mOffset = mContainer.getCiphertextOffset();
+                mLength = mContainer.getSealedLength();
+                break;
+            case ENCODE:
+            default:
+                mBytes = input;
+                mOffset = 0;
+                mLength = input.length;
+                mContainer = null;
+                break;
+        }
+    }
+
+    /**
+     * Alias and record id authenticated with the ciphertext but not stored in it:
+     * alias length (2) | alias | record id, a missing record id is empty
+     */
+    @NonNull
+    byte[] getAssociatedData() {
+        byte[] alias = mKey.getBytes(UTF_8);
+        byte[] recordId = mRecordId == null ? NO_KEY : mRecordId.getBytes(UTF_8);
+        return ByteBuffer.allocate(2 + alias.length + recordId.length)
+                .putShort((short) alias.length)
+                .put(alias)
+                .put(recordId)
+                .array();
+    }
+
+    String getKey() {
+        return mKey;
+    }
+
+    Purpose getPurpose() {
+        return mPurpose;
+    }
+
+    byte[] getBytes() {
+        return mBytes;
+    }
+
+    int getOffset() {
+        return mOffset;
+    }
+
+    int getLength() {
+        return mLength;
+    }
+
+    byte[] getSource() {
+        return mContainer.getSource();
+    }
+
+    int getIvOffset() {
+        return mContainer.getIvOffset();
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.spec.GCMParameterSpec;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.DATA_TRANSFORMATION;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_IV_SIZE_BYTES;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_TAG_SIZE_BITS;
+
+/**
+ * {@link CryptoAlgorithm#HYBRID}: the payload is encrypted with a random AES-GCM data key,
+ * only the data key is encrypted with the RSA public key of {@link RsaCryptographer}.
+ * Container key field is the RSA-wrapped data key.
+ *
+ * @author Azret Magometov
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class HybridCryptographer implements PrivateKeyCryptographer {
+
+    private static final int GCM_TAG_SIZE_BYTES = GCM_TAG_SIZE_BITS / 8;
+
+    private static HybridCryptographer INSTANCE;
+    private final RsaCryptographer mRsaCryptographer;
+    private final EnvelopeCryptographer mEnvelopeCryptographer;
+
+    @NonNull
+    public synchronized static HybridCryptographer getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new HybridCryptographer(RsaCryptographer.getInstance(), EnvelopeCryptographer.getInstance());
+        }
+        return INSTANCE;
+    }
+
+    HybridCryptographer(RsaCryptographer rsaCryptographer, EnvelopeCryptographer envelopeCryptographer) {
+        mRsaCryptographer = rsaCryptographer;
+        mEnvelopeCryptographer = envelopeCryptographer;
+    }
+
+    /**
+     * Encodes with the public key, no authentication is needed
+     *
+     * @param authValiditySeconds authentication validity window of the private key, used only if the key pair doesn't exist yet
+     */
+    @NonNull
+    @Override
+    public String encode(String text, String key, int authValiditySeconds) throws Exception {
+        return Base64Text.encode(encodeToBytes(text.getBytes(), key, authValiditySeconds));
+    }
+
+    /**
+     * @return binary {@link CipherContainer}
+     */
+    @NonNull
+    @Override
+    public byte[] encodeToBytes(byte[] data, String key, int authValiditySeconds) throws Exception {
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            dataKey = mEnvelopeCryptographer.newDataKey();
+            byte[] wrappedKey = mRsaCryptographer.encrypt(dataKey, key, authValiditySeconds);
+
+            byte[] iv = new byte[GCM_IV_SIZE_BYTES];
+            mEnvelopeCryptographer.nextBytes(iv);
+            Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+            dataCipher.init(Cipher.ENCRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey), new GCMParameterSpec(GCM_TAG_SIZE_BITS, iv));
+            byte[] bytes = dataCipher.doFinal(data);
+
+            return CipherContainer.toByteArray(CipherContainer.ALGORITHM_RSA_AES_GCM, CipherContainer.aliasHash(key), iv, wrappedKey, bytes, GCM_TAG_SIZE_BYTES);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while encoding with data key", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Decoding cipher of the private key, pass it to the authentication
+     */
+    @NonNull
+    @Override
+    public FingerprintManager.CryptoObject getCryptoObject(String key) throws Exception {
+        return mRsaCryptographer.getCryptoObject(key);
+    }
+
+    @NonNull
+    @Override
+    public String decode(String text, Cipher unwrapCipher) throws Exception {
+        return new String(decodeToBytes(Base64Text.decode(text), unwrapCipher));
+    }
+
+    /**
+     * @param unwrapCipher cipher of {@link #getCryptoObject(String)} after the authentication
+     */
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(byte[] data, Cipher unwrapCipher) throws Exception {
+        CipherContainer container = CipherContainer.parse(data);
+        if (container.getAlgorithm() != CipherContainer.ALGORITHM_RSA_AES_GCM) {
+            throw new IllegalArgumentException("Data was encoded with another algorithm");
+        }
+        if (container.getKeyLength() == 0 || container.getIvLength() != GCM_IV_SIZE_BYTES) {
+            throw new IllegalArgumentException("Input isn't valid. Wrapped key is missing");
+        }
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            byte[] source = container.getSource();
+            dataKey = unwrapCipher.doFinal(source, container.getKeyOffset(), container.getKeyLength());
+
+            Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+            dataCipher.init(Cipher.DECRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey),
+                    new GCMParameterSpec(GCM_TAG_SIZE_BITS, source, container.getIvOffset(), container.getIvLength()));
+            return dataCipher.doFinal(source, container.getCiphertextOffset(), container.getSealedLength());
+        } catch (AEADBadTagException exception) {
+            throw new Exception("ciphertext was modified or key doesn't match", exception);
+        } catch (IllegalBlockSizeException | BadPaddingException exception) {
+            throw new Exception("exception while decoding with cipher", exception);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while initializing data cipher", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Decodes without {@link FingerprintManager.CryptoObject}, works only for keys with authentication validity window
+     */
+    @NonNull
+    @Override
+    public String decode(String text, String key) throws Exception {
+        return new String(decodeToBytes(Base64Text.decode(text), key));
+    }
+
+    @NonNull
+    @Override
+    public byte[] decodeToBytes(byte[] data, String key) throws Exception {
+        CipherContainer container = CipherContainer.parse(data);
+        container.checkAlgorithm(CipherContainer.ALGORITHM_RSA_AES_GCM, key);
+        return decodeToBytes(data, mRsaCryptographer.initDecodeCipher(key));
+    }
+
+    /**
+     * Generates the key pair if it doesn't exist yet, see {@link RsaCryptographer#prewarm(String, int)}
+     */
+    @Override
+    public boolean prewarm(String key, int authValiditySeconds) throws Exception {
+        return mRsaCryptographer.prewarm(key, authValiditySeconds);
+    }
+}
@@ -0,0 +1,43 @@
+package com.elegion.library.littlefinger.crypto;
+
+/**
+ * Snapshot of the {@link KeyStoreManager} key handle cache counters
+ *
+ * @author Azret Magometov
+ */
+
+public final class KeyCacheStats {
+
+    private final long mHitCount;
+    private final long mMissCount;
+    private final long mEvictionCount;
+    private final int mSize;
+
+    KeyCacheStats(long hitCount, long missCount, long evictionCount, int size) {
+        mHitCount = hitCount;
+        mMissCount = missCount;
+        mEvictionCount = evictionCount;
+        mSize = size;
+    }
+
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyCacheStats{hits=" + mHitCount + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + ", size=" + mSize + '}';
+    }
+}
@@ -0,0 +1,101 @@
+package com.elegion.library.littlefinger.crypto;
+
+import java.security.Key;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Bounded LRU cache of keystore key handles by alias.
+ * Handles stay valid until the key is deleted or permanently invalidated, both of which evict the alias.
+ *
+ * @author Azret Magometov
+ */
+
+class KeyHandleCache {
+
+    private final int mMaxSize;
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    KeyHandleCache(int maxSize) {
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KeyHandleCache.Entry> eldest) {
+                if (size() > mMaxSize) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Nullable
+    synchronized Key getKey(String alias) {
+        Entry entry = mEntries.get(alias);
+        return count(entry == null ? null : entry.mKey);
+    }
+
+    @Nullable
+    synchronized PublicKey getPublicKey(String alias) {
+        Entry entry = mEntries.get(alias);
+        return count(entry == null ? null : entry.mPublicKey);
+    }
+
+    /**
+     * Doesn't touch the counters, it is a cheap pre-check for {@link KeyStoreManager#containsKey(String)}
+     */
+    synchronized boolean contains(String alias) {
+        return mEntries.containsKey(alias);
+    }
+
+    synchronized void putKey(String alias, Key key) {
+        obtain(alias).mKey = key;
+    }
+
+    synchronized void putPublicKey(String alias, PublicKey publicKey) {
+        obtain(alias).mPublicKey = publicKey;
+    }
+
+    synchronized void invalidate(String alias) {
+        mEntries.remove(alias);
+    }
+
+    synchronized void invalidateAll() {
+        mEntries.clear();
+    }
+
+    synchronized KeyCacheStats getStats() {
+        return new KeyCacheStats(mHitCount, mMissCount, mEvictionCount, mEntries.size());
+    }
+
+    private <T> T count(T value) {
+        if (value == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return value;
+    }
+
+    private Entry obtain(String alias) {
+        Entry entry = mEntries.get(alias);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(alias, entry);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        private Key mKey;
+        private PublicKey mPublicKey;
+    }
+}
@@ -0,0 +1,52 @@
+package com.elegion.library.littlefinger.crypto;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Key alias with the algorithm it is used with
+ *
+ * @author Azret Magometov
+ */
+
+public final class KeySpec {
+
+    private final String mAlias;
+    private final CryptoAlgorithm mAlgorithm;
+
+    public KeySpec(@NonNull String alias, @NonNull CryptoAlgorithm algorithm) {
+        mAlias = alias;
+        mAlgorithm = algorithm;
+    }
+
+    @NonNull
+    public String getAlias() {
+        return mAlias;
+    }
+
+    @NonNull
+    public CryptoAlgorithm getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeySpec)) {
+            return false;
+        }
+        KeySpec keySpec = (KeySpec) o;
+        return mAlias.equals(keySpec.mAlias) && mAlgorithm == keySpec.mAlgorithm;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mAlias.hashCode() + mAlgorithm.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "KeySpec{alias=" + mAlias + ", algorithm=" + mAlgorithm + '}';
+    }
+}
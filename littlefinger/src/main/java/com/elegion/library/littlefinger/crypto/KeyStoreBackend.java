@@ -0,0 +1,65 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.security.keystore.KeyGenParameterSpec;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PublicKey;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Storage of the user-authentication-bound keys. {@link AndroidKeyStoreBackend} is used by default,
+ * {@link FakeKeyStoreBackend} runs the library off-device.
+ * Implementations must be thread-safe.
+ *
+ * @author Azret Magometov
+ */
+public interface KeyStoreBackend {
+
+    /**
+     * Called once before the first lookup
+     */
+    void load() throws GeneralSecurityException, IOException;
+
+    @Nullable
+    Key getKey(@NonNull String alias) throws GeneralSecurityException;
+
+    /**
+     * @return public key usable by any provider, without the restrictions of the private key
+     */
+    @Nullable
+    PublicKey getPublicKey(@NonNull String alias) throws GeneralSecurityException;
+
+    boolean containsAlias(@NonNull String alias) throws GeneralSecurityException;
+
+    void deleteEntry(@NonNull String alias) throws GeneralSecurityException;
+
+    void generateSecretKey(@NonNull String algorithm, @NonNull KeyGenParameterSpec spec) throws GeneralSecurityException;
+
+    void generateKeyPair(@NonNull String algorithm, @NonNull KeyGenParameterSpec spec) throws GeneralSecurityException;
+
+    /**
+     * Cipher for the keys of this backend, user authentication is enforced by its init and doFinal
+     */
+    @NonNull
+    Cipher getCipher(@NonNull String transformation) throws GeneralSecurityException;
+
+    /**
+     * Key agreement for the private keys of this backend, user authentication is enforced by its init
+     */
+    @NonNull
+    KeyAgreement getKeyAgreement(@NonNull String algorithm) throws GeneralSecurityException;
+
+    /**
+     * Signature for the private keys of this backend, user authentication is enforced by its init and sign
+     */
+    @NonNull
+    Signature getSignature(@NonNull String algorithm) throws GeneralSecurityException;
+}
@@ -1,21 +1,25 @@
 package com.elegion.library.littlefinger.crypto;
 
 import android.os.Build;
-import android.util.Log;
+import android.security.keystore.KeyGenParameterSpec;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.Key;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.Signature;
 import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
+import java.security.spec.AlgorithmParameterSpec;
 
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
 import javax.crypto.SecretKey;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
@@ -23,30 +27,71 @@ import androidx.annotation.RequiresApi;
  * @author Azret Magometov
  */
 @RequiresApi(api = Build.VERSION_CODES.M)
-class KeyStoreManager {
+public class KeyStoreManager {
 
     private static final String TAG = KeyStoreManager.class.getSimpleName();
 
-    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+    private static final int KEY_CACHE_SIZE = 32;
+    private static final int KEY_LOCK_STRIPES = 16;
+
     private static KeyStoreManager INSTANCE;
-    private KeyStore mKeyStore;
+    private final KeyStoreBackend mBackend;
+    private boolean mLoaded;
+    private final KeyHandleCache mCache = new KeyHandleCache(KEY_CACHE_SIZE);
+    private final Object mKeyStoreLock = new Object();
+    private final Object[] mKeyLocks = new Object[KEY_LOCK_STRIPES];
 
-    private KeyStoreManager() {
-        try {
-            mKeyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
-            mKeyStore.load(null);
-        } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException e) {
-            Log.d(TAG, "KeyStoreManager: ", e);
+    KeyStoreManager(KeyStoreBackend backend) {
+        mBackend = backend;
+        for (int i = 0; i < KEY_LOCK_STRIPES; i++) {
+            mKeyLocks[i] = new Object();
         }
     }
 
-    static synchronized KeyStoreManager getInstance() {
+    public static synchronized KeyStoreManager getInstance() {
         if (INSTANCE == null) {
-            INSTANCE = new KeyStoreManager();
+            INSTANCE = new KeyStoreManager(new AndroidKeyStoreBackend());
         }
         return INSTANCE;
     }
 
+    /**
+     * @param authValiditySeconds 0 to require authentication for every use of the key,
+     *                            otherwise the key is usable for that long after any successful authentication
+     */
+    static KeyGenParameterSpec.Builder requireUserAuthentication(KeyGenParameterSpec.Builder builder, int authValiditySeconds) {
+        builder.setUserAuthenticationRequired(true);
+        if (authValiditySeconds > 0) {
+            builder.setUserAuthenticationValidityDurationSeconds(authValiditySeconds);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            builder.setInvalidatedByBiometricEnrollment(false);
+        }
+        return builder;
+    }
+
+    /**
+     * Counters of the key handle cache, lookups that went to the keystore are misses
+     */
+    public KeyCacheStats getCacheStats() {
+        return mCache.getStats();
+    }
+
+    /**
+     * Drops all cached key handles, e.g. after enrolled fingerprints have changed
+     */
+    public void invalidateCache() {
+        mCache.invalidateAll();
+    }
+
+    /**
+     * Lock to hold while checking for a key and generating it, so concurrent operations
+     * on the same alias don't generate the key twice. Different aliases rarely share a lock.
+     */
+    Object getKeyLock(String alias) {
+        return mKeyLocks[(alias.hashCode() & 0x7FFFFFFF) % KEY_LOCK_STRIPES];
+    }
+
     @Nullable
     PrivateKey getPrivateKey(String alias) throws Exception {
         return (PrivateKey) getKey(alias);
@@ -58,41 +103,158 @@ class KeyStoreManager {
 
     @Nullable
     private Key getKey(String alias) throws Exception {
+        Key cached = mCache.getKey(alias);
+        if (cached != null) {
+            return cached;
+        }
+        long start = Tracer.start();
         try {
-            mKeyStore.load(null);
-            return mKeyStore.getKey(alias, null);
+            Key key;
+            synchronized (mKeyStoreLock) {
+                key = loadedBackend().getKey(alias);
+            }
+            if (key != null) {
+                mCache.putKey(alias, key);
+            }
+            return key;
         } catch (UnrecoverableKeyException e) {
+            mCache.invalidate(alias);
             throw e;
         } catch (GeneralSecurityException | IOException e) {
             throw new Exception("An exception happens while getting Key", e);
+        } finally {
+            Tracer.end(Phase.KEY_LOOKUP, start);
         }
     }
 
     void deleteKey(String alias) throws Exception {
+        mCache.invalidate(alias);
         try {
-            if (mKeyStore.containsAlias(alias)) {
-                mKeyStore.deleteEntry(alias);
+            synchronized (mKeyStoreLock) {
+                loadedBackend().deleteEntry(alias);
             }
-        } catch (KeyStoreException e) {
+        } catch (GeneralSecurityException | IOException e) {
             throw new Exception("Keystore exception while deleting key", e);
         }
     }
 
+    /**
+     * @return public key detached from the keystore, it isn't bound by the key restrictions and can be used by any provider.
+     * The same instance is returned until the alias is evicted, so it can be used to validate derived caches.
+     */
     PublicKey getPublicKey(String alias) throws Exception {
+        PublicKey cached = mCache.getPublicKey(alias);
+        if (cached != null) {
+            return cached;
+        }
+        long start = Tracer.start();
         try {
-            mKeyStore.load(null);
-            return mKeyStore.getCertificate(alias).getPublicKey();
+            PublicKey publicKey;
+            synchronized (mKeyStoreLock) {
+                publicKey = loadedBackend().getPublicKey(alias);
+            }
+            if (publicKey == null) {
+                throw new Exception("There is no public key " + alias);
+            }
+            mCache.putPublicKey(alias, publicKey);
+            return publicKey;
         } catch (GeneralSecurityException | IOException e) {
             throw new Exception("Keystore exception while getting public key", e);
+        } finally {
+            Tracer.end(Phase.KEY_LOOKUP, start);
         }
     }
 
     boolean containsKey(String key) throws Exception {
+        if (mCache.contains(key)) {
+            return true;
+        }
+        long start = Tracer.start();
         try {
-            mKeyStore.load(null);
-            return mKeyStore.containsAlias(key);
+            synchronized (mKeyStoreLock) {
+                return loadedBackend().containsAlias(key);
+            }
         } catch (GeneralSecurityException | IOException e) {
             throw new Exception("An exception happens while working with KeyStore ", e);
+        } finally {
+            Tracer.end(Phase.KEY_LOOKUP, start);
+        }
+    }
+
+    /**
+     * Key generation is slow, it runs outside of the keystore lock, callers hold the lock of the alias
+     */
+    void generateSecretKey(String algorithm, KeyGenParameterSpec spec) throws GeneralSecurityException {
+        long start = Tracer.start();
+        try {
+            mBackend.generateSecretKey(algorithm, spec);
+        } finally {
+            Tracer.end(Phase.KEY_GENERATION, start);
+        }
+    }
+
+    void generateKeyPair(String algorithm, KeyGenParameterSpec spec) throws GeneralSecurityException {
+        long start = Tracer.start();
+        try {
+            mBackend.generateKeyPair(algorithm, spec);
+        } finally {
+            Tracer.end(Phase.KEY_GENERATION, start);
+        }
+    }
+
+    /**
+     * Creates the cipher of the backend and initializes it with the key of this manager
+     *
+     * @param params null to let the keystore generate them
+     */
+    Cipher initCipher(String transformation, int mode, Key key, @Nullable AlgorithmParameterSpec params) throws GeneralSecurityException {
+        long start = Tracer.start();
+        try {
+            Cipher cipher = mBackend.getCipher(transformation);
+            if (params == null) {
+                cipher.init(mode, key);
+            } else {
+                cipher.init(mode, key, params);
+            }
+            return cipher;
+        } finally {
+            Tracer.end(Phase.CIPHER_INIT, start);
+        }
+    }
+
+    /**
+     * Creates the key agreement of the backend and initializes it with the private key of this manager
+     */
+    KeyAgreement initKeyAgreement(String algorithm, Key key) throws GeneralSecurityException {
+        long start = Tracer.start();
+        try {
+            KeyAgreement keyAgreement = mBackend.getKeyAgreement(algorithm);
+            keyAgreement.init(key);
+            return keyAgreement;
+        } finally {
+            Tracer.end(Phase.CIPHER_INIT, start);
+        }
+    }
+
+    Signature initSignature(String algorithm, PrivateKey key) throws GeneralSecurityException {
+        long start = Tracer.start();
+        try {
+            Signature signature = mBackend.getSignature(algorithm);
+            signature.initSign(key);
+            return signature;
+        } finally {
+            Tracer.end(Phase.CIPHER_INIT, start);
+        }
+    }
+
+    /**
+     * AndroidKeyStore reads entries live, so it is enough to load it once. Must be called under {@code mKeyStoreLock}
+     */
+    private KeyStoreBackend loadedBackend() throws GeneralSecurityException, IOException {
+        if (!mLoaded) {
+            mBackend.load();
+            mLoaded = true;
         }
+        return mBackend;
     }
 }
@@ -0,0 +1,112 @@
+package com.elegion.library.littlefinger.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * SHA-256 Merkle tree of a message batch, so one signature of the root covers every message.
+ * Leaves and nodes are hashed with different prefixes, a node without a pair is promoted to the next level as is.
+ *
+ * @author Azret Magometov
+ */
+
+final class MerkleTree {
+
+    static final int HASH_SIZE_BYTES = 32;
+
+    private static final String DIGEST = "SHA-256";
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    /**
+     * Leaf hashes first, the root is the only hash of the last level
+     */
+    private final List<byte[][]> mLevels = new ArrayList<>();
+
+    MerkleTree(@NonNull List<byte[]> messages) throws NoSuchAlgorithmException {
+        if (messages.isEmpty()) {
+            throw new IllegalArgumentException("Batch is empty");
+        }
+        MessageDigest digest = MessageDigest.getInstance(DIGEST);
+        byte[][] level = new byte[messages.size()][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = leafHash(digest, messages.get(i));
+        }
+        mLevels.add(level);
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                int left = 2 * i;
+                next[i] = left + 1 < level.length ? nodeHash(digest, level[left], level[left + 1]) : level[left];
+            }
+            mLevels.add(next);
+            level = next;
+        }
+    }
+
+    int getLeafCount() {
+        return mLevels.get(0).length;
+    }
+
+    @NonNull
+    byte[] getRoot() {
+        return mLevels.get(mLevels.size() - 1)[0];
+    }
+
+    /**
+     * @return sibling hashes from the leaf up, levels where the node has no pair are skipped
+     */
+    @NonNull
+    byte[][] getProof(int index) {
+        List<byte[]> proof = new ArrayList<>(mLevels.size());
+        for (int level = 0; level < mLevels.size() - 1; level++) {
+            byte[][] hashes = mLevels.get(level);
+            int sibling = index ^ 1;
+            if (sibling < hashes.length) {
+                proof.add(hashes[sibling]);
+            }
+            index >>= 1;
+        }
+        return proof.toArray(new byte[proof.size()][]);
+    }
+
+    /**
+     * @return root of the tree the message belongs to, null if the proof doesn't fit the position
+     */
+    @Nullable
+    static byte[] computeRoot(byte[] message, int index, int leafCount, byte[][] proof) throws NoSuchAlgorithmException {
+        if (index < 0 || index >= leafCount) {
+            return null;
+        }
+        MessageDigest digest = MessageDigest.getInstance(DIGEST);
+        byte[] hash = leafHash(digest, message);
+        int used = 0;
+        for (int count = leafCount; count > 1; count = (count + 1) / 2) {
+            if ((index ^ 1) < count) {
+                if (used == proof.length) {
+                    return null;
+                }
+                byte[] sibling = proof[used++];
+                hash = (index & 1) == 0 ? nodeHash(digest, hash, sibling) : nodeHash(digest, sibling, hash);
+            }
+            index >>= 1;
+        }
+        return used == proof.length ? hash : null;
+    }
+
+    private static byte[] leafHash(MessageDigest digest, byte[] message) {
+        digest.update(LEAF_PREFIX);
+        return digest.digest(message);
+    }
+
+    private static byte[] nodeHash(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        return digest.digest(right);
+    }
+}
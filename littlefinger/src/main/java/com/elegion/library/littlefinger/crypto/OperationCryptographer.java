@@ -0,0 +1,52 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import javax.crypto.Cipher;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Cryptographer of a keystore secret key: both encoding and decoding are authorized with the cipher
+ * of a {@link CryptoOperation}
+ *
+ * @author Azret Magometov
+ */
+public interface OperationCryptographer extends Cryptographer {
+
+    /**
+     * Parses the input and prepares the keystore cipher, pass {@link CryptoOperation#getCryptoObject()} to the authentication
+     */
+    @NonNull
+    CryptoOperation newOperation(String text, Purpose purpose, String key) throws Exception;
+
+    @NonNull
+    CryptoOperation newOperation(byte[] data, Purpose purpose, String key) throws Exception;
+
+    /**
+     * Encoding cipher doesn't depend on the input, so it can be initialized before the input is known
+     */
+    @NonNull
+    FingerprintManager.CryptoObject getEncodeCryptoObject(String key) throws Exception;
+
+    /**
+     * Encoding operation with the cipher of {@link #getEncodeCryptoObject(String)}
+     */
+    @NonNull
+    CryptoOperation newEncodeOperation(String text, String key, FingerprintManager.CryptoObject cryptoObject);
+
+    @NonNull
+    CryptoOperation newEncodeOperation(byte[] data, String key, FingerprintManager.CryptoObject cryptoObject);
+
+    @NonNull
+    String encode(CryptoOperation operation, Cipher cipher) throws Exception;
+
+    @NonNull
+    byte[] encodeToBytes(CryptoOperation operation, Cipher cipher) throws Exception;
+
+    @NonNull
+    String decode(CryptoOperation operation, Cipher cipher) throws Exception;
+
+    @NonNull
+    byte[] decodeToBytes(CryptoOperation operation, Cipher cipher) throws Exception;
+}
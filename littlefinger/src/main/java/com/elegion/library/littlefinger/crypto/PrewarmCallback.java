@@ -0,0 +1,21 @@
+package com.elegion.library.littlefinger.crypto;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * @author Azret Magometov
+ */
+public interface PrewarmCallback {
+
+    /**
+     * Called for every key in the order of the input
+     *
+     * @param generated     false if the key already existed
+     * @param elapsedMillis time spent on this key
+     * @param error         null if the key is ready
+     */
+    void onKeyReady(@NonNull KeySpec keySpec, boolean generated, long elapsedMillis, @Nullable Exception error);
+
+    void onCompleted(int generatedCount, long elapsedMillis);
+}
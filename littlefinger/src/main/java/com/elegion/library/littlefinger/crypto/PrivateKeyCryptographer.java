@@ -0,0 +1,28 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import javax.crypto.Cipher;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Cryptographer of a keystore key pair: encoding with the public key needs no authentication,
+ * decoding is authorized with the cipher of the private key
+ *
+ * @author Azret Magometov
+ */
+public interface PrivateKeyCryptographer extends Cryptographer {
+
+    /**
+     * Decoding cipher of the private key, it doesn't depend on the input
+     */
+    @NonNull
+    FingerprintManager.CryptoObject getCryptoObject(String key) throws Exception;
+
+    @NonNull
+    String decode(String text, Cipher cipher) throws Exception;
+
+    @NonNull
+    byte[] decodeToBytes(byte[] data, Cipher cipher) throws Exception;
+}
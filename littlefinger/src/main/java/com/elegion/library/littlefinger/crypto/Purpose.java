@@ -5,5 +5,10 @@ package com.elegion.library.littlefinger.crypto;
  */
 
 public enum Purpose {
-    ENCODE, DECODE
+    ENCODE, DECODE,
+
+    /**
+     * Signing with the fingerprint-bound key, see {@link SignatureCryptographer}
+     */
+    SIGN
 }
@@ -5,19 +5,20 @@ import android.os.Build;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyPermanentlyInvalidatedException;
 import android.security.keystore.KeyProperties;
-import android.util.Base64;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
 
 import java.security.GeneralSecurityException;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.KeyFactory;
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.UnrecoverableKeyException;
 import java.security.spec.MGF1ParameterSpec;
-import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -33,93 +34,215 @@ import androidx.annotation.RequiresApi;
  */
 
 @RequiresApi(api = Build.VERSION_CODES.M)
-public class RsaCryptographer {
+public class RsaCryptographer implements PrivateKeyCryptographer {
     private static final String TAG = RsaCryptographer.class.getSimpleName();
 
-    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
 
     private static final String TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
 
-    private KeyStoreManager mKeyStoreManager;
+    /**
+     * Size of the legacy raw ciphertext, containers are always longer
+     */
+    private static final int RSA_BLOCK_SIZE = 256;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private static final OAEPParameterSpec OAEP_SPEC = new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT);
+
+    private final KeyStoreManager mKeyStoreManager;
+
+    /**
+     * Initialized encoding ciphers by alias, OAEP cipher is ready for the next message after doFinal
+     */
+    private final ThreadLocal<Map<String, EncodeCipher>> mEncodeCiphers = new ThreadLocal<Map<String, EncodeCipher>>() {
+        @Override
+        protected Map<String, EncodeCipher> initialValue() {
+            return new HashMap<>();
+        }
+    };
 
     private static RsaCryptographer INSTANCE;
 
-    private RsaCryptographer() {
-        mKeyStoreManager = KeyStoreManager.getInstance();
+    RsaCryptographer(KeyStoreManager keyStoreManager) {
+        mKeyStoreManager = keyStoreManager;
     }
 
     @NonNull
     public synchronized static RsaCryptographer getInstance() {
         if (INSTANCE == null) {
-            INSTANCE = new RsaCryptographer();
+            INSTANCE = new RsaCryptographer(KeyStoreManager.getInstance());
         }
         return INSTANCE;
     }
 
     public String encode(String inputString, String key) throws Exception {
+        return encode(inputString, key, 0);
+    }
+
+    /**
+     * The input must fit one RSA block (190 bytes), use {@link HybridCryptographer} for larger data
+     *
+     * @param authValiditySeconds authentication validity window of the private key, used only if the key pair doesn't exist yet
+     */
+    @Override
+    public String encode(String inputString, String key, int authValiditySeconds) throws Exception {
+        return Base64Text.encode(encodeToBytes(inputString.getBytes(), key, authValiditySeconds));
+    }
+
+    /**
+     * @return binary {@link CipherContainer}
+     */
+    public byte[] encodeToBytes(byte[] input, String key) throws Exception {
+        return encodeToBytes(input, key, 0);
+    }
+
+    @Override
+    public byte[] encodeToBytes(byte[] input, String key, int authValiditySeconds) throws Exception {
+        return encodeToBytes(input, key, initEncodeCipher(key, authValiditySeconds));
+    }
+
+    /**
+     * Encodes all strings with one initialized cipher
+     */
+    public List<String> encodeAll(List<String> inputStrings, String key) throws Exception {
+        return encodeAll(inputStrings, key, 0);
+    }
+
+    public List<String> encodeAll(List<String> inputStrings, String key, int authValiditySeconds) throws Exception {
+        Cipher encodingCipher = initEncodeCipher(key, authValiditySeconds);
+        List<String> result = new ArrayList<>(inputStrings.size());
+        for (String inputString : inputStrings) {
+            result.add(Base64Text.encode(encodeToBytes(inputString.getBytes(), key, encodingCipher)));
+        }
+        return result;
+    }
+
+    private byte[] encodeToBytes(byte[] input, String key, Cipher encodingCipher) throws Exception {
+        long start = Tracer.start();
+        try {
+            byte[] bytes = encrypt(input, key, encodingCipher);
+            return CipherContainer.toByteArray(CipherContainer.ALGORITHM_RSA_OAEP, CipherContainer.aliasHash(key), NO_BYTES, NO_BYTES, bytes, 0);
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * @return raw OAEP ciphertext of the input, no authentication is needed
+     */
+    byte[] encrypt(byte[] input, String key, int authValiditySeconds) throws Exception {
+        return encrypt(input, key, initEncodeCipher(key, authValiditySeconds));
+    }
+
+    private byte[] encrypt(byte[] input, String key, Cipher encodingCipher) throws Exception {
         try {
-            Cipher encodingCipher = initEncodeCipher(key);
-            byte[] bytes = encodingCipher.doFinal(inputString.getBytes());
-            return Base64.encodeToString(bytes, Base64.NO_WRAP);
+            return encodingCipher.doFinal(input);
         } catch (IllegalBlockSizeException | BadPaddingException exception) {
+            // don't reuse the cipher in an unknown state
+            mEncodeCiphers.get().remove(key);
             throw new Exception("Can't encode", exception);
         }
     }
 
-    private void createKey(String key) throws Exception {
-        if (!mKeyStoreManager.containsKey(key)) {
-            generateKeyPair(key);
+    /**
+     * Generates the key pair if it doesn't exist yet and caches its public key,
+     * so the first encoding only initializes the cipher
+     *
+     * @return true if the key pair was generated
+     */
+    @Override
+    public boolean prewarm(String key, int authValiditySeconds) throws Exception {
+        boolean generated = createKey(key, authValiditySeconds);
+        mKeyStoreManager.getPublicKey(key);
+        return generated;
+    }
+
+    private boolean createKey(String key, int authValiditySeconds) throws Exception {
+        synchronized (mKeyStoreManager.getKeyLock(key)) {
+            if (mKeyStoreManager.containsKey(key)) {
+                return false;
+            }
+            generateKeyPair(key, authValiditySeconds);
+            return true;
         }
     }
 
+    @Override
     public String decode(String encodedString, Cipher cipher) throws Exception {
+        return new String(decodeToBytes(Base64Text.decode(encodedString), cipher));
+    }
+
+    /**
+     * Decodes without {@link FingerprintManager.CryptoObject}, works only for keys with authentication validity window
+     */
+    @Override
+    public String decode(String encodedString, String key) throws Exception {
+        return decode(encodedString, initDecodeCipher(key));
+    }
+
+    @Override
+    public byte[] decodeToBytes(byte[] input, String key) throws Exception {
+        return decodeToBytes(input, initDecodeCipher(key));
+    }
+
+    /**
+     * @param input binary {@link CipherContainer} or raw ciphertext of the legacy format
+     */
+    @Override
+    public byte[] decodeToBytes(byte[] input, Cipher cipher) throws Exception {
+        long start = Tracer.start();
         try {
-            byte[] bytes = Base64.decode(encodedString, Base64.NO_WRAP);
-            return new String(cipher.doFinal(bytes));
+            if (input.length != RSA_BLOCK_SIZE && CipherContainer.hasMagic(input, 0, input.length)) {
+                CipherContainer container = CipherContainer.parse(input);
+                return cipher.doFinal(input, container.getCiphertextOffset(), container.getSealedLength());
+            }
+            return cipher.doFinal(input);
         } catch (IllegalBlockSizeException | BadPaddingException exception) {
             throw new Exception("Can't decode", exception);
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
         }
     }
 
     @NonNull
+    @Override
     public FingerprintManager.CryptoObject getCryptoObject(String key) throws Exception {
         Cipher cipher = initDecodeCipher(key);
         return new FingerprintManager.CryptoObject(cipher);
     }
 
-    private Cipher initDecodeCipher(String key) throws Exception {
+    Cipher initDecodeCipher(String key) throws Exception {
         try {
             PrivateKey privateKey = mKeyStoreManager.getPrivateKey(key);
-
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.DECRYPT_MODE, privateKey);
-            return cipher;
+            // the same parameters as for encoding, the keystore only supports SHA-1 for MGF1
+            return mKeyStoreManager.initCipher(TRANSFORMATION, Cipher.DECRYPT_MODE, privateKey, OAEP_SPEC);
         } catch (KeyPermanentlyInvalidatedException | UnrecoverableKeyException e) {
             mKeyStoreManager.deleteKey(key);
             if (e instanceof UnrecoverableKeyException) {
                 throw new KeyPermanentlyInvalidatedException("An exception happens while getting Key", e);
             }
             throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
         } catch (GeneralSecurityException e) {
             throw new Exception("Exception while initializing decoding cipher", e);
         }
     }
 
-    private Cipher initEncodeCipher(String key) throws Exception {
+    private Cipher initEncodeCipher(String key, int authValiditySeconds) throws Exception {
         try {
-            createKey(key);
+            createKey(key, authValiditySeconds);
 
             PublicKey publicKey = mKeyStoreManager.getPublicKey(key);
-            // workaround for using public key
-            // from https://developer.android.com/reference/android/security/keystore/KeyGenParameterSpec.html
-            PublicKey unrestricted = KeyFactory.getInstance(publicKey.getAlgorithm()).generatePublic(new X509EncodedKeySpec(publicKey.getEncoded()));
-            // from https://code.google.com/p/android/issues/detail?id=197719
 
-            OAEPParameterSpec spec = new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT);
+            Map<String, EncodeCipher> ciphers = mEncodeCiphers.get();
+            EncodeCipher cached = ciphers.get(key);
+            // the public key instance changes when the key pair is regenerated
+            if (cached != null && cached.mPublicKey == publicKey) {
+                return cached.mCipher;
+            }
 
-            Cipher cipher;
-            cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.ENCRYPT_MODE, unrestricted, spec);
+            Cipher cipher = mKeyStoreManager.initCipher(TRANSFORMATION, Cipher.ENCRYPT_MODE, publicKey, OAEP_SPEC);
+            ciphers.put(key, new EncodeCipher(publicKey, cipher));
 
             return cipher;
 
@@ -128,26 +251,27 @@ public class RsaCryptographer {
         }
     }
 
-    private void generateKeyPair(String alias) throws Exception {
+    private void generateKeyPair(String alias, int authValiditySeconds) throws Exception {
         try {
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_RSA, ANDROID_KEY_STORE);
-            if (keyPairGenerator != null) {
-                KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
-                        .setDigests(KeyProperties.DIGEST_SHA256, KeyProperties.DIGEST_SHA512)
-                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_RSA_OAEP)
-                        .setUserAuthenticationRequired(true);
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    builder.setInvalidatedByBiometricEnrollment(false);
-                }
-
-                keyPairGenerator.initialize(builder.build());
-                keyPairGenerator.generateKeyPair();
-            }
-        } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException | NoSuchProviderException e) {
+            KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setDigests(KeyProperties.DIGEST_SHA256, KeyProperties.DIGEST_SHA512)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_RSA_OAEP);
+            KeyStoreManager.requireUserAuthentication(builder, authValiditySeconds);
+
+            mKeyStoreManager.generateKeyPair(KeyProperties.KEY_ALGORITHM_RSA, builder.build());
+        } catch (GeneralSecurityException e) {
             throw new Exception("An exception happens while generating a new KeyPair", e);
         }
     }
 
-}
+    private static class EncodeCipher {
+        private final PublicKey mPublicKey;
+        private final Cipher mCipher;
 
+        private EncodeCipher(PublicKey publicKey, Cipher cipher) {
+            mPublicKey = publicKey;
+            mCipher = cipher;
+        }
+    }
+
+}
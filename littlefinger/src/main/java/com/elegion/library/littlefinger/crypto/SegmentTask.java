@@ -0,0 +1,172 @@
+package com.elegion.library.littlefinger.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.RecursiveAction;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.DATA_TRANSFORMATION;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_IV_SIZE_BYTES;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_TAG_SIZE_BITS;
+
+/**
+ * Seals or opens a range of stream segments, the range is split between the workers of the pool.
+ * Segments are read and written with positional io, so the ranges share nothing but the channels.
+ *
+ * @author Azret Magometov
+ */
+
+final class SegmentTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int TAG_SIZE_BYTES = GCM_TAG_SIZE_BITS / 8;
+
+    private final Job mJob;
+    private final int mFrom;
+    private final int mTo;
+
+    SegmentTask(Job job, int from, int to) {
+        mJob = job;
+        mFrom = from;
+        mTo = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (mTo - mFrom > mJob.mLeafSize) {
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new SegmentTask(mJob, mFrom, middle), new SegmentTask(mJob, middle, mTo));
+            return;
+        }
+        try {
+            process();
+        } catch (IOException | GeneralSecurityException e) {
+            throw new Failure(e);
+        }
+    }
+
+    private void process() throws IOException, GeneralSecurityException {
+        Job job = mJob;
+        int segmentSize = job.mHeader.getSegmentSize();
+        int sealedSize = segmentSize + TAG_SIZE_BYTES;
+        boolean encrypt = job.mMode == Cipher.ENCRYPT_MODE;
+
+        Cipher cipher = Cipher.getInstance(DATA_TRANSFORMATION);
+        ByteBuffer input = ByteBuffer.allocate(sealedSize);
+        ByteBuffer output = ByteBuffer.allocate(sealedSize);
+        byte[] nonce = new byte[GCM_IV_SIZE_BYTES];
+        System.arraycopy(job.mHeader.getNoncePrefix(), 0, nonce, 0, StreamHeader.NONCE_PREFIX_SIZE);
+
+        for (int index = mFrom; index < mTo; index++) {
+            boolean last = index == job.mSegmentCount - 1;
+            int plaintextSize = last ? (int) (job.mPlaintextLength - (long) index * segmentSize) : segmentSize;
+            input.clear();
+            input.limit(encrypt ? plaintextSize : plaintextSize + TAG_SIZE_BYTES);
+            readFully(job.mSource, input, job.mSourceOffset + (long) index * (encrypt ? segmentSize : sealedSize));
+            input.flip();
+
+            StreamCryptographer.setSegmentNonce(nonce, index, last);
+            cipher.init(job.mMode, job.mDataKey, new GCMParameterSpec(GCM_TAG_SIZE_BITS, nonce));
+            output.clear();
+            cipher.doFinal(input, output);
+            output.flip();
+            writeFully(job.mDestination, output, job.mDestinationOffset + (long) index * (encrypt ? sealedSize : segmentSize));
+        }
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Stream is truncated");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel destination, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            destination.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Shared parameters of all ranges
+     */
+    static final class Job {
+        private final int mMode;
+        private final SecretKey mDataKey;
+        private final StreamHeader mHeader;
+        private final FileChannel mSource;
+        private final long mSourceOffset;
+        private final FileChannel mDestination;
+        private final long mDestinationOffset;
+        private final long mPlaintextLength;
+        private final int mSegmentCount;
+        private final int mLeafSize;
+
+        Job(int mode, SecretKey dataKey, StreamHeader header, FileChannel source, long sourceOffset,
+            FileChannel destination, long destinationOffset, long plaintextLength, int parallelism) {
+            mMode = mode;
+            mDataKey = dataKey;
+            mHeader = header;
+            mSource = source;
+            mSourceOffset = sourceOffset;
+            mDestination = destination;
+            mDestinationOffset = destinationOffset;
+            mPlaintextLength = plaintextLength;
+            mSegmentCount = segmentCount(plaintextLength, header.getSegmentSize());
+            // a few ranges per worker even out the segments that take longer
+            mLeafSize = Math.max(1, mSegmentCount / (parallelism * 4));
+        }
+
+        int getSegmentCount() {
+            return mSegmentCount;
+        }
+    }
+
+    /**
+     * The last segment is shorter than the segment size, so there is one even for an empty payload
+     */
+    static int segmentCount(long plaintextLength, int segmentSize) {
+        long count = plaintextLength / segmentSize + 1;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Payload is too large");
+        }
+        return (int) count;
+    }
+
+    static long sealedLength(long plaintextLength, int segmentSize) {
+        return plaintextLength + (long) segmentCount(plaintextLength, segmentSize) * TAG_SIZE_BYTES;
+    }
+
+    /**
+     * @return length of the payload sealed into the given number of bytes, -1 if it isn't a whole stream
+     */
+    static long plaintextLength(long sealedLength, int segmentSize) {
+        int sealedSize = segmentSize + TAG_SIZE_BYTES;
+        long lastSize = sealedLength % sealedSize;
+        if (lastSize < TAG_SIZE_BYTES) {
+            return -1;
+        }
+        long count = sealedLength / sealedSize + 1;
+        return sealedLength - count * TAG_SIZE_BYTES;
+    }
+
+    /**
+     * Carries the checked exception of a range out of the pool
+     */
+    static final class Failure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Failure(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.KeyProperties;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.UnrecoverableKeyException;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * ECDSA P-256 signatures with the fingerprint-bound key, {@link Purpose#SIGN}.
+ * A batch is signed with one keystore operation: only the root of the {@link MerkleTree} of the messages is signed,
+ * every message gets a self-contained signature of its own, the root signature with the path to the root.
+ * Signing keys are separate from the encryption ones, don't share their aliases.
+ *
+ * @author Azret Magometov
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class SignatureCryptographer {
+
+    private static final String ALGORITHM = "SHA256withECDSA";
+    private static final String CURVE = "secp256r1";
+
+    /**
+     * Signed instead of the bare root, so it can't be taken for a signature of a 32-byte message
+     */
+    private static final byte[] BATCH_ROOT_PREFIX = "LittleFinger batch root".getBytes();
+
+    /**
+     * DER signatures start with the SEQUENCE tag 0x30, batch item signatures with 'M'
+     */
+    private static final byte BATCH_MAGIC = 'M';
+    private static final byte BATCH_VERSION = 1;
+    private static final int BATCH_HEADER_SIZE = 1 + 1 + 4 + 4 + 1;
+
+    private final KeyStoreManager mKeyStoreManager;
+
+    /**
+     * Initialized verifiers by alias, a verifier is ready for the next signature after verify
+     */
+    private final ThreadLocal<Map<String, Verifier>> mVerifiers = new ThreadLocal<Map<String, Verifier>>() {
+        @Override
+        protected Map<String, Verifier> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private static SignatureCryptographer INSTANCE;
+
+    @NonNull
+    public synchronized static SignatureCryptographer getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new SignatureCryptographer(KeyStoreManager.getInstance());
+        }
+        return INSTANCE;
+    }
+
+    SignatureCryptographer(KeyStoreManager keyStoreManager) {
+        mKeyStoreManager = keyStoreManager;
+    }
+
+    /**
+     * Prepares the signature of the message, pass {@link CryptoOperation#getCryptoObject()} to the authentication
+     *
+     * @param authValiditySeconds authentication validity window of the key, used only if the key doesn't exist yet
+     */
+    @NonNull
+    public CryptoOperation newOperation(@NonNull byte[] message, String key, int authValiditySeconds) throws Exception {
+        Signature signature = initSign(key, authValiditySeconds);
+        return new CryptoOperation(Purpose.SIGN, key, message, new FingerprintManager.CryptoObject(signature));
+    }
+
+    /**
+     * Hashes the batch before the authentication, so only the root is signed after the touch
+     */
+    @NonNull
+    public CryptoOperation newBatchOperation(@NonNull List<byte[]> messages, String key, int authValiditySeconds) throws Exception {
+        MerkleTree tree = new MerkleTree(messages);
+        Signature signature = initSign(key, authValiditySeconds);
+        return new CryptoOperation(Purpose.SIGN, key, tree, new FingerprintManager.CryptoObject(signature));
+    }
+
+    /**
+     * @param signature signature of {@link #newOperation(byte[], String, int)} after the authentication
+     * @return DER encoded ECDSA signature
+     */
+    @NonNull
+    public byte[] sign(CryptoOperation operation, Signature signature) throws Exception {
+        return sign(operation.<byte[]>getData(), signature);
+    }
+
+    /**
+     * @param signature signature of {@link #newBatchOperation(List, String, int)} after the authentication
+     * @return signatures in the order of the messages, each of them is verified by {@link #verify(byte[], byte[], String)}
+     */
+    @NonNull
+    public List<byte[]> signBatch(CryptoOperation operation, Signature signature) throws Exception {
+        return signBatch(operation.<MerkleTree>getData(), signature);
+    }
+
+    /**
+     * Signs without {@link FingerprintManager.CryptoObject}. The key is generated with the given
+     * authentication validity window, the user must have been authenticated within it.
+     */
+    @NonNull
+    public byte[] sign(@NonNull byte[] message, String key, int authValiditySeconds) throws Exception {
+        return sign(message, initSign(key, authValiditySeconds));
+    }
+
+    @NonNull
+    public List<byte[]> signBatch(@NonNull List<byte[]> messages, String key, int authValiditySeconds) throws Exception {
+        return signBatch(new MerkleTree(messages), initSign(key, authValiditySeconds));
+    }
+
+    @NonNull
+    private static byte[] sign(byte[] message, Signature signature) throws Exception {
+        long start = Tracer.start();
+        try {
+            signature.update(message);
+            return signature.sign();
+        } catch (SignatureException exception) {
+            throw new Exception("Can't sign", exception);
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    @NonNull
+    private static List<byte[]> signBatch(MerkleTree tree, Signature signature) throws Exception {
+        byte[] rootSignature = sign(rootData(tree.getRoot(), tree.getLeafCount()), signature);
+
+        long start = Tracer.start();
+        try {
+            int leafCount = tree.getLeafCount();
+            List<byte[]> signatures = new ArrayList<>(leafCount);
+            for (int i = 0; i < leafCount; i++) {
+                byte[][] proof = tree.getProof(i);
+                ByteBuffer buffer = ByteBuffer.allocate(BATCH_HEADER_SIZE + proof.length * MerkleTree.HASH_SIZE_BYTES + rootSignature.length);
+                buffer.put(BATCH_MAGIC)
+                        .put(BATCH_VERSION)
+                        .putInt(i)
+                        .putInt(leafCount)
+                        .put((byte) proof.length);
+                for (byte[] hash : proof) {
+                    buffer.put(hash);
+                }
+                buffer.put(rootSignature);
+                signatures.add(buffer.array());
+            }
+            return Collections.unmodifiableList(signatures);
+        } finally {
+            Tracer.end(Phase.ENCODING, start);
+        }
+    }
+
+    /**
+     * Verifies with the cached public key, no authentication is needed
+     *
+     * @param signature plain signature or an item of a batch
+     * @return false if the signature doesn't match or can't be parsed
+     */
+    public boolean verify(@NonNull byte[] message, @NonNull byte[] signature, String key) throws Exception {
+        PublicKey publicKey = mKeyStoreManager.getPublicKey(key);
+        Map<String, Verifier> verifiers = mVerifiers.get();
+        Verifier cached = verifiers.get(key);
+        Signature verifier;
+        // the public key instance changes when the key pair is regenerated
+        if (cached != null && cached.mPublicKey == publicKey) {
+            verifier = cached.mSignature;
+        } else {
+            verifier = Signature.getInstance(ALGORITHM);
+            verifier.initVerify(publicKey);
+            verifiers.put(key, new Verifier(publicKey, verifier));
+        }
+
+        long start = Tracer.start();
+        try {
+            if (signature.length > 0 && signature[0] == BATCH_MAGIC) {
+                return verifyBatchItem(message, signature, verifier);
+            }
+            verifier.update(message);
+            return verifier.verify(signature);
+        } catch (SignatureException exception) {
+            // don't reuse the verifier in an unknown state
+            verifiers.remove(key);
+            return false;
+        } finally {
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    private static boolean verifyBatchItem(byte[] message, byte[] signature, Signature verifier) throws GeneralSecurityException {
+        if (signature.length < BATCH_HEADER_SIZE || signature[1] != BATCH_VERSION) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(signature, 2, signature.length - 2);
+        int index = buffer.getInt();
+        int leafCount = buffer.getInt();
+        int proofLength = buffer.get() & 0xFF;
+        if (buffer.remaining() <= proofLength * MerkleTree.HASH_SIZE_BYTES) {
+            return false;
+        }
+        byte[][] proof = new byte[proofLength][MerkleTree.HASH_SIZE_BYTES];
+        for (byte[] hash : proof) {
+            buffer.get(hash);
+        }
+        byte[] root = MerkleTree.computeRoot(message, index, leafCount, proof);
+        if (root == null) {
+            return false;
+        }
+        verifier.update(rootData(root, leafCount));
+        return verifier.verify(signature, buffer.position(), buffer.remaining());
+    }
+
+    private static byte[] rootData(byte[] root, int leafCount) {
+        return ByteBuffer.allocate(BATCH_ROOT_PREFIX.length + 4 + root.length)
+                .put(BATCH_ROOT_PREFIX)
+                .putInt(leafCount)
+                .put(root)
+                .array();
+    }
+
+    /**
+     * Generates the key pair if it doesn't exist yet and caches its public key
+     *
+     * @return true if the key pair was generated
+     */
+    public boolean prewarm(String key, int authValiditySeconds) throws Exception {
+        boolean generated = createKey(key, authValiditySeconds);
+        mKeyStoreManager.getPublicKey(key);
+        return generated;
+    }
+
+    private Signature initSign(String key, int authValiditySeconds) throws Exception {
+        createKey(key, authValiditySeconds);
+        try {
+            PrivateKey privateKey = mKeyStoreManager.getPrivateKey(key);
+            return mKeyStoreManager.initSignature(ALGORITHM, privateKey);
+        } catch (KeyPermanentlyInvalidatedException | UnrecoverableKeyException e) {
+            mKeyStoreManager.deleteKey(key);
+            if (e instanceof UnrecoverableKeyException) {
+                throw new KeyPermanentlyInvalidatedException("An exception happens while getting Key", e);
+            }
+            throw e;
+        } catch (UserNotAuthenticatedException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new Exception("Exception while initializing signature", e);
+        }
+    }
+
+    private boolean createKey(String key, int authValiditySeconds) throws Exception {
+        synchronized (mKeyStoreManager.getKeyLock(key)) {
+            if (mKeyStoreManager.containsKey(key)) {
+                return false;
+            }
+            generateKeyPair(key, authValiditySeconds);
+            return true;
+        }
+    }
+
+    private void generateKeyPair(String alias, int authValiditySeconds) throws Exception {
+        try {
+            KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, KeyProperties.PURPOSE_SIGN | KeyProperties.PURPOSE_VERIFY)
+                    .setAlgorithmParameterSpec(new ECGenParameterSpec(CURVE))
+                    .setDigests(KeyProperties.DIGEST_SHA256);
+            KeyStoreManager.requireUserAuthentication(builder, authValiditySeconds);
+
+            mKeyStoreManager.generateKeyPair(KeyProperties.KEY_ALGORITHM_EC, builder.build());
+        } catch (GeneralSecurityException e) {
+            throw new Exception("An exception happens while generating a new KeyPair", e);
+        }
+    }
+
+    private static class Verifier {
+        private final PublicKey mPublicKey;
+        private final Signature mSignature;
+
+        private Verifier(PublicKey publicKey, Signature signature) {
+            mPublicKey = publicKey;
+            mSignature = signature;
+        }
+    }
+}
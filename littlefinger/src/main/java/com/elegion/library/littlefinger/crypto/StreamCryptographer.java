@@ -0,0 +1,260 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.annotation.TargetApi;
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+
+import com.elegion.library.littlefinger.metrics.Phase;
+import com.elegion.library.littlefinger.metrics.Tracer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import androidx.annotation.NonNull;
+
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.DATA_TRANSFORMATION;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_IV_SIZE_BYTES;
+import static com.elegion.library.littlefinger.crypto.EnvelopeCryptographer.GCM_TAG_SIZE_BITS;
+
+/**
+ * Constant-memory encryption of streams with the {@link CryptoAlgorithm#ENVELOPE} key.
+ * <p>
+ * The payload is split into fixed-size segments, each sealed with AES-GCM under the unwrapped data key.
+ * Segment nonce is {@code prefix | counter | last flag}, so reordered or truncated streams are rejected.
+ * A segment is the last one if and only if it is shorter than the segment size (it may be empty).
+ * <p>
+ * Segments are independent, so files are processed by all cores at once, see {@link #encodeParallel(Cipher, FileChannel, FileChannel)}.
+ * Both variants produce the same format.
+ *
+ * @author Azret Magometov
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class StreamCryptographer {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private static final int GCM_TAG_SIZE_BYTES = GCM_TAG_SIZE_BITS / 8;
+
+    private static StreamCryptographer INSTANCE;
+    private final EnvelopeCryptographer mEnvelopeCryptographer;
+    private ForkJoinPool mPool;
+
+    @NonNull
+    public synchronized static StreamCryptographer getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new StreamCryptographer(EnvelopeCryptographer.getInstance());
+        }
+        return INSTANCE;
+    }
+
+    StreamCryptographer(EnvelopeCryptographer envelopeCryptographer) {
+        mEnvelopeCryptographer = envelopeCryptographer;
+    }
+
+    /**
+     * Reads the stream header, it is needed to prepare the decoding {@link FingerprintManager.CryptoObject}
+     */
+    @NonNull
+    public StreamHeader readHeader(ReadableByteChannel source) throws IOException {
+        return StreamHeader.read(source);
+    }
+
+    @NonNull
+    public FingerprintManager.CryptoObject getEncodeCryptoObject(String key) throws Exception {
+        return new FingerprintManager.CryptoObject(mEnvelopeCryptographer.initWrapCipher(key, 0));
+    }
+
+    @NonNull
+    public FingerprintManager.CryptoObject getDecodeCryptoObject(String key, StreamHeader header) throws Exception {
+        return new FingerprintManager.CryptoObject(mEnvelopeCryptographer.initUnwrapCipher(key, new GCMParameterSpec(GCM_TAG_SIZE_BITS, header.getWrapIv())));
+    }
+
+    /**
+     * @return count of plaintext bytes processed
+     */
+    public long encode(Cipher wrapCipher, ReadableByteChannel source, WritableByteChannel destination) throws Exception {
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            dataKey = mEnvelopeCryptographer.newDataKey();
+            byte[] noncePrefix = new byte[StreamHeader.NONCE_PREFIX_SIZE];
+            mEnvelopeCryptographer.nextBytes(noncePrefix);
+
+            StreamHeader header = new StreamHeader(DEFAULT_SEGMENT_SIZE, wrapCipher.getIV(), wrapCipher.doFinal(dataKey), noncePrefix);
+            header.write(destination);
+
+            return process(Cipher.ENCRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey), header, source, destination);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while encoding stream", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * @return count of plaintext bytes processed
+     */
+    public long decode(Cipher unwrapCipher, StreamHeader header, ReadableByteChannel source, WritableByteChannel destination) throws Exception {
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            dataKey = unwrapCipher.doFinal(header.getWrappedKey());
+            return process(Cipher.DECRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey), header, source, destination);
+        } catch (AEADBadTagException exception) {
+            throw new Exception("stream was modified or key doesn't match", exception);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while decoding stream", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Encrypts from the position of the source to its end, the data key is unwrapped once for all segments
+     *
+     * @return count of plaintext bytes processed
+     */
+    public long encodeParallel(Cipher wrapCipher, FileChannel source, FileChannel destination) throws Exception {
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            dataKey = mEnvelopeCryptographer.newDataKey();
+            byte[] noncePrefix = new byte[StreamHeader.NONCE_PREFIX_SIZE];
+            mEnvelopeCryptographer.nextBytes(noncePrefix);
+
+            StreamHeader header = new StreamHeader(DEFAULT_SEGMENT_SIZE, wrapCipher.getIV(), wrapCipher.doFinal(dataKey), noncePrefix);
+            header.write(destination);
+
+            long sourceOffset = source.position();
+            long length = source.size() - sourceOffset;
+            long destinationOffset = destination.position();
+            processParallel(Cipher.ENCRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey), header,
+                    source, sourceOffset, destination, destinationOffset, length);
+            source.position(sourceOffset + length);
+            destination.position(destinationOffset + SegmentTask.sealedLength(length, header.getSegmentSize()));
+            return length;
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while encoding stream", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    /**
+     * Decrypts from the position of the source, after the header, to its end
+     *
+     * @return count of plaintext bytes processed
+     */
+    public long decodeParallel(Cipher unwrapCipher, StreamHeader header, FileChannel source, FileChannel destination) throws Exception {
+        byte[] dataKey = null;
+        long start = Tracer.start();
+        try {
+            long sourceOffset = source.position();
+            long length = SegmentTask.plaintextLength(source.size() - sourceOffset, header.getSegmentSize());
+            if (length < 0) {
+                throw new AEADBadTagException("Stream is truncated");
+            }
+            dataKey = unwrapCipher.doFinal(header.getWrappedKey());
+            long destinationOffset = destination.position();
+            processParallel(Cipher.DECRYPT_MODE, EnvelopeCryptographer.toSecretKey(dataKey), header,
+                    source, sourceOffset, destination, destinationOffset, length);
+            source.position(source.size());
+            destination.position(destinationOffset + length);
+            return length;
+        } catch (AEADBadTagException exception) {
+            throw new Exception("stream was modified or key doesn't match", exception);
+        } catch (GeneralSecurityException exception) {
+            throw new Exception("exception while decoding stream", exception);
+        } finally {
+            EnvelopeCryptographer.wipe(dataKey);
+            Tracer.end(Phase.CRYPTO, start);
+        }
+    }
+
+    private void processParallel(int mode, SecretKey dataKey, StreamHeader header, FileChannel source, long sourceOffset,
+                                 FileChannel destination, long destinationOffset, long plaintextLength) throws GeneralSecurityException, IOException {
+        ForkJoinPool pool = getPool();
+        SegmentTask.Job job = new SegmentTask.Job(mode, dataKey, header, source, sourceOffset,
+                destination, destinationOffset, plaintextLength, pool.getParallelism());
+        try {
+            pool.invoke(new SegmentTask(job, 0, job.getSegmentCount()));
+        } catch (SegmentTask.Failure failure) {
+            Throwable cause = failure.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            throw (IOException) cause;
+        }
+    }
+
+    /**
+     * Pool of the cpu-bound segment work, one worker per core
+     */
+    private synchronized ForkJoinPool getPool() {
+        if (mPool == null) {
+            mPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return mPool;
+    }
+
+    private long process(int mode, SecretKey dataKey, StreamHeader header,
+                         ReadableByteChannel source, WritableByteChannel destination) throws GeneralSecurityException, IOException {
+        int segmentSize = header.getSegmentSize();
+        int inputSize = mode == Cipher.ENCRYPT_MODE ? segmentSize : segmentSize + GCM_TAG_SIZE_BYTES;
+        int outputSize = mode == Cipher.ENCRYPT_MODE ? segmentSize + GCM_TAG_SIZE_BYTES : segmentSize;
+
+        ByteBuffer input = ByteBuffer.allocateDirect(inputSize);
+        ByteBuffer output = ByteBuffer.allocateDirect(outputSize);
+        byte[] nonce = new byte[GCM_IV_SIZE_BYTES];
+        System.arraycopy(header.getNoncePrefix(), 0, nonce, 0, StreamHeader.NONCE_PREFIX_SIZE);
+
+        // Android providers buffer GCM input until doFinal, so every segment is sealed on its own
+        // instead of feeding the whole stream through Cipher.update
+        Cipher cipher = Cipher.getInstance(DATA_TRANSFORMATION);
+        long processed = 0;
+        int counter = 0;
+        boolean last = false;
+        while (!last) {
+            input.clear();
+            last = !StreamHeader.fill(source, input);
+            input.flip();
+            if (mode == Cipher.DECRYPT_MODE && input.remaining() < GCM_TAG_SIZE_BYTES) {
+                throw new AEADBadTagException("Stream is truncated");
+            }
+
+            setSegmentNonce(nonce, counter++, last);
+            cipher.init(mode, dataKey, new GCMParameterSpec(GCM_TAG_SIZE_BITS, nonce));
+            output.clear();
+            cipher.doFinal(input, output);
+            output.flip();
+            processed += mode == Cipher.ENCRYPT_MODE ? input.limit() : output.limit();
+            while (output.hasRemaining()) {
+                destination.write(output);
+            }
+        }
+        return processed;
+    }
+
+    static void setSegmentNonce(byte[] nonce, int counter, boolean last) {
+        int offset = StreamHeader.NONCE_PREFIX_SIZE;
+        nonce[offset] = (byte) (counter >>> 24);
+        nonce[offset + 1] = (byte) (counter >>> 16);
+        nonce[offset + 2] = (byte) (counter >>> 8);
+        nonce[offset + 3] = (byte) counter;
+        nonce[offset + 4] = (byte) (last ? 1 : 0);
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.elegion.library.littlefinger.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Header of the streaming envelope format:
+ * <pre>
+ * magic "LFS" | version (1) | segment size (4) | wrap iv length (1) | wrap iv |
+ * wrapped key length (2) | wrapped key | nonce prefix (7)
+ * </pre>
+ * It is followed by segments of {@code segment size} plaintext bytes, each sealed with AES-GCM.
+ *
+ * @author Azret Magometov
+ */
+
+public final class StreamHeader {
+
+    private static final byte[] MAGIC = {'L', 'F', 'S'};
+    private static final byte VERSION = 1;
+
+    static final int NONCE_PREFIX_SIZE = 7;
+    private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final int mSegmentSize;
+    private final byte[] mWrapIv;
+    private final byte[] mWrappedKey;
+    private final byte[] mNoncePrefix;
+
+    StreamHeader(int segmentSize, byte[] wrapIv, byte[] wrappedKey, byte[] noncePrefix) {
+        mSegmentSize = segmentSize;
+        mWrapIv = wrapIv;
+        mWrappedKey = wrappedKey;
+        mNoncePrefix = noncePrefix;
+    }
+
+    @NonNull
+    static StreamHeader read(ReadableByteChannel source) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(MAGIC.length + 1 + 4 + 1);
+        readFully(source, fixed);
+        for (byte b : MAGIC) {
+            if (fixed.get() != b) {
+                throw new IOException("Input isn't valid. Are you trying to decode not encoded stream?");
+            }
+        }
+        byte version = fixed.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported stream version " + version);
+        }
+        int segmentSize = fixed.getInt();
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IOException("Invalid segment size " + segmentSize);
+        }
+        byte[] wrapIv = new byte[fixed.get() & 0xFF];
+        readFully(source, ByteBuffer.wrap(wrapIv));
+
+        ByteBuffer keyLength = ByteBuffer.allocate(2);
+        readFully(source, keyLength);
+        byte[] wrappedKey = new byte[keyLength.getShort() & 0xFFFF];
+        readFully(source, ByteBuffer.wrap(wrappedKey));
+
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        readFully(source, ByteBuffer.wrap(noncePrefix));
+        return new StreamHeader(segmentSize, wrapIv, wrappedKey, noncePrefix);
+    }
+
+    void write(WritableByteChannel destination) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 1 + 4 + 1 + mWrapIv.length + 2 + mWrappedKey.length + NONCE_PREFIX_SIZE);
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .putInt(mSegmentSize)
+                .put((byte) mWrapIv.length)
+                .put(mWrapIv)
+                .putShort((short) mWrappedKey.length)
+                .put(mWrappedKey)
+                .put(mNoncePrefix);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            destination.write(buffer);
+        }
+    }
+
+    /**
+     * Fills the buffer from the channel.
+     *
+     * @return false if the channel was exhausted before the buffer was full
+     */
+    static boolean fill(ReadableByteChannel source, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFully(ReadableByteChannel source, ByteBuffer buffer) throws IOException {
+        if (!fill(source, buffer)) {
+            throw new EOFException("Unexpected end of stream");
+        }
+        buffer.flip();
+    }
+
+    int getSegmentSize() {
+        return mSegmentSize;
+    }
+
+    byte[] getWrapIv() {
+        return mWrapIv;
+    }
+
+    byte[] getWrappedKey() {
+        return mWrappedKey;
+    }
+
+    byte[] getNoncePrefix() {
+        return mNoncePrefix;
+    }
+}
@@ -0,0 +1,68 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Authentication queued by {@link FingerprintManagerHelper}.
+ * Cancelling it ends only this request, an authentication shared with other requests goes on for them.
+ *
+ * @author Azret Magometov
+ */
+
+public final class AuthRequest {
+
+    public static final int PRIORITY_DEFAULT = 0;
+    /**
+     * E.g. an explicit unlock on a screen the user is looking at, it goes before the queued background requests
+     */
+    public static final int PRIORITY_HIGH = 10;
+
+    private final FingerprintManagerHelper mHelper;
+    private final Callback mCallback;
+    private final int mPriority;
+    private final Object mOwner;
+    private boolean mDone;
+
+    AuthRequest(@NonNull FingerprintManagerHelper helper, int priority, @Nullable Object owner, @NonNull Callback callback) {
+        mHelper = helper;
+        mPriority = priority;
+        mOwner = owner;
+        mCallback = callback;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    @Nullable
+    Object getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * The request receives an {@link State#ERROR} result canceled by user, unless it is already done
+     */
+    public void cancel() {
+        mHelper.cancel(this);
+    }
+
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * @return false if the request is already done
+     */
+    synchronized boolean finish() {
+        if (mDone) {
+            return false;
+        }
+        mDone = true;
+        return true;
+    }
+
+    void deliver(@NonNull AuthResult result) {
+        mCallback.onCompleted(result);
+    }
+}
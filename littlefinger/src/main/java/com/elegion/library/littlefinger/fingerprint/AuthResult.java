@@ -4,6 +4,12 @@ import android.annotation.TargetApi;
 import android.hardware.fingerprint.FingerprintManager;
 import android.os.Build;
 import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.UserNotAuthenticatedException;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import java.util.Collections;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 
@@ -19,6 +25,38 @@ public class AuthResult {
     private FingerprintManager.CryptoObject mCryptoObject = null;
     private Throwable mThrowable = null;
     private String mData;
+    private byte[] mBytes;
+    private Map<String, AuthResult> mItems;
+
+    private static final AuthResult NOT_SUPPORTED_RESULT = AuthResult.newBuilder()
+            .state(State.NOT_SUPPORTED)
+            .throwable(new IllegalStateException("Device does not support finger print"))
+            .build();
+
+    private static final AuthResult UNSECURED_RESULT = AuthResult.newBuilder()
+            .state(State.UNSECURED)
+            .throwable(new IllegalStateException("Device is not secured"))
+            .build();
+
+    private static final AuthResult NO_ENROLLED_FP_RESULT = AuthResult.newBuilder()
+            .state(State.NO_ENROLLED_FP)
+            .throwable(new IllegalStateException("There is no enrolled fingerprints on this device"))
+            .build();
+
+    private static final AuthResult READY_TO_USE_RESULT = AuthResult.newBuilder()
+            .state(State.READY_TO_USE)
+            .data("Touch the sensor")
+            .build();
+
+    private static final String FAILED_MESSAGE = "Can't recognize. User should touch sensor again";
+    private static final AuthResult FAILED_RESULT = AuthResult.newBuilder()
+            .state(State.FAIL)
+            .throwable(new SensorEventException(FAILED_MESSAGE))
+            .data(FAILED_MESSAGE)
+            .build();
+
+    private static final int HELP_RESULTS_MAX_SIZE = 16;
+    private static final SparseArray<AuthResult> HELP_RESULTS = new SparseArray<>();
 
     private AuthResult() {
     }
@@ -30,36 +68,29 @@ public class AuthResult {
         setCryptoObject(builder.mCryptoObject);
         setThrowable(builder.mThrowable);
         setData(builder.mData);
+        setBytes(builder.mBytes);
+        setItems(builder.mItems);
     }
 
+    /**
+     * Results of the sensor states are shared immutable instances, they can be compared by reference
+     */
     @NonNull
     public static AuthResult getNotSupportedResult() {
-        return AuthResult.newBuilder()
-                .state(State.NOT_SUPPORTED)
-                .throwable(new IllegalStateException("Device does not support finger print"))
-                .build();
+        return NOT_SUPPORTED_RESULT;
     }
 
     @NonNull
     public static AuthResult getUnsecuredResult() {
-        return AuthResult.newBuilder()
-                .state(State.UNSECURED)
-                .throwable(new IllegalStateException("Device is not secured"))
-                .build();
+        return UNSECURED_RESULT;
     }
 
     public static AuthResult getNoEnrolledFpResult() {
-        return AuthResult.newBuilder()
-                .state(State.NO_ENROLLED_FP)
-                .throwable(new IllegalStateException("There is no enrolled fingerprints on this device"))
-                .build();
+        return NO_ENROLLED_FP_RESULT;
     }
 
     public static AuthResult getReadyToUseResult() {
-        return AuthResult.newBuilder()
-                .state(State.READY_TO_USE)
-                .data("Touch the sensor")
-                .build();
+        return READY_TO_USE_RESULT;
     }
 
     public static Builder newBuilder() {
@@ -74,19 +105,32 @@ public class AuthResult {
                 .build();
     }
 
+    /**
+     * Help results are cached by code and message, a noisy scan repeats the same few of them.
+     * The message is available in {@link #getData()} too.
+     */
     public static AuthResult getHelpResult(int code, String message) {
-        return AuthResult.newBuilder()
-                .state(State.HELP)
-                .throwable(new IllegalStateException(message))
-                .errorCode(code)
-                .build();
+        synchronized (HELP_RESULTS) {
+            AuthResult cached = HELP_RESULTS.get(code);
+            if (cached != null && TextUtils.equals(cached.mData, message)) {
+                return cached;
+            }
+            AuthResult result = AuthResult.newBuilder()
+                    .state(State.HELP)
+                    .throwable(new SensorEventException(message))
+                    .data(message)
+                    .errorCode(code)
+                    .build();
+            if (HELP_RESULTS.size() >= HELP_RESULTS_MAX_SIZE) {
+                HELP_RESULTS.clear();
+            }
+            HELP_RESULTS.put(code, result);
+            return result;
+        }
     }
 
     public static AuthResult getFailedResult() {
-        return AuthResult.newBuilder()
-                .state(State.FAIL)
-                .throwable(new IllegalStateException("Can't recognize. User should touch sensor again"))
-                .build();
+        return FAILED_RESULT;
     }
 
     public static AuthResult getErrorResult(int code, String message, boolean canceledByUser) {
@@ -112,6 +156,41 @@ public class AuthResult {
                 .build();
     }
 
+    public static AuthResult getCryptoOperationResult(byte[] bytes) {
+        return AuthResult.newBuilder()
+                .state(State.SUCCESS)
+                .bytes(bytes)
+                .build();
+    }
+
+    /**
+     * Result of a batch operation, every item has its own result keyed by alias
+     */
+    public static AuthResult getBatchResult(Map<String, AuthResult> items) {
+        return AuthResult.newBuilder()
+                .state(State.SUCCESS)
+                .items(Collections.unmodifiableMap(items))
+                .build();
+    }
+
+    /**
+     * Result of a streaming operation, the output is already written to the destination
+     */
+    public static AuthResult getStreamOperationResult() {
+        return AuthResult.newBuilder()
+                .state(State.SUCCESS)
+                .build();
+    }
+
+    /**
+     * Successful result without data, e.g. a removal or a read of a missing value
+     */
+    public static AuthResult getEmptyResult() {
+        return AuthResult.newBuilder()
+                .state(State.SUCCESS)
+                .build();
+    }
+
     public State getState() {
         return mState;
     }
@@ -160,11 +239,52 @@ public class AuthResult {
         mData = data;
     }
 
+    /**
+     * Result of the binary crypto operations, {@link #getData()} is used for the text ones
+     */
+    public byte[] getBytes() {
+        return mBytes;
+    }
+
+    private void setBytes(byte[] bytes) {
+        mBytes = bytes;
+    }
+
+    /**
+     * Per-item results of the batch operations
+     */
+    public Map<String, AuthResult> getItems() {
+        return mItems;
+    }
+
+    private void setItems(Map<String, AuthResult> items) {
+        mItems = items;
+    }
+
     @TargetApi(Build.VERSION_CODES.M)
     public boolean isKeyInvalidated() {
         return mState == State.EXCEPTION && mThrowable instanceof KeyPermanentlyInvalidatedException;
     }
 
+    /**
+     * True if a time-bound key rejected the operation because its authentication validity window is over,
+     * for the batch results it is checked for every item
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    public boolean isAuthenticationExpired() {
+        if (mState == State.EXCEPTION && mThrowable instanceof UserNotAuthenticatedException) {
+            return true;
+        }
+        if (mItems != null) {
+            for (AuthResult item : mItems.values()) {
+                if (item.isAuthenticationExpired()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public static final class Builder {
         private State mState;
         private int mErrorCode;
@@ -172,6 +292,8 @@ public class AuthResult {
         private FingerprintManager.CryptoObject mCryptoObject;
         private Throwable mThrowable;
         private String mData;
+        private byte[] mBytes;
+        private Map<String, AuthResult> mItems;
 
         private Builder() {
         }
@@ -206,6 +328,16 @@ public class AuthResult {
             return this;
         }
 
+        public Builder bytes(byte[] mBytes) {
+            this.mBytes = mBytes;
+            return this;
+        }
+
+        public Builder items(Map<String, AuthResult> mItems) {
+            this.mItems = mItems;
+            return this;
+        }
+
         public AuthResult build() {
             return new AuthResult(this);
         }
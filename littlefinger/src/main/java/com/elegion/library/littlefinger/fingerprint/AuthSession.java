@@ -0,0 +1,42 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+import android.os.SystemClock;
+
+/**
+ * Tracks the authentication validity window of time-bound keys,
+ * so operations within it don't need to show the prompt again.
+ * It is only a hint: the keystore has the final word, and operations rejected by it invalidate the session.
+ *
+ * @author Azret Magometov
+ */
+
+public class AuthSession {
+
+    private static final long NOT_AUTHENTICATED = -1;
+
+    private final long mValidityMillis;
+    private long mAuthenticatedAt = NOT_AUTHENTICATED;
+
+    public AuthSession(int validitySeconds) {
+        mValidityMillis = validitySeconds * 1000L;
+    }
+
+    public synchronized void onAuthenticated() {
+        mAuthenticatedAt = SystemClock.elapsedRealtime();
+    }
+
+    public synchronized void invalidate() {
+        mAuthenticatedAt = NOT_AUTHENTICATED;
+    }
+
+    public synchronized boolean isActive() {
+        return getRemainingMillis() > 0;
+    }
+
+    public synchronized long getRemainingMillis() {
+        if (mAuthenticatedAt == NOT_AUTHENTICATED) {
+            return 0;
+        }
+        return Math.max(0, mAuthenticatedAt + mValidityMillis - SystemClock.elapsedRealtime());
+    }
+}
@@ -0,0 +1,42 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.CancellationSignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Fingerprint sensor and lock screen used by {@link FingerprintManagerHelper}.
+ * {@link FingerprintManagerAuthenticator} is used by default, {@link FakeBiometricAuthenticator} runs the library off-device.
+ *
+ * @author Azret Magometov
+ */
+public interface BiometricAuthenticator {
+
+    boolean isHardwareDetected();
+
+    boolean isKeyguardSecure();
+
+    boolean hasEnrolledFingerprints();
+
+    /**
+     * Same contract as {@link FingerprintManager#authenticate}: cancelling the signal ends the authentication
+     * with {@link FingerprintManager#FINGERPRINT_ERROR_CANCELED}, {@link Listener#onSucceeded} and
+     * {@link Listener#onError} are final.
+     */
+    void authenticate(@Nullable FingerprintManager.CryptoObject cryptoObject,
+                      @NonNull CancellationSignal cancellationSignal,
+                      @NonNull Listener listener);
+
+    interface Listener {
+
+        void onError(int errorCode, @Nullable CharSequence errorMessage);
+
+        void onHelp(int helpCode, @Nullable CharSequence helpMessage);
+
+        void onSucceeded(@Nullable FingerprintManager.CryptoObject cryptoObject);
+
+        void onFailed();
+    }
+}
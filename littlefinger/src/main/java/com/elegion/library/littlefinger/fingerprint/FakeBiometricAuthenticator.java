@@ -0,0 +1,177 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.CancellationSignal;
+
+import com.elegion.library.littlefinger.crypto.FakeKeyStoreBackend;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link BiometricAuthenticator} for running the library on a JVM. Every authentication is a series of simulated touches:
+ * the configured number of rejected ones, then the recognized one or the configured error.
+ * Results are delivered on a background thread after the touch latency.
+ * <p>
+ * Successful authentications are reported to the {@link FakeKeyStoreBackend}, so its keys become usable.
+ *
+ * @author Azret Magometov
+ */
+public class FakeBiometricAuthenticator implements BiometricAuthenticator {
+
+    private static final String CANCELED_MESSAGE = "Fingerprint operation canceled.";
+
+    private final FakeKeyStoreBackend mKeyStoreBackend;
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FakeBiometricAuthenticator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean mHardwareDetected = true;
+    private volatile boolean mKeyguardSecure = true;
+    private volatile boolean mHasEnrolledFingerprints = true;
+    private volatile long mTouchLatencyMillis;
+    private volatile int mFailedAttempts;
+    private volatile int mErrorCode;
+    private volatile String mErrorMessage;
+
+    /**
+     * @param keyStoreBackend backend to authorize the keys of, null if only the authentication flow is needed
+     */
+    public FakeBiometricAuthenticator(@Nullable FakeKeyStoreBackend keyStoreBackend) {
+        mKeyStoreBackend = keyStoreBackend;
+    }
+
+    public void setHardwareDetected(boolean hardwareDetected) {
+        mHardwareDetected = hardwareDetected;
+    }
+
+    public void setKeyguardSecure(boolean keyguardSecure) {
+        mKeyguardSecure = keyguardSecure;
+    }
+
+    public void setHasEnrolledFingerprints(boolean hasEnrolledFingerprints) {
+        mHasEnrolledFingerprints = hasEnrolledFingerprints;
+    }
+
+    /**
+     * Time between the start of the authentication and every touch
+     */
+    public void setTouchLatencyMillis(long touchLatencyMillis) {
+        mTouchLatencyMillis = touchLatencyMillis;
+    }
+
+    /**
+     * Count of rejected touches before the final result of every authentication
+     */
+    public void setFailedAttempts(int failedAttempts) {
+        mFailedAttempts = failedAttempts;
+    }
+
+    /**
+     * Makes authentications end with the error instead of success, e.g. {@link FingerprintManager#FINGERPRINT_ERROR_LOCKOUT}
+     */
+    public void setError(int errorCode, @Nullable String errorMessage) {
+        mErrorMessage = errorMessage;
+        mErrorCode = errorCode;
+    }
+
+    public void clearError() {
+        mErrorCode = 0;
+        mErrorMessage = null;
+    }
+
+    @Override
+    public boolean isHardwareDetected() {
+        return mHardwareDetected;
+    }
+
+    @Override
+    public boolean isKeyguardSecure() {
+        return mKeyguardSecure;
+    }
+
+    @Override
+    public boolean hasEnrolledFingerprints() {
+        return mHasEnrolledFingerprints;
+    }
+
+    @Override
+    public void authenticate(@Nullable FingerprintManager.CryptoObject cryptoObject,
+                             @NonNull CancellationSignal cancellationSignal,
+                             @NonNull Listener listener) {
+        Authentication authentication = new Authentication(cryptoObject, listener);
+        cancellationSignal.setOnCancelListener(authentication::cancel);
+        authentication.scheduleTouch();
+    }
+
+    private final class Authentication {
+        private final FingerprintManager.CryptoObject mCryptoObject;
+        private final Listener mListener;
+        private final int mErrorCode;
+        private final String mErrorMessage;
+        private int mRemainingFailures;
+        private boolean mFinished;
+        private ScheduledFuture<?> mPendingTouch;
+
+        private Authentication(FingerprintManager.CryptoObject cryptoObject, Listener listener) {
+            mCryptoObject = cryptoObject;
+            mListener = listener;
+            mErrorCode = FakeBiometricAuthenticator.this.mErrorCode;
+            mErrorMessage = FakeBiometricAuthenticator.this.mErrorMessage;
+            mRemainingFailures = mFailedAttempts;
+        }
+
+        private synchronized void scheduleTouch() {
+            if (!mFinished) {
+                mPendingTouch = mScheduler.schedule(this::touch, mTouchLatencyMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void touch() {
+            boolean failed;
+            synchronized (this) {
+                if (mFinished) {
+                    return;
+                }
+                failed = mRemainingFailures > 0;
+                if (failed) {
+                    mRemainingFailures--;
+                } else {
+                    mFinished = true;
+                }
+            }
+
+            if (failed) {
+                mListener.onFailed();
+                scheduleTouch();
+            } else if (mErrorCode != 0) {
+                mListener.onError(mErrorCode, mErrorMessage);
+            } else {
+                if (mKeyStoreBackend != null) {
+                    mKeyStoreBackend.onAuthenticated(mCryptoObject);
+                }
+                mListener.onSucceeded(mCryptoObject);
+            }
+        }
+
+        private void cancel() {
+            synchronized (this) {
+                if (mFinished) {
+                    return;
+                }
+                mFinished = true;
+                if (mPendingTouch != null) {
+                    mPendingTouch.cancel(false);
+                }
+            }
+            mScheduler.execute(() -> mListener.onError(FingerprintManager.FINGERPRINT_ERROR_CANCELED, CANCELED_MESSAGE));
+        }
+    }
+}
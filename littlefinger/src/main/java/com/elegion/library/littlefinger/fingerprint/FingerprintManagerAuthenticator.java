@@ -0,0 +1,81 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+import android.annotation.TargetApi;
+import android.app.KeyguardManager;
+import android.content.Context;
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+import android.os.CancellationSignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link BiometricAuthenticator} of the device
+ *
+ * @author Azret Magometov
+ */
+public class FingerprintManagerAuthenticator implements BiometricAuthenticator {
+
+    private final FingerprintManager mFingerprintManager;
+    private final KeyguardManager mKeyguardManager;
+
+    public FingerprintManagerAuthenticator(@NonNull Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            mFingerprintManager = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
+        } else {
+            mFingerprintManager = null;
+        }
+        mKeyguardManager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    @Override
+    public boolean isHardwareDetected() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && mFingerprintManager != null
+                && mFingerprintManager.isHardwareDetected();
+    }
+
+    @Override
+    public boolean isKeyguardSecure() {
+        return mKeyguardManager != null && mKeyguardManager.isKeyguardSecure();
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    @Override
+    public boolean hasEnrolledFingerprints() {
+        return isHardwareDetected() && mFingerprintManager.hasEnrolledFingerprints();
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    @Override
+    public void authenticate(@Nullable FingerprintManager.CryptoObject cryptoObject,
+                             @NonNull CancellationSignal cancellationSignal,
+                             @NonNull final Listener listener) {
+        mFingerprintManager.authenticate(cryptoObject, cancellationSignal, 0,
+                new FingerprintManager.AuthenticationCallback() {
+
+                    @Override
+                    public void onAuthenticationError(int errorCode, CharSequence errString) {
+                        listener.onError(errorCode, errString);
+                    }
+
+                    @Override
+                    public void onAuthenticationHelp(int helpCode, CharSequence helpString) {
+                        listener.onHelp(helpCode, helpString);
+                    }
+
+                    @Override
+                    public void onAuthenticationSucceeded(FingerprintManager.AuthenticationResult authenticationResult) {
+                        listener.onSucceeded(authenticationResult.getCryptoObject());
+                    }
+
+                    @Override
+                    public void onAuthenticationFailed() {
+                        listener.onFailed();
+                    }
+                },
+                null);
+    }
+}
@@ -1,112 +1,478 @@
 package com.elegion.library.littlefinger.fingerprint;
 
-import android.annotation.TargetApi;
-import android.app.KeyguardManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.hardware.fingerprint.FingerprintManager;
 import android.os.Build;
 import android.os.CancellationSignal;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 /**
+ * Scheduler of the sensor shared by the whole app: one queue and one sensor state snapshot per application context,
+ * or per authenticator when a custom one is passed. Every {@link #getInstance(Context)} is paired with {@link #release()}.
+ *
  * @author Azret Magometov
  */
 
 public class FingerprintManagerHelper {
 
-    private CancellationSignal mCancellationSignal;
-    private FingerprintManager mFingerprintManager;
-    private KeyguardManager mKeyguardManager;
-    private boolean mCanceledByUser = false;
+    private static final Map<Object, FingerprintManagerHelper> INSTANCES = new HashMap<>();
+
+    /**
+     * Sensor state is queried with several binder calls, the snapshot is reused for this long
+     */
+    private static final long SENSOR_STATE_TTL_MILLIS = 1000;
+    private static final long NOT_QUERIED = -1;
+
+    private static final String CANCELED_MESSAGE = "Authentication was canceled";
+
+    private final BiometricAuthenticator mAuthenticator;
+
+    private final Object mQueueLock = new Object();
+    private final PriorityQueue<AuthGroup> mPendingGroups = new PriorityQueue<>(4, (first, second) ->
+            first.mPriority != second.mPriority ?
+                    Integer.compare(second.mPriority, first.mPriority) :
+                    Long.compare(first.mSequence, second.mSequence));
+    private AuthGroup mActiveGroup;
+    private long mNextSequence;
+
+    private final Context mContext;
+    private AuthResult mSensorState;
+    private long mSensorStateQueriedAt = NOT_QUERIED;
+    private final List<SensorStateListener> mSensorStateListeners = new CopyOnWriteArrayList<>();
+    private BroadcastReceiver mSensorStateReceiver;
+
+    private final Object mRegistryKey;
+    private int mReferenceCount;
 
     public static FingerprintManagerHelper getInstance(Context context) {
-        return new FingerprintManagerHelper(context);
+        Context applicationContext = getApplicationContext(context);
+        return acquire(applicationContext, applicationContext, null);
+    }
+
+    /**
+     * Helper of the authenticator, e.g. of a fake one in tests, it is shared by the callers passing the same authenticator
+     */
+    public static FingerprintManagerHelper getInstance(Context context, @NonNull BiometricAuthenticator authenticator) {
+        return acquire(authenticator, getApplicationContext(context), authenticator);
+    }
+
+    private static FingerprintManagerHelper acquire(@NonNull Object key, @NonNull Context context,
+                                                    @Nullable BiometricAuthenticator authenticator) {
+        synchronized (INSTANCES) {
+            FingerprintManagerHelper helper = INSTANCES.get(key);
+            if (helper == null) {
+                helper = new FingerprintManagerHelper(key, context,
+                        authenticator != null ? authenticator : new FingerprintManagerAuthenticator(context));
+                INSTANCES.put(key, helper);
+            }
+            helper.mReferenceCount++;
+            return helper;
+        }
+    }
+
+    private static Context getApplicationContext(@NonNull Context context) {
+        return context.getApplicationContext() != null ? context.getApplicationContext() : context;
     }
 
-    private FingerprintManagerHelper(@NonNull Context context) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            mFingerprintManager = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
-        } else {
-            mFingerprintManager = null;
+    private FingerprintManagerHelper(@NonNull Object registryKey, @NonNull Context context,
+                                     @NonNull BiometricAuthenticator authenticator) {
+        mRegistryKey = registryKey;
+        mContext = context;
+        mAuthenticator = authenticator;
+    }
+
+    /**
+     * Gives back the helper taken with {@link #getInstance(Context)}. The last release cancels the queued authentications,
+     * drops the sensor state listeners and unregisters the receiver, the next {@link #getInstance(Context)} makes a new helper.
+     */
+    public void release() {
+        synchronized (INSTANCES) {
+            if (mReferenceCount == 0 || --mReferenceCount > 0) {
+                return;
+            }
+            INSTANCES.remove(mRegistryKey);
+        }
+        cancelAuth(null);
+        mSensorStateListeners.clear();
+        synchronized (this) {
+            unregisterReceiver();
         }
-        mKeyguardManager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
     }
 
     public boolean isFingerprintSupported() {
-        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
-                && mFingerprintManager != null
-                && mFingerprintManager.isHardwareDetected();
+        return getSensorState() != AuthResult.getNotSupportedResult();
     }
 
-    @TargetApi(Build.VERSION_CODES.M)
+    /**
+     * @return snapshot of the sensor state, it is queried again when it is older than {@link #SENSOR_STATE_TTL_MILLIS}
+     * or was invalidated
+     */
+    @NonNull
     public AuthResult getSensorState() {
-        if (!isFingerprintSupported()) {
+        synchronized (this) {
+            if (mSensorStateQueriedAt != NOT_QUERIED
+                    && SystemClock.elapsedRealtime() - mSensorStateQueriedAt < SENSOR_STATE_TTL_MILLIS) {
+                return mSensorState;
+            }
+        }
+        return refreshSensorState();
+    }
+
+    /**
+     * Queries the sensor state right away and notifies the listeners if it has changed
+     */
+    @NonNull
+    public AuthResult refreshSensorState() {
+        AuthResult state = querySensorState();
+        AuthResult previous;
+        synchronized (this) {
+            previous = mSensorState;
+            mSensorState = state;
+            mSensorStateQueriedAt = SystemClock.elapsedRealtime();
+        }
+        if (previous != null && previous != state) {
+            for (SensorStateListener listener : mSensorStateListeners) {
+                listener.onSensorStateChanged(state);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Makes the next {@link #getSensorState()} query the sensor, e.g. when the app returns from the settings
+     */
+    public synchronized void invalidateSensorState() {
+        mSensorStateQueriedAt = NOT_QUERIED;
+    }
+
+    /**
+     * The state is also refreshed when the device is unlocked or the screen is turned on while there are listeners,
+     * one receiver serves the listeners of all owners of the helper
+     */
+    public void addSensorStateListener(@NonNull SensorStateListener listener) {
+        mSensorStateListeners.add(listener);
+        synchronized (this) {
+            if (mSensorStateReceiver == null) {
+                mSensorStateReceiver = new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        refreshSensorState();
+                    }
+                };
+                IntentFilter filter = new IntentFilter(Intent.ACTION_USER_PRESENT);
+                filter.addAction(Intent.ACTION_SCREEN_ON);
+                mContext.registerReceiver(mSensorStateReceiver, filter);
+            }
+        }
+    }
+
+    public void removeSensorStateListener(@NonNull SensorStateListener listener) {
+        mSensorStateListeners.remove(listener);
+        synchronized (this) {
+            if (mSensorStateListeners.isEmpty()) {
+                unregisterReceiver();
+            }
+        }
+    }
+
+    private void unregisterReceiver() {
+        if (mSensorStateReceiver != null) {
+            mContext.unregisterReceiver(mSensorStateReceiver);
+            mSensorStateReceiver = null;
+        }
+    }
+
+    private AuthResult querySensorState() {
+        if (!mAuthenticator.isHardwareDetected()) {
             return AuthResult.getNotSupportedResult();
         }
 
-        if (mKeyguardManager == null || !mKeyguardManager.isKeyguardSecure()) {
+        if (!mAuthenticator.isKeyguardSecure()) {
             return AuthResult.getUnsecuredResult();
         }
 
-        if (!mFingerprintManager.hasEnrolledFingerprints()) {
+        if (!mAuthenticator.hasEnrolledFingerprints()) {
             return AuthResult.getNoEnrolledFpResult();
         }
         return AuthResult.getReadyToUseResult();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.M)
-    public void startAuth(@Nullable FingerprintManager.CryptoObject cryptoObject, final @NonNull Callback callback) {
+    @NonNull
+    public AuthRequest startAuth(@Nullable FingerprintManager.CryptoObject cryptoObject, final @NonNull Callback callback) {
+        return startAuth(cryptoObject, null, AuthRequest.PRIORITY_DEFAULT, null, callback);
+    }
 
-        AuthResult sensorState = getSensorState();
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    @NonNull
+    public AuthRequest startAuth(@Nullable FingerprintManager.CryptoObject cryptoObject, @Nullable Object coalescingKey,
+                                 int priority, final @NonNull Callback callback) {
+        return startAuth(cryptoObject, coalescingKey, priority, null, callback);
+    }
 
-        if (!sensorState.getState().equals(State.READY_TO_USE)) {
-            callback.onCompleted(AuthResult.getExceptionResult(new IllegalStateException("Sensor isn't ready to use. Check sensor state")));
-            return;
+    /**
+     * Queues the authentication, the sensor is used by one authentication at a time.
+     * Pending authentications are started by priority, then in order, the running one isn't preempted.
+     * <p>
+     * Requests with equal coalescing keys are served by one authentication: the crypto object of the first of them
+     * is authenticated and every result is delivered to all of them. A key can only be shared by requests
+     * that are satisfied by the same result, e.g. by the ones without a crypto object.
+     *
+     * @param coalescingKey null if the request needs its own authentication
+     * @param owner         requests of the owner are cancelled with {@link #cancelAuth(Object, CancelCallback)}
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    @NonNull
+    public AuthRequest startAuth(@Nullable FingerprintManager.CryptoObject cryptoObject, @Nullable Object coalescingKey,
+                                 int priority, @Nullable Object owner, final @NonNull Callback callback) {
+        AuthRequest request = new AuthRequest(this, priority, owner, callback);
+        synchronized (mQueueLock) {
+            AuthGroup group = findGroup(coalescingKey);
+            if (group == null) {
+                group = new AuthGroup(cryptoObject, coalescingKey, priority, mNextSequence++);
+                group.mRequests.add(request);
+                mPendingGroups.add(group);
+            } else {
+                group.mRequests.add(request);
+                if (group != mActiveGroup && priority > group.mPriority) {
+                    mPendingGroups.remove(group);
+                    group.mPriority = priority;
+                    mPendingGroups.add(group);
+                }
+            }
         }
+        startNext();
+        return request;
+    }
 
-        mCancellationSignal = new CancellationSignal();
-        mCanceledByUser = false;
+    /**
+     * Cancels all running and pending authentications, including the ones of other owners
+     */
+    public void cancelAuth(@Nullable CancelCallback callback) {
+        cancelAuth(null, callback);
+    }
 
-        mFingerprintManager.authenticate(cryptoObject, mCancellationSignal, 0,
-                new FingerprintManager.AuthenticationCallback() {
+    /**
+     * Cancels the running and pending authentications of the owner, a shared authentication goes on for other owners
+     *
+     * @param owner null to cancel all of them
+     */
+    public void cancelAuth(@Nullable Object owner, @Nullable CancelCallback callback) {
+        List<AuthRequest> requests = new ArrayList<>();
+        synchronized (mQueueLock) {
+            if (mActiveGroup != null) {
+                addRequests(mActiveGroup, owner, requests);
+            }
+            for (AuthGroup group : mPendingGroups) {
+                addRequests(group, owner, requests);
+            }
+        }
+        for (AuthRequest request : requests) {
+            cancel(request);
+        }
+        if (!requests.isEmpty() && callback != null) {
+            callback.onCancel();
+        }
+    }
 
-                    @Override
-                    public void onAuthenticationError(int errorCode, CharSequence errString) {
-                        mCancellationSignal = null;
-                        callback.onCompleted(AuthResult.getErrorResult(errorCode, (String) errString, mCanceledByUser));
-                    }
+    void cancel(AuthRequest request) {
+        CancellationSignal signal = null;
+        synchronized (mQueueLock) {
+            AuthGroup group = findGroupOf(request);
+            if (group == null) {
+                return;
+            }
+            group.mRequests.remove(request);
+            if (group.mRequests.isEmpty()) {
+                if (group == mActiveGroup) {
+                    group.mCanceled = true;
+                    signal = group.mCancellationSignal;
+                } else {
+                    mPendingGroups.remove(group);
+                }
+            }
+        }
+        if (request.finish()) {
+            request.deliver(AuthResult.getErrorResult(FingerprintManager.FINGERPRINT_ERROR_CANCELED, CANCELED_MESSAGE, true));
+        }
+        if (signal != null) {
+            signal.cancel();
+        }
+    }
 
-                    @Override
-                    public void onAuthenticationHelp(int helpCode, CharSequence helpString) {
-                        callback.onCompleted(AuthResult.getHelpResult(helpCode, (String) helpString));
-                    }
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void startNext() {
+        while (true) {
+            AuthGroup group;
+            synchronized (mQueueLock) {
+                if (mActiveGroup != null || mPendingGroups.isEmpty()) {
+                    return;
+                }
+                group = mPendingGroups.poll();
+                group.mCancellationSignal = new CancellationSignal();
+                mActiveGroup = group;
+            }
 
-                    @Override
-                    public void onAuthenticationSucceeded(FingerprintManager.AuthenticationResult authenticationResult) {
-                        mCancellationSignal = null;
-                        callback.onCompleted(AuthResult.getRecognizedResult(authenticationResult.getCryptoObject()));
-                    }
+            AuthResult sensorState = getSensorState();
+            if (!sensorState.getState().equals(State.READY_TO_USE)) {
+                finish(group, AuthResult.getExceptionResult(new IllegalStateException("Sensor isn't ready to use. Check sensor state")));
+                continue;
+            }
 
-                    @Override
-                    public void onAuthenticationFailed() {
-                        callback.onCompleted(AuthResult.getFailedResult());
-                    }
-                },
-                null);
+            mAuthenticator.authenticate(group.mCryptoObject, group.mCancellationSignal, new GroupListener(group));
+            // FingerprintManager ignores a signal canceled before the call, there won't be a callback to start the next one
+            if (group.mCancellationSignal.isCanceled()) {
+                finish(group, null);
+                continue;
+            }
+            return;
+        }
+    }
 
+    /**
+     * Delivers the final result to the requests of the group and frees the sensor for the next one.
+     * The group is finished once, e.g. the error after a cancellation may come after the next group has started.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void finish(AuthGroup group, @Nullable AuthResult result) {
+        List<AuthRequest> requests;
+        synchronized (mQueueLock) {
+            if (group.mFinished) {
+                return;
+            }
+            group.mFinished = true;
+            requests = new ArrayList<>(group.mRequests);
+            group.mRequests.clear();
+            if (mActiveGroup == group) {
+                mActiveGroup = null;
+            }
+        }
+        if (result != null) {
+            for (AuthRequest request : requests) {
+                if (request.finish()) {
+                    request.deliver(result);
+                }
+            }
+        }
+        startNext();
     }
 
-    public void cancelAuth(@Nullable CancelCallback callback) {
-        if (mCancellationSignal != null && !mCancellationSignal.isCanceled()) {
-            mCanceledByUser = true;
-            mCancellationSignal.cancel();
-            if (callback != null) {
-                callback.onCancel();
+    private void deliver(AuthGroup group, AuthResult result) {
+        List<AuthRequest> requests;
+        synchronized (mQueueLock) {
+            if (group.mFinished) {
+                return;
+            }
+            requests = new ArrayList<>(group.mRequests);
+        }
+        for (AuthRequest request : requests) {
+            if (!request.isDone()) {
+                request.deliver(result);
+            }
+        }
+    }
+
+    private static void addRequests(AuthGroup group, @Nullable Object owner, List<AuthRequest> requests) {
+        for (AuthRequest request : group.mRequests) {
+            if (owner == null || request.getOwner() == owner) {
+                requests.add(request);
+            }
+        }
+    }
+
+    @Nullable
+    private AuthGroup findGroup(@Nullable Object coalescingKey) {
+        if (coalescingKey == null) {
+            return null;
+        }
+        if (mActiveGroup != null && !mActiveGroup.mCanceled && coalescingKey.equals(mActiveGroup.mCoalescingKey)) {
+            return mActiveGroup;
+        }
+        for (AuthGroup group : mPendingGroups) {
+            if (coalescingKey.equals(group.mCoalescingKey)) {
+                return group;
             }
         }
+        return null;
+    }
+
+    @Nullable
+    private AuthGroup findGroupOf(AuthRequest request) {
+        if (mActiveGroup != null && mActiveGroup.mRequests.contains(request)) {
+            return mActiveGroup;
+        }
+        for (AuthGroup group : mPendingGroups) {
+            if (group.mRequests.contains(request)) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private final class GroupListener implements BiometricAuthenticator.Listener {
+        private final AuthGroup mGroup;
+
+        private GroupListener(AuthGroup group) {
+            mGroup = group;
+        }
+
+        @Override
+        public void onError(int errorCode, CharSequence errorMessage) {
+            // lockout, removed fingerprints and the like are reported as errors
+            invalidateSensorState();
+            finish(mGroup, AuthResult.getErrorResult(errorCode, errorMessage == null ? null : errorMessage.toString(), mGroup.mCanceled));
+        }
+
+        @Override
+        public void onHelp(int helpCode, CharSequence helpMessage) {
+            deliver(mGroup, AuthResult.getHelpResult(helpCode, helpMessage == null ? null : helpMessage.toString()));
+        }
+
+        @Override
+        public void onSucceeded(FingerprintManager.CryptoObject cryptoObject) {
+            finish(mGroup, AuthResult.getRecognizedResult(cryptoObject));
+        }
+
+        @Override
+        public void onFailed() {
+            deliver(mGroup, AuthResult.getFailedResult());
+        }
+    }
+
+    /**
+     * Requests served by one authentication
+     */
+    private static final class AuthGroup {
+        private final FingerprintManager.CryptoObject mCryptoObject;
+        private final Object mCoalescingKey;
+        private final long mSequence;
+        private final List<AuthRequest> mRequests = new ArrayList<>();
+        private int mPriority;
+        private CancellationSignal mCancellationSignal;
+        private volatile boolean mCanceled;
+        private boolean mFinished;
+
+        private AuthGroup(FingerprintManager.CryptoObject cryptoObject, Object coalescingKey, int priority, long sequence) {
+            mCryptoObject = cryptoObject;
+            mCoalescingKey = coalescingKey;
+            mPriority = priority;
+            mSequence = sequence;
+        }
     }
 
 }
@@ -0,0 +1,22 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+/**
+ * Carries the message of a transient sensor event (help or not recognized touch).
+ * These events are frequent and expected, so the stack trace isn't captured.
+ *
+ * @author Azret Magometov
+ */
+
+final class SensorEventException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    SensorEventException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
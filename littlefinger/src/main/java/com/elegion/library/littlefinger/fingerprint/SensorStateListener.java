@@ -0,0 +1,14 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+import androidx.annotation.NonNull;
+
+/**
+ * @author Azret Magometov
+ */
+public interface SensorStateListener {
+
+    /**
+     * @param sensorState one of the shared sensor state results, see {@link AuthResult#getReadyToUseResult()}
+     */
+    void onSensorStateChanged(@NonNull AuthResult sensorState);
+}
@@ -0,0 +1,14 @@
+package com.elegion.library.littlefinger.metrics;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives the trace of every finished {@link com.elegion.library.littlefinger.LittleFinger} operation.
+ * It is called in the thread that produced the final result, so it should only hand the trace over.
+ *
+ * @author Azret Magometov
+ */
+public interface MetricsListener {
+
+    void onOperationCompleted(@NonNull OperationTrace trace);
+}
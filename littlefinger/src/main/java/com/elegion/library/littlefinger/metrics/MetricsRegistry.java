@@ -0,0 +1,115 @@
+package com.elegion.library.littlefinger.metrics;
+
+import com.elegion.library.littlefinger.fingerprint.State;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link MetricsListener} summing up the traces, to be polled and exported to telemetry.
+ * Counters only grow until {@link #reset()}.
+ *
+ * @author Azret Magometov
+ */
+public class MetricsRegistry implements MetricsListener {
+
+    private static final int PHASE_COUNT = Phase.values().length;
+
+    private final AtomicLong mOperationCount = new AtomicLong();
+    private final AtomicLong mHelpCount = new AtomicLong();
+    private final AtomicLong mFailCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+    private final AtomicLong mExceptionCount = new AtomicLong();
+    private final AtomicLong mInvalidatedKeyCount = new AtomicLong();
+    private final AtomicLongArray mPhaseNanos = new AtomicLongArray(PHASE_COUNT);
+    private final AtomicLongArray mPhaseCounts = new AtomicLongArray(PHASE_COUNT);
+    private final AtomicLongArray mPhaseMaxNanos = new AtomicLongArray(PHASE_COUNT);
+
+    @Override
+    public void onOperationCompleted(@NonNull OperationTrace trace) {
+        mOperationCount.incrementAndGet();
+        mHelpCount.addAndGet(trace.getHelpCount());
+        mFailCount.addAndGet(trace.getFailCount());
+        mInvalidatedKeyCount.addAndGet(trace.getInvalidatedKeyCount());
+        if (trace.getState() == State.ERROR) {
+            mErrorCount.incrementAndGet();
+        } else if (trace.getState() == State.EXCEPTION) {
+            mExceptionCount.incrementAndGet();
+        }
+        for (Phase phase : Phase.values()) {
+            int count = trace.getPhaseCount(phase);
+            if (count == 0) {
+                continue;
+            }
+            long nanos = trace.getPhaseNanos(phase);
+            int index = phase.ordinal();
+            mPhaseNanos.addAndGet(index, nanos);
+            mPhaseCounts.addAndGet(index, count);
+            long max;
+            do {
+                max = mPhaseMaxNanos.get(index);
+            } while (nanos > max && !mPhaseMaxNanos.compareAndSet(index, max, nanos));
+        }
+    }
+
+    public long getOperationCount() {
+        return mOperationCount.get();
+    }
+
+    public long getHelpCount() {
+        return mHelpCount.get();
+    }
+
+    public long getFailCount() {
+        return mFailCount.get();
+    }
+
+    /**
+     * @return count of operations ended with {@link State#ERROR}: lockout, cancellation, sensor errors
+     */
+    public long getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    public long getExceptionCount() {
+        return mExceptionCount.get();
+    }
+
+    public long getInvalidatedKeyCount() {
+        return mInvalidatedKeyCount.get();
+    }
+
+    public long getPhaseNanos(@NonNull Phase phase) {
+        return mPhaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * @return count of spans, an operation may have several spans of a phase
+     */
+    public long getPhaseCount(@NonNull Phase phase) {
+        return mPhaseCounts.get(phase.ordinal());
+    }
+
+    /**
+     * @return the longest time of the phase in one operation
+     */
+    public long getPhaseMaxNanos(@NonNull Phase phase) {
+        return mPhaseMaxNanos.get(phase.ordinal());
+    }
+
+    public void reset() {
+        mOperationCount.set(0);
+        mHelpCount.set(0);
+        mFailCount.set(0);
+        mErrorCount.set(0);
+        mExceptionCount.set(0);
+        mInvalidatedKeyCount.set(0);
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mPhaseNanos.set(i, 0);
+            mPhaseCounts.set(i, 0);
+            mPhaseMaxNanos.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.elegion.library.littlefinger.metrics;
+
+import com.elegion.library.littlefinger.crypto.CryptoAlgorithm;
+import com.elegion.library.littlefinger.fingerprint.AuthResult;
+import com.elegion.library.littlefinger.fingerprint.State;
+
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Timings and events of one operation. Time of a phase is the sum of all its spans,
+ * e.g. an operation that generated the key has two {@link Phase#KEY_LOOKUP} spans.
+ *
+ * @author Azret Magometov
+ */
+public final class OperationTrace {
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String mOperation;
+    private final CryptoAlgorithm mAlgorithm;
+    private final long mStartNanos;
+    private final long[] mPhaseNanos = new long[PHASES.length];
+    private final int[] mPhaseCounts = new int[PHASES.length];
+    private long mTotalNanos;
+    private int mHelpCount;
+    private int mFailCount;
+    private int mInvalidatedKeyCount;
+    private State mState;
+
+    OperationTrace(@NonNull String operation, @Nullable CryptoAlgorithm algorithm) {
+        mOperation = operation;
+        mAlgorithm = algorithm;
+        mStartNanos = System.nanoTime();
+    }
+
+    synchronized void addSpan(Phase phase, long durationNanos) {
+        mPhaseNanos[phase.ordinal()] += durationNanos;
+        mPhaseCounts[phase.ordinal()]++;
+    }
+
+    /**
+     * @return true if the result is final and the trace is complete now
+     */
+    synchronized boolean onResult(AuthResult result) {
+        if (mState != null) {
+            return false;
+        }
+        State state = result.getState();
+        if (state == State.HELP) {
+            mHelpCount++;
+            return false;
+        }
+        if (state == State.FAIL) {
+            mFailCount++;
+            return false;
+        }
+        mState = state;
+        mTotalNanos = System.nanoTime() - mStartNanos;
+        if (result.isKeyInvalidated()) {
+            mInvalidatedKeyCount++;
+        }
+        Map<String, AuthResult> items = result.getItems();
+        if (items != null) {
+            for (AuthResult item : items.values()) {
+                if (item.isKeyInvalidated()) {
+                    mInvalidatedKeyCount++;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return name of the {@link com.elegion.library.littlefinger.LittleFinger} method, e.g. "decode"
+     */
+    @NonNull
+    public String getOperation() {
+        return mOperation;
+    }
+
+    /**
+     * @return null for the operations without a key
+     */
+    @Nullable
+    public CryptoAlgorithm getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    /**
+     * @return state of the final result
+     */
+    public synchronized State getState() {
+        return mState;
+    }
+
+    public synchronized long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public synchronized long getPhaseNanos(@NonNull Phase phase) {
+        return mPhaseNanos[phase.ordinal()];
+    }
+
+    public synchronized int getPhaseCount(@NonNull Phase phase) {
+        return mPhaseCounts[phase.ordinal()];
+    }
+
+    public synchronized int getHelpCount() {
+        return mHelpCount;
+    }
+
+    public synchronized int getFailCount() {
+        return mFailCount;
+    }
+
+    /**
+     * @return count of keys found permanently invalidated, batch operations may have several
+     */
+    public synchronized int getInvalidatedKeyCount() {
+        return mInvalidatedKeyCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("OperationTrace{")
+                .append(mOperation);
+        if (mAlgorithm != null) {
+            builder.append(' ').append(mAlgorithm);
+        }
+        builder.append(", state=").append(mState)
+                .append(", totalMs=").append(mTotalNanos / 1000000);
+        for (Phase phase : PHASES) {
+            if (mPhaseCounts[phase.ordinal()] > 0) {
+                builder.append(", ").append(phase).append("Ms=").append(mPhaseNanos[phase.ordinal()] / 1000000);
+            }
+        }
+        return builder.append(", help=").append(mHelpCount)
+                .append(", fail=").append(mFailCount)
+                .append('}')
+                .toString();
+    }
+}
@@ -0,0 +1,41 @@
+package com.elegion.library.littlefinger.metrics;
+
+/**
+ * Steps of an operation measured by {@link OperationTrace}
+ *
+ * @author Azret Magometov
+ */
+public enum Phase {
+
+    /**
+     * Checking the sensor, lock screen and enrolled fingerprints, binder calls when the cached state is stale
+     */
+    SENSOR_CHECK,
+
+    /**
+     * Keystore lookups that missed the key handle cache
+     */
+    KEY_LOOKUP,
+
+    KEY_GENERATION,
+
+    /**
+     * Getting the cipher and initializing it with the keystore key
+     */
+    CIPHER_INIT,
+
+    /**
+     * From the start of the authentication to its final result, it is mostly the user's time
+     */
+    WAIT_FOR_TOUCH,
+
+    /**
+     * Encryption and decryption of the payload, including the keystore doFinal
+     */
+    CRYPTO,
+
+    /**
+     * Base64 conversion of the text input and output
+     */
+    ENCODING
+}
@@ -0,0 +1,93 @@
+package com.elegion.library.littlefinger.metrics;
+
+import com.elegion.library.littlefinger.crypto.CryptoAlgorithm;
+import com.elegion.library.littlefinger.fingerprint.AuthResult;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Collects spans into the trace of the operation running in the current thread. Used by the library.
+ * <p>
+ * Until a {@link MetricsListener} is set on any {@link com.elegion.library.littlefinger.LittleFinger},
+ * every call costs a read of a volatile flag, no clock or thread local is touched.
+ *
+ * @author Azret Magometov
+ */
+public final class Tracer {
+
+    private static final long NOT_STARTED = 0;
+
+    private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<>();
+    private static volatile boolean sEnabled;
+
+    private Tracer() {
+    }
+
+    public static void enable() {
+        sEnabled = true;
+    }
+
+    @NonNull
+    public static OperationTrace newTrace(@NonNull String operation, @Nullable CryptoAlgorithm algorithm) {
+        return new OperationTrace(operation, algorithm);
+    }
+
+    /**
+     * @return true if the result is final, the trace should be reported then
+     */
+    public static boolean onResult(@NonNull OperationTrace trace, @NonNull AuthResult result) {
+        return trace.onResult(result);
+    }
+
+    /**
+     * @return trace the current thread works for, null if there is none
+     */
+    @Nullable
+    public static OperationTrace current() {
+        return sEnabled ? CURRENT.get() : null;
+    }
+
+    /**
+     * Runs the work with the trace attached to the current thread
+     */
+    public static void run(@Nullable OperationTrace trace, @NonNull Runnable work) {
+        if (trace == null) {
+            work.run();
+            return;
+        }
+        OperationTrace previous = CURRENT.get();
+        CURRENT.set(trace);
+        try {
+            work.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @return start of the span, pass it to {@link #end(Phase, long)}
+     */
+    public static long start() {
+        if (!sEnabled || CURRENT.get() == null) {
+            return NOT_STARTED;
+        }
+        return System.nanoTime();
+    }
+
+    public static void end(@NonNull Phase phase, long start) {
+        if (start == NOT_STARTED) {
+            return;
+        }
+        end(CURRENT.get(), phase, start);
+    }
+
+    /**
+     * Ends the span in another thread than it was started in
+     */
+    public static void end(@Nullable OperationTrace trace, @NonNull Phase phase, long start) {
+        if (trace != null && start != NOT_STARTED) {
+            trace.addSpan(phase, System.nanoTime() - start);
+        }
+    }
+}
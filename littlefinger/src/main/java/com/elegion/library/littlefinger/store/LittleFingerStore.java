@@ -0,0 +1,468 @@
+package com.elegion.library.littlefinger.store;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.elegion.library.littlefinger.LittleFinger;
+import com.elegion.library.littlefinger.crypto.CryptoAlgorithm;
+import com.elegion.library.littlefinger.fingerprint.AuthResult;
+import com.elegion.library.littlefinger.fingerprint.Callback;
+import com.elegion.library.littlefinger.fingerprint.State;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Encrypted key-value store: values are encoded with {@link LittleFinger} under one key alias
+ * and persisted as binary {@link com.elegion.library.littlefinger.crypto.CipherContainer}s in a {@link SegmentLog}
+ * under the key alias.
+ * <p>
+ * Decrypted values are kept in a bounded LRU cache with expiry, zeroized when they leave it.
+ * After {@link #unlock(Callback)} reads are served from memory without the prompt, see {@link #getCached(String)}.
+ * Use the session mode ({@link LittleFinger#setAuthValidityDuration(int)}), otherwise every decode needs its own touch.
+ * <p>
+ * Writes are encoded with the public key of {@link CryptoAlgorithm#HYBRID} by default, so they need no touch.
+ * Encoded writes are appended in groups with one fsync per group, a value is readable when its callback is called.
+ *
+ * @author Azret Magometov
+ */
+
+public class LittleFingerStore implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    private final LittleFinger mLittleFinger;
+    private final String mKeyAlias;
+    private final CryptoAlgorithm mAlgorithm;
+    private final Executor mCallbackExecutor;
+    private final ValueCache mCache;
+    private final SegmentLog mLog;
+    private final ScheduledExecutorService mIoExecutor;
+
+    /**
+     * Guards the cache updates that depend on the persisted ciphertexts
+     */
+    private final Object mCacheLock = new Object();
+
+    private final List<PendingWrite> mPendingWrites = new ArrayList<>();
+    private boolean mFlushScheduled;
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Sequence of the last write applied to a name, an encode that finishes late doesn't overwrite a newer value.
+     * Used on the io thread only.
+     */
+    private final Map<String, Long> mAppliedSequence = new HashMap<>();
+
+    private volatile boolean mClosed;
+
+    private LittleFingerStore(Builder builder, SegmentLog log) {
+        mLittleFinger = builder.mLittleFinger;
+        mKeyAlias = builder.mKeyAlias;
+        mAlgorithm = builder.mAlgorithm;
+        mCallbackExecutor = builder.mCallbackExecutor;
+        mCache = new ValueCache(builder.mCacheSize, builder.mCacheTtlMillis);
+        mLog = log;
+
+        mIoExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LittleFingerStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mIoExecutor.scheduleWithFixedDelay(mCache::purgeExpired, builder.mCacheTtlMillis, builder.mCacheTtlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Encodes and persists the value, the callback gets the stored container in {@link AuthResult#getBytes()}
+     */
+    public void put(@NonNull final String name, @NonNull byte[] value, @NonNull final Callback callback) {
+        if (mClosed) {
+            deliver(callback, getClosedResult());
+            return;
+        }
+        final long sequence = mSequence.incrementAndGet();
+        final byte[] plaintext = value.clone();
+        mLittleFinger.encode(plaintext, mKeyAlias, mAlgorithm, result -> {
+            State state = result.getState();
+            if (state.equals(State.SUCCESS)) {
+                enqueue(new PendingWrite(sequence, name, plaintext, result.getBytes(), callback));
+                return;
+            }
+            if (!state.equals(State.HELP) && !state.equals(State.FAIL)) {
+                wipe(plaintext);
+            }
+            callback.onCompleted(result);
+        });
+    }
+
+    public void put(@NonNull String name, @NonNull String value, @NonNull Callback callback) {
+        put(name, value.getBytes(UTF_8), callback);
+    }
+
+    public void remove(@NonNull String name, @NonNull Callback callback) {
+        if (mClosed) {
+            deliver(callback, getClosedResult());
+            return;
+        }
+        enqueue(new PendingWrite(mSequence.incrementAndGet(), name, null, null, callback));
+    }
+
+    /**
+     * Reads the value from the cache or decodes it, the value is in {@link AuthResult#getBytes()},
+     * a missing value is a successful result with null bytes
+     */
+    public void get(@NonNull final String name, @NonNull final Callback callback) {
+        if (mClosed) {
+            deliver(callback, getClosedResult());
+            return;
+        }
+        byte[] cached = mCache.get(name);
+        if (cached != null) {
+            deliver(callback, AuthResult.getCryptoOperationResult(cached));
+            return;
+        }
+        final byte[] ciphertext;
+        try {
+            ciphertext = mLog.get(mKeyAlias, name);
+        } catch (IOException e) {
+            deliver(callback, AuthResult.getExceptionResult(e));
+            return;
+        }
+        if (ciphertext == null) {
+            deliver(callback, AuthResult.getEmptyResult());
+            return;
+        }
+        mLittleFinger.decode(ciphertext, mKeyAlias, mAlgorithm, result -> {
+            if (result.getState().equals(State.SUCCESS) && result.getBytes() != null) {
+                synchronized (mCacheLock) {
+                    // the value could be replaced while it was decoded
+                    if (!mClosed && isStored(name, ciphertext)) {
+                        mCache.put(name, result.getBytes().clone());
+                    }
+                }
+            }
+            callback.onCompleted(result);
+        });
+    }
+
+    /**
+     * Text variant of {@link #get(String, Callback)}, the value is in {@link AuthResult#getData()}
+     */
+    public void getString(@NonNull String name, @NonNull final Callback callback) {
+        get(name, result -> {
+            byte[] bytes = result.getBytes();
+            if (!result.getState().equals(State.SUCCESS) || bytes == null) {
+                callback.onCompleted(result);
+                return;
+            }
+            callback.onCompleted(AuthResult.getCryptoOperationResult(new String(bytes, UTF_8)));
+            wipe(bytes);
+        });
+    }
+
+    /**
+     * Reads the decrypted value from memory on the calling thread
+     *
+     * @return copy of the value, null if it isn't cached
+     */
+    @Nullable
+    public byte[] getCached(@NonNull String name) {
+        return mCache.get(name);
+    }
+
+    public boolean contains(@NonNull String name) {
+        return mLog.contains(mKeyAlias, name);
+    }
+
+    /**
+     * @return names of the stored values, in no particular order
+     */
+    @NonNull
+    public List<String> getNames() {
+        return Collections.unmodifiableList(mLog.getIds(mKeyAlias));
+    }
+
+    /**
+     * Decodes values into the cache, as many as it holds. In the session mode it takes one touch.
+     *
+     * @param callback gets {@link AuthResult#getItems()} keyed by name, the items carry no values.
+     *                 Cancellation or a sensor error stops the unlock and is delivered as is.
+     */
+    public void unlock(@NonNull Callback callback) {
+        List<String> names = getNames();
+        unlockNext(names.subList(0, Math.min(names.size(), mCache.getMaxSize())), 0, new LinkedHashMap<>(), callback);
+    }
+
+    private void unlockNext(final List<String> names, final int index, final Map<String, AuthResult> items, final Callback callback) {
+        if (index == names.size()) {
+            deliver(callback, AuthResult.getBatchResult(items));
+            return;
+        }
+        final String name = names.get(index);
+        get(name, result -> {
+            State state = result.getState();
+            if (state.equals(State.SUCCESS)) {
+                wipe(result.getBytes());
+                items.put(name, AuthResult.getEmptyResult());
+            } else if (state.equals(State.EXCEPTION)) {
+                items.put(name, result);
+            } else {
+                callback.onCompleted(result);
+                return;
+            }
+            unlockNext(names, index + 1, items, callback);
+        });
+    }
+
+    /**
+     * Wipes the decrypted values and ends the session, the next read needs the touch
+     */
+    public void lock() {
+        mCache.clear();
+        mLittleFinger.endSession();
+    }
+
+    /**
+     * Writes the pending values, wipes the cache and releases the file.
+     * Writes whose encoding finishes later are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mIoExecutor.execute(this::flush);
+        mIoExecutor.shutdown();
+        try {
+            mIoExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (mCacheLock) {
+            mCache.clear();
+        }
+        mLog.close();
+    }
+
+    private void enqueue(PendingWrite write) {
+        synchronized (mPendingWrites) {
+            mPendingWrites.add(write);
+            if (mFlushScheduled) {
+                return;
+            }
+            mFlushScheduled = true;
+        }
+        try {
+            mIoExecutor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            flushRejected();
+        }
+    }
+
+    /**
+     * Writes everything queued while the previous group was written, with one fsync
+     */
+    private void flush() {
+        List<PendingWrite> writes;
+        synchronized (mPendingWrites) {
+            writes = new ArrayList<>(mPendingWrites);
+            mPendingWrites.clear();
+            mFlushScheduled = false;
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+        Collections.sort(writes, (first, second) -> Long.compare(first.mSequence, second.mSequence));
+
+        List<PendingWrite> applied = new ArrayList<>(writes.size());
+        for (PendingWrite write : writes) {
+            Long last = mAppliedSequence.get(write.mName);
+            if (last != null && last > write.mSequence) {
+                // superseded by a newer value, the write is reported as done
+                wipe(write.mPlaintext);
+                deliver(write.mCallback, write.getResult());
+                continue;
+            }
+            synchronized (mCacheLock) {
+                try {
+                    if (write.isRemoval()) {
+                        mLog.remove(mKeyAlias, write.mName);
+                        mCache.remove(write.mName);
+                    } else {
+                        mLog.put(mKeyAlias, write.mName, write.mCiphertext);
+                        if (mClosed) {
+                            wipe(write.mPlaintext);
+                        } else {
+                            mCache.put(write.mName, write.mPlaintext);
+                        }
+                    }
+                } catch (IOException e) {
+                    wipe(write.mPlaintext);
+                    deliver(write.mCallback, AuthResult.getExceptionResult(e));
+                    continue;
+                }
+            }
+            mAppliedSequence.put(write.mName, write.mSequence);
+            applied.add(write);
+        }
+
+        mLog.sync();
+        for (PendingWrite write : applied) {
+            deliver(write.mCallback, write.getResult());
+        }
+    }
+
+    private void flushRejected() {
+        List<PendingWrite> writes;
+        synchronized (mPendingWrites) {
+            writes = new ArrayList<>(mPendingWrites);
+            mPendingWrites.clear();
+            mFlushScheduled = false;
+        }
+        for (PendingWrite write : writes) {
+            wipe(write.mPlaintext);
+            deliver(write.mCallback, getClosedResult());
+        }
+    }
+
+    private void deliver(final Callback callback, final AuthResult result) {
+        mCallbackExecutor.execute(() -> callback.onCompleted(result));
+    }
+
+    private static AuthResult getClosedResult() {
+        return AuthResult.getExceptionResult(new IllegalStateException("Store is closed"));
+    }
+
+    private boolean isStored(String name, byte[] ciphertext) {
+        try {
+            return Arrays.equals(mLog.get(mKeyAlias, name), ciphertext);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void wipe(@Nullable byte[] value) {
+        if (value != null) {
+            Arrays.fill(value, (byte) 0);
+        }
+    }
+
+    private static final class PendingWrite {
+        private final long mSequence;
+        private final String mName;
+        private final byte[] mPlaintext;
+        private final byte[] mCiphertext;
+        private final Callback mCallback;
+
+        private PendingWrite(long sequence, String name, @Nullable byte[] plaintext, @Nullable byte[] ciphertext, Callback callback) {
+            mSequence = sequence;
+            mName = name;
+            mPlaintext = plaintext;
+            mCiphertext = ciphertext;
+            mCallback = callback;
+        }
+
+        private boolean isRemoval() {
+            return mCiphertext == null;
+        }
+
+        private AuthResult getResult() {
+            return isRemoval() ? AuthResult.getEmptyResult() : AuthResult.getCryptoOperationResult(mCiphertext);
+        }
+    }
+
+    public static class Builder {
+
+        private final LittleFinger mLittleFinger;
+        private final File mDirectory;
+        private final String mKeyAlias;
+        private CryptoAlgorithm mAlgorithm = CryptoAlgorithm.HYBRID;
+        private int mCacheSize = 64;
+        private long mCacheTtlMillis = TimeUnit.MINUTES.toMillis(5);
+        private Executor mCallbackExecutor;
+
+        /**
+         * @param directory directory of the {@link SegmentLog}, stores with different key aliases can share it
+         * @param keyAlias  alias of the key for all values of the store
+         */
+        public Builder(@NonNull LittleFinger littleFinger, @NonNull File directory, @NonNull String keyAlias) {
+            mLittleFinger = littleFinger;
+            mDirectory = directory;
+            mKeyAlias = keyAlias;
+        }
+
+        /**
+         * Algorithm of all values, it can't be changed for existing values
+         */
+        @NonNull
+        public Builder algorithm(@NonNull CryptoAlgorithm algorithm) {
+            mAlgorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Maximum number of decrypted values in memory, 64 by default
+         */
+        @NonNull
+        public Builder cacheSize(int size) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Cache size must be positive");
+            }
+            mCacheSize = size;
+            return this;
+        }
+
+        /**
+         * Time a decrypted value stays in memory after it was read or written, 5 minutes by default
+         */
+        @NonNull
+        public Builder cacheTtl(long duration, @NonNull TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("Cache ttl must be positive");
+            }
+            mCacheTtlMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Executor for the store callbacks, the main thread by default. Callbacks of the prompt come from {@link LittleFinger}.
+         */
+        @NonNull
+        public Builder callbackExecutor(@NonNull Executor executor) {
+            mCallbackExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Opens the log and builds its index, call it off the main thread
+         */
+        @NonNull
+        public LittleFingerStore build() throws IOException {
+            if (mCallbackExecutor == null) {
+                final Handler handler = new Handler(Looper.getMainLooper());
+                mCallbackExecutor = handler::post;
+            }
+            return new LittleFingerStore(this, SegmentLog.open(mDirectory));
+        }
+    }
+}
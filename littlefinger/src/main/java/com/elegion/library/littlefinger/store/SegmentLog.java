@@ -0,0 +1,588 @@
+package com.elegion.library.littlefinger.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Append-only log of ciphertexts keyed by key alias and record id, e.g. the output of
+ * {@link com.elegion.library.littlefinger.LittleFinger#encode(byte[], String, com.elegion.library.littlefinger.crypto.CryptoAlgorithm, com.elegion.library.littlefinger.fingerprint.Callback)}.
+ * <p>
+ * Records are written to memory-mapped segment files of a directory, a write is a copy into the mapping.
+ * Record layout:
+ * <pre>
+ * crc32 of the body (4) | body length (4) | body: op (1) | alias length (2) | alias | id length (2) | id | value
+ * </pre>
+ * Segments are preallocated with zeros, a zero length ends a segment. The index keeps the position of the latest record
+ * of every key, values stay in the mappings. Opening scans the record headers only, checksums are verified
+ * for the last segment, where a crash can leave a torn record, and for every value on read.
+ * <p>
+ * Written records survive a process crash at once and a power loss after {@link #sync()}.
+ * Segments where most records are superseded are compacted in the background: live records are copied
+ * to the current segment and the old file is deleted. Thread-safe.
+ *
+ * @author Azret Magometov
+ */
+
+public class SegmentLog implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int BODY_OVERHEAD = 1 + 2 + 2;
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final TreeMap<Integer, Segment> mSegments = new TreeMap<>();
+
+    /**
+     * Alias to record id to {@link #location(int, int)} of the latest record
+     */
+    private final Map<String, Map<String, Long>> mIndex = new HashMap<>();
+    private final CRC32 mCrc = new CRC32();
+
+    private Segment mActive;
+    private boolean mCompactionScheduled;
+    private boolean mClosed;
+    /**
+     * Background and explicit passes don't compact the same segment at once
+     */
+    private final Object mCompactionLock = new Object();
+    private final ExecutorService mCompactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LittleFinger-SegmentLog");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private SegmentLog(File directory, int segmentSize) {
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+    }
+
+    @NonNull
+    public static SegmentLog open(@NonNull File directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the log in the directory, creating it if needed, and builds the index
+     *
+     * @param segmentSize size of a segment file, a larger record gets a segment of its own size
+     */
+    @NonNull
+    public static SegmentLog open(@NonNull File directory, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE + BODY_OVERHEAD) {
+            throw new IllegalArgumentException("Segment size is too small");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        SegmentLog log = new SegmentLog(directory, segmentSize);
+        try {
+            log.load();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    private void load() throws IOException {
+        File[] files = mDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        List<Integer> ids = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    ids.add(Integer.parseInt(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // not a segment of the log
+                }
+            }
+        }
+        Collections.sort(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            boolean last = i == ids.size() - 1;
+            Segment segment = Segment.map(segmentFile(ids.get(i)), ids.get(i), 0);
+            mSegments.put(segment.mId, segment);
+            scan(segment, last);
+        }
+        if (mSegments.isEmpty()) {
+            mActive = newSegment(mSegmentSize);
+        } else {
+            mActive = mSegments.lastEntry().getValue();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Adds the records of the segment to the index, reading only their keys
+     *
+     * @param verify checks the checksums and wipes everything after the first torn record
+     */
+    private void scan(Segment segment, boolean verify) {
+        ByteBuffer buffer = segment.mBuffer;
+        int offset = 0;
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int crc = buffer.getInt(offset);
+            int length = buffer.getInt(offset + 4);
+            if (length < BODY_OVERHEAD || length > buffer.capacity() - offset - HEADER_SIZE
+                    || verify && crc != checksum(buffer, offset + HEADER_SIZE, length)) {
+                break;
+            }
+            int position = offset + HEADER_SIZE;
+            byte op = buffer.get(position);
+            int aliasLength = buffer.getShort(position + 1) & 0xFFFF;
+            int idLength = aliasLength + BODY_OVERHEAD > length ? -1 : buffer.getShort(position + 3 + aliasLength) & 0xFFFF;
+            if (op != OP_PUT && op != OP_REMOVE || idLength < 0 || aliasLength + idLength + BODY_OVERHEAD > length) {
+                break;
+            }
+            String alias = readString(buffer, position + 3, aliasLength);
+            String id = readString(buffer, position + 5 + aliasLength, idLength);
+            int recordSize = HEADER_SIZE + length;
+            if (op == OP_PUT) {
+                supersede(putLocation(alias, id, location(segment.mId, offset)));
+                segment.mLiveBytes += recordSize;
+            } else {
+                supersede(removeLocation(alias, id));
+            }
+            offset += recordSize;
+        }
+        segment.mEnd = offset;
+        if (verify) {
+            // a record written after a torn one must not be read as its continuation
+            int i = offset;
+            for (; i + 8 <= buffer.capacity(); i += 8) {
+                if (buffer.getLong(i) != 0) {
+                    buffer.putLong(i, 0);
+                }
+            }
+            for (; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    public synchronized void put(@NonNull String alias, @NonNull String id, @NonNull byte[] value) throws IOException {
+        checkOpen();
+        int offset = append(OP_PUT, alias, id, value);
+        supersede(putLocation(alias, id, location(mActive.mId, offset)));
+        mActive.mLiveBytes += mActive.mEnd - offset;
+    }
+
+    public synchronized void remove(@NonNull String alias, @NonNull String id) throws IOException {
+        checkOpen();
+        Long previous = getLocation(alias, id);
+        if (previous == null) {
+            return;
+        }
+        append(OP_REMOVE, alias, id, null);
+        supersede(removeLocation(alias, id));
+    }
+
+    /**
+     * @return copy of the value, null if there is no record
+     * @throws IOException if the record is corrupted
+     */
+    @Nullable
+    public synchronized byte[] get(@NonNull String alias, @NonNull String id) throws IOException {
+        checkOpen();
+        Long location = getLocation(alias, id);
+        if (location == null) {
+            return null;
+        }
+        Segment segment = mSegments.get(segmentId(location));
+        int offset = offset(location);
+        ByteBuffer buffer = segment.mBuffer;
+        int length = buffer.getInt(offset + 4);
+        if (buffer.getInt(offset) != checksum(buffer, offset + HEADER_SIZE, length)) {
+            throw new IOException("Record " + alias + "/" + id + " is corrupted");
+        }
+        int aliasLength = buffer.getShort(offset + HEADER_SIZE + 1) & 0xFFFF;
+        int idLength = buffer.getShort(offset + HEADER_SIZE + 3 + aliasLength) & 0xFFFF;
+        int valueOffset = offset + HEADER_SIZE + BODY_OVERHEAD + aliasLength + idLength;
+        byte[] value = new byte[offset + HEADER_SIZE + length - valueOffset];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(valueOffset);
+        duplicate.get(value);
+        return value;
+    }
+
+    public synchronized boolean contains(@NonNull String alias, @NonNull String id) {
+        return getLocation(alias, id) != null;
+    }
+
+    /**
+     * @return ids of the records of the alias, in no particular order
+     */
+    @NonNull
+    public synchronized List<String> getIds(@NonNull String alias) {
+        Map<String, Long> records = mIndex.get(alias);
+        return records == null ? Collections.<String>emptyList() : new ArrayList<>(records.keySet());
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Map<String, Long> records : mIndex.values()) {
+            size += records.size();
+        }
+        return size;
+    }
+
+    /**
+     * Flushes the written records to the storage, one call covers all of them
+     */
+    public synchronized void sync() {
+        checkOpen();
+        mActive.mBuffer.force();
+    }
+
+    /**
+     * Compacts the sparse segments on the calling thread, normally it is done in the background
+     */
+    public void compact() throws IOException {
+        synchronized (mCompactionLock) {
+            List<Integer> candidates;
+            synchronized (this) {
+                checkOpen();
+                mCompactionScheduled = false;
+                candidates = new ArrayList<>();
+                for (Segment segment : mSegments.values()) {
+                    if (segment != mActive && segment.isSparse()) {
+                        candidates.add(segment.mId);
+                    }
+                }
+            }
+            for (int id : candidates) {
+                compact(id);
+            }
+        }
+    }
+
+    /**
+     * Copies the live records of a sealed segment one by one, so writers wait for a single record at most
+     */
+    private void compact(int segmentId) throws IOException {
+        Segment segment;
+        synchronized (this) {
+            segment = mSegments.get(segmentId);
+        }
+        if (segment == null) {
+            return;
+        }
+        int offset = 0;
+        while (offset < segment.mEnd) {
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                offset = copyIfLive(segment, offset);
+            }
+        }
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            // the copies must be durable before the originals are gone
+            mActive.mBuffer.force();
+            mSegments.remove(segmentId);
+            segment.close();
+            if (!segment.mFile.delete()) {
+                throw new IOException("Can't delete " + segment.mFile);
+            }
+        }
+    }
+
+    /**
+     * @return offset of the next record
+     */
+    private int copyIfLive(Segment segment, int offset) throws IOException {
+        ByteBuffer buffer = segment.mBuffer;
+        int length = buffer.getInt(offset + 4);
+        int position = offset + HEADER_SIZE;
+        byte op = buffer.get(position);
+        int aliasLength = buffer.getShort(position + 1) & 0xFFFF;
+        int idLength = buffer.getShort(position + 3 + aliasLength) & 0xFFFF;
+        String alias = readString(buffer, position + 3, aliasLength);
+        String id = readString(buffer, position + 5 + aliasLength, idLength);
+        Long location = getLocation(alias, id);
+
+        boolean live = op == OP_PUT && location != null && location == location(segment.mId, offset);
+        // a removal hides the records of the older segments until they are compacted too
+        boolean hiding = op == OP_REMOVE && location == null && mSegments.firstKey() < segment.mId;
+        if (live || hiding) {
+            byte[] record = new byte[HEADER_SIZE + length];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            duplicate.get(record);
+            int copied = appendRecord(record);
+            if (live) {
+                segment.mLiveBytes -= record.length;
+                putLocation(alias, id, location(mActive.mId, copied));
+                mActive.mLiveBytes += record.length;
+            }
+        }
+        return offset + HEADER_SIZE + length;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (mActive != null) {
+                mActive.mBuffer.force();
+            }
+        }
+        mCompactionExecutor.shutdown();
+        try {
+            mCompactionExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment segment : mSegments.values()) {
+                segment.close();
+            }
+            mSegments.clear();
+            mIndex.clear();
+        }
+    }
+
+    /**
+     * @return offset of the record in the active segment
+     */
+    private int append(byte op, String alias, String id, @Nullable byte[] value) throws IOException {
+        byte[] aliasBytes = alias.getBytes(UTF_8);
+        byte[] idBytes = id.getBytes(UTF_8);
+        if (aliasBytes.length > 0xFFFF || idBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Alias or id is too long");
+        }
+        int valueLength = value == null ? 0 : value.length;
+        int length = BODY_OVERHEAD + aliasBytes.length + idBytes.length + valueLength;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.position(HEADER_SIZE);
+        record.put(op)
+                .putShort((short) aliasBytes.length)
+                .put(aliasBytes)
+                .putShort((short) idBytes.length)
+                .put(idBytes);
+        if (value != null) {
+            record.put(value);
+        }
+        record.putInt(0, checksum(record, HEADER_SIZE, length))
+                .putInt(4, length);
+        return appendRecord(record.array());
+    }
+
+    private int appendRecord(byte[] record) throws IOException {
+        if (mActive.mBuffer.capacity() - mActive.mEnd < record.length) {
+            roll(record.length);
+        }
+        int offset = mActive.mEnd;
+        ByteBuffer duplicate = mActive.mBuffer.duplicate();
+        duplicate.position(offset);
+        duplicate.put(record);
+        mActive.mEnd = offset + record.length;
+        return offset;
+    }
+
+    /**
+     * Seals the active segment and starts a new one
+     */
+    private void roll(int recordSize) throws IOException {
+        // a sealed segment is trusted on open, so it is flushed before anything is written after it
+        mActive.mBuffer.force();
+        mActive = newSegment(Math.max(mSegmentSize, recordSize));
+        scheduleCompactionIfNeeded();
+    }
+
+    private Segment newSegment(int size) throws IOException {
+        int id = mSegments.isEmpty() ? 0 : mSegments.lastKey() + 1;
+        Segment segment = Segment.map(segmentFile(id), id, size);
+        mSegments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Accounts the replaced record as garbage of its segment
+     */
+    private void supersede(@Nullable Long previous) {
+        if (previous == null) {
+            return;
+        }
+        Segment segment = mSegments.get(segmentId(previous));
+        int offset = offset(previous);
+        segment.mLiveBytes -= HEADER_SIZE + segment.mBuffer.getInt(offset + 4);
+        if (segment != mActive && segment.isSparse()) {
+            scheduleCompactionIfNeeded();
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (mCompactionScheduled || mClosed || mActive == null) {
+            return;
+        }
+        for (Segment segment : mSegments.values()) {
+            if (segment != mActive && segment.isSparse()) {
+                mCompactionScheduled = true;
+                mCompactionExecutor.execute(() -> {
+                    try {
+                        compact();
+                    } catch (IOException | IllegalStateException ignored) {
+                        // the segment stays, it is retried when the next record is superseded
+                    }
+                });
+                return;
+            }
+        }
+    }
+
+    @Nullable
+    private Long getLocation(String alias, String id) {
+        Map<String, Long> records = mIndex.get(alias);
+        return records == null ? null : records.get(id);
+    }
+
+    @Nullable
+    private Long putLocation(String alias, String id, long location) {
+        Map<String, Long> records = mIndex.get(alias);
+        if (records == null) {
+            records = new HashMap<>();
+            mIndex.put(alias, records);
+        }
+        return records.put(id, location);
+    }
+
+    @Nullable
+    private Long removeLocation(String alias, String id) {
+        Map<String, Long> records = mIndex.get(alias);
+        if (records == null) {
+            return null;
+        }
+        Long previous = records.remove(id);
+        if (records.isEmpty()) {
+            mIndex.remove(alias);
+        }
+        return previous;
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        mCrc.reset();
+        if (buffer.hasArray()) {
+            mCrc.update(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else {
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            byte[] chunk = new byte[Math.min(length, 8192)];
+            for (int remaining = length; remaining > 0; remaining -= chunk.length) {
+                int size = Math.min(remaining, chunk.length);
+                duplicate.get(chunk, 0, size);
+                mCrc.update(chunk, 0, size);
+            }
+        }
+        return (int) mCrc.getValue();
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private File segmentFile(int id) {
+        return new File(mDirectory, String.format(Locale.US, "%08d", id) + SEGMENT_SUFFIX);
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Log is closed");
+        }
+    }
+
+    private static long location(int segmentId, int offset) {
+        return (long) segmentId << 32 | offset & 0xFFFFFFFFL;
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private static final class Segment {
+        private final int mId;
+        private final File mFile;
+        private final FileChannel mChannel;
+        private final MappedByteBuffer mBuffer;
+        private int mEnd;
+        private long mLiveBytes;
+
+        private Segment(int id, File file, FileChannel channel, MappedByteBuffer buffer) {
+            mId = id;
+            mFile = file;
+            mChannel = channel;
+            mBuffer = buffer;
+        }
+
+        /**
+         * @param size size of a new segment, 0 to map an existing one as is
+         */
+        private static Segment map(File file, int id, int size) throws IOException {
+            FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+            try {
+                long mapped = size > 0 ? size : channel.size();
+                if (mapped > Integer.MAX_VALUE) {
+                    throw new IOException("Segment is too large " + file);
+                }
+                return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, mapped));
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * True if most of the written records are superseded
+         */
+        private boolean isSparse() {
+            return mLiveBytes * 2 < mEnd;
+        }
+
+        private void close() {
+            try {
+                mChannel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.elegion.library.littlefinger.store;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Bounded LRU cache of decrypted values with expiry after write.
+ * Values are owned by the cache and zeroized when they are evicted, expired, removed or cleared,
+ * callers always get copies.
+ *
+ * @author Azret Magometov
+ */
+
+class ValueCache {
+
+    private final int mMaxSize;
+    private final long mTtlMillis;
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    ValueCache(int maxSize, long ttlMillis) {
+        mMaxSize = maxSize;
+        mTtlMillis = ttlMillis;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ValueCache.Entry> eldest) {
+                if (size() > mMaxSize) {
+                    wipe(eldest.getValue().mValue);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return copy of the value, null if it isn't cached or has expired
+     */
+    @Nullable
+    synchronized byte[] get(String name) {
+        Entry entry = mEntries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() >= entry.mExpiresAt) {
+            mEntries.remove(name);
+            wipe(entry.mValue);
+            return null;
+        }
+        return entry.mValue.clone();
+    }
+
+    /**
+     * Takes the ownership of the value
+     */
+    synchronized void put(String name, byte[] value) {
+        Entry previous = mEntries.put(name, new Entry(value, SystemClock.elapsedRealtime() + mTtlMillis));
+        if (previous != null && previous.mValue != value) {
+            wipe(previous.mValue);
+        }
+    }
+
+    synchronized void remove(String name) {
+        Entry entry = mEntries.remove(name);
+        if (entry != null) {
+            wipe(entry.mValue);
+        }
+    }
+
+    synchronized void purgeExpired() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now >= entry.mExpiresAt) {
+                wipe(entry.mValue);
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        for (Entry entry : mEntries.values()) {
+            wipe(entry.mValue);
+        }
+        mEntries.clear();
+    }
+
+    private static void wipe(byte[] value) {
+        Arrays.fill(value, (byte) 0);
+    }
+
+    private static final class Entry {
+        private final byte[] mValue;
+        private final long mExpiresAt;
+
+        private Entry(byte[] value, long expiresAt) {
+            mValue = value;
+            mExpiresAt = expiresAt;
+        }
+    }
+}
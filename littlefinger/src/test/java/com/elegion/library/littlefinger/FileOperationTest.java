@@ -0,0 +1,159 @@
+package com.elegion.library.littlefinger;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import com.elegion.library.littlefinger.crypto.FakeKeyStoreBackend;
+import com.elegion.library.littlefinger.fingerprint.AuthResult;
+import com.elegion.library.littlefinger.fingerprint.Callback;
+import com.elegion.library.littlefinger.fingerprint.FakeBiometricAuthenticator;
+import com.elegion.library.littlefinger.fingerprint.State;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Touches are simulated by {@link FakeBiometricAuthenticator}, results come on its thread
+ *
+ * @author Azret Magometov
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FileOperationTest {
+
+    private static final String KEY = "file";
+    private static final byte[] OLD_CONTENT = {1, 2, 3};
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private FakeBiometricAuthenticator mAuthenticator;
+    private LittleFinger mLittleFinger;
+    private File mDirectory;
+    private File mSource;
+    private byte[] mData;
+
+    @Before
+    public void setUp() throws IOException {
+        FakeKeyStoreBackend keyStore = new FakeKeyStoreBackend();
+        mAuthenticator = new FakeBiometricAuthenticator(keyStore);
+        mLittleFinger = new LittleFinger.Builder(RuntimeEnvironment.getApplication())
+                .keyStoreBackend(keyStore)
+                .authenticator(mAuthenticator)
+                .cryptoExecutor(Executors.newSingleThreadExecutor())
+                .callbackExecutor(Runnable::run)
+                .build();
+        mDirectory = mFolder.newFolder();
+        mData = new byte[3 * 65536 + 7];
+        new Random(1).nextBytes(mData);
+        mSource = write("source", mData);
+    }
+
+    @After
+    public void tearDown() {
+        mLittleFinger.release();
+    }
+
+    @Test
+    public void existingDestinations_areReplacedOnSuccess() throws Exception {
+        File encrypted = write("encrypted", OLD_CONTENT);
+        File decrypted = write("decrypted", OLD_CONTENT);
+        assertEquals(State.SUCCESS, run(callback -> mLittleFinger.encrypt(mSource, encrypted, KEY, callback)).getState());
+        assertEquals(State.SUCCESS, run(callback -> mLittleFinger.decrypt(encrypted, decrypted, KEY, callback)).getState());
+
+        assertArrayEquals(mData, Files.readAllBytes(decrypted.toPath()));
+        assertOnlyFiles(mSource, encrypted, decrypted);
+    }
+
+    @Test
+    public void failedAuthentication_keepsDestination() throws Exception {
+        File destination = write("destination", OLD_CONTENT);
+        mAuthenticator.setError(FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, "Too many attempts");
+        assertEquals(State.ERROR, run(callback -> mLittleFinger.encrypt(mSource, destination, KEY, callback)).getState());
+
+        assertArrayEquals(OLD_CONTENT, Files.readAllBytes(destination.toPath()));
+        assertOnlyFiles(mSource, destination);
+    }
+
+    @Test
+    public void failedDecryption_keepsDestination() throws Exception {
+        File encrypted = new File(mDirectory, "encrypted");
+        assertEquals(State.SUCCESS, run(callback -> mLittleFinger.encrypt(mSource, encrypted, KEY, callback)).getState());
+        byte[] corrupted = Files.readAllBytes(encrypted.toPath());
+        corrupted[corrupted.length - 20] ^= 1;
+        Files.write(encrypted.toPath(), corrupted);
+        File destination = write("destination", OLD_CONTENT);
+
+        assertEquals(State.EXCEPTION, run(callback -> mLittleFinger.decrypt(encrypted, destination, KEY, callback)).getState());
+        assertArrayEquals(OLD_CONTENT, Files.readAllBytes(destination.toPath()));
+        assertOnlyFiles(mSource, encrypted, destination);
+    }
+
+    @Test
+    public void sameSourceAndDestination_areRejected() throws Exception {
+        File samePath = new File(new File(mDirectory, "."), mSource.getName());
+        AuthResult result = run(callback -> mLittleFinger.encrypt(mSource, samePath, KEY, callback));
+
+        assertEquals(State.EXCEPTION, result.getState());
+        assertTrue(result.getThrowable() instanceof IllegalArgumentException);
+        assertArrayEquals(mData, Files.readAllBytes(mSource.toPath()));
+        assertOnlyFiles(mSource);
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(mDirectory, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private void assertOnlyFiles(File... expected) {
+        String[] names = new String[expected.length];
+        for (int i = 0; i < expected.length; i++) {
+            names[i] = expected[i].getName();
+        }
+        String[] actual = mDirectory.list();
+        Arrays.sort(names);
+        Arrays.sort(actual);
+        assertArrayEquals(names, actual);
+    }
+
+    /**
+     * @return final result of the operation, prompts and rejected touches are skipped
+     */
+    private static AuthResult run(Operation operation) throws InterruptedException {
+        BlockingQueue<AuthResult> results = new LinkedBlockingQueue<>();
+        operation.start(result -> {
+            State state = result.getState();
+            if (state != State.READY_TO_USE && state != State.HELP && state != State.FAIL) {
+                results.add(result);
+            }
+        });
+        AuthResult result = results.poll(30, TimeUnit.SECONDS);
+        if (result == null) {
+            throw new AssertionError("Operation hasn't completed");
+        }
+        return result;
+    }
+
+    private interface Operation {
+        void start(Callback callback);
+    }
+}
@@ -0,0 +1,186 @@
+package com.elegion.library.littlefinger;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.SystemClock;
+
+import com.elegion.library.littlefinger.crypto.CryptoAlgorithm;
+import com.elegion.library.littlefinger.crypto.KeySpec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The clock of Robolectric stands still, {@link SystemClock#sleep(long)} moves it forward
+ *
+ * @author Azret Magometov
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PreparedCryptoObjectsTest {
+
+    private static final KeySpec SPEC = new KeySpec("key", CryptoAlgorithm.AES);
+
+    private final List<Runnable> mQueued = new ArrayList<>();
+    private final List<Runnable> mScheduled = new ArrayList<>();
+
+    @Test
+    public void take_returnsObjectOnceAndPreparesNext() {
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(Runnable::run, this::schedule);
+        CountingFactory factory = new CountingFactory();
+        objects.prepare(SPEC, factory);
+        objects.prepare(SPEC, factory);
+        assertEquals(1, factory.mCount);
+
+        FingerprintManager.CryptoObject first = objects.take(SPEC);
+        assertNotNull(first);
+        assertEquals(2, factory.mCount);
+        FingerprintManager.CryptoObject second = objects.take(SPEC);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertNull(objects.take(new KeySpec("other", CryptoAlgorithm.AES)));
+    }
+
+    @Test
+    public void takeWhilePreparing_returnsNull() {
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(mQueued::add, this::schedule);
+        CountingFactory factory = new CountingFactory();
+        objects.prepare(SPEC, factory);
+        assertNull(objects.take(SPEC));
+        // the slot is armed by one task at a time
+        assertEquals(1, mQueued.size());
+        runQueued();
+        assertNotNull(objects.take(SPEC));
+    }
+
+    @Test
+    public void expiringObject_isReplacedInBackground() {
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(Runnable::run, this::schedule);
+        CountingFactory factory = new CountingFactory();
+        objects.prepare(SPEC, factory);
+        assertEquals(1, mScheduled.size());
+
+        SystemClock.sleep(PreparedCryptoObjects.TTL_MILLIS);
+        runScheduled();
+        assertEquals(2, factory.mCount);
+        // the replacement expires in its turn
+        assertEquals(1, mScheduled.size());
+        assertNotNull(objects.take(SPEC));
+    }
+
+    @Test
+    public void wakeUpOfReplacedObject_keepsFreshOne() {
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(Runnable::run, this::schedule);
+        CountingFactory factory = new CountingFactory();
+        objects.prepare(SPEC, factory);
+        SystemClock.sleep(PreparedCryptoObjects.TTL_MILLIS / 2);
+        assertNotNull(objects.take(SPEC));
+        assertEquals(2, factory.mCount);
+
+        SystemClock.sleep(PreparedCryptoObjects.TTL_MILLIS / 2);
+        // the wake-up of the taken object finds the fresh one
+        mScheduled.remove(0).run();
+        assertEquals(2, factory.mCount);
+        assertNotNull(objects.take(SPEC));
+    }
+
+    @Test
+    public void lateWakeUp_expiredObjectIsNotTaken() {
+        // e.g. the device slept through the scheduled replacement
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(Runnable::run, this::schedule);
+        CountingFactory factory = new CountingFactory();
+        objects.prepare(SPEC, factory);
+        SystemClock.sleep(PreparedCryptoObjects.TTL_MILLIS);
+        assertNull(objects.take(SPEC));
+        assertNotNull(objects.take(SPEC));
+    }
+
+    @Test
+    public void failedPreparation_leavesSlotEmpty() {
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(Runnable::run, this::schedule);
+        objects.prepare(SPEC, () -> {
+            throw new IllegalStateException("Key is invalidated");
+        });
+        assertNull(objects.take(SPEC));
+    }
+
+    @Test
+    public void eldestKey_isEvictedOverLimit() {
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(Runnable::run, this::schedule);
+        CountingFactory factory = new CountingFactory();
+        for (int i = 0; i <= PreparedCryptoObjects.MAX_KEYS; i++) {
+            objects.prepare(spec(i), factory);
+        }
+        assertNull(objects.take(spec(0)));
+        for (int i = 1; i <= PreparedCryptoObjects.MAX_KEYS; i++) {
+            assertNotNull(objects.take(spec(i)));
+        }
+    }
+
+    @Test
+    public void releasedSlots_areNotRearmed() {
+        PreparedCryptoObjects objects = new PreparedCryptoObjects(mQueued::add, this::schedule);
+        CountingFactory factory = new CountingFactory();
+        objects.prepare(spec(0), factory);
+        objects.prepare(spec(1), factory);
+        objects.prepare(spec(2), factory);
+        runQueued();
+        objects.release(spec(0));
+        assertNull(objects.take(spec(0)));
+        assertNotNull(objects.take(spec(1)));
+
+        // spec(1) is rearming, the object made after the release is dropped
+        objects.releaseAll();
+        runQueued();
+        assertNull(objects.take(spec(1)));
+        assertNull(objects.take(spec(2)));
+        assertEquals(4, factory.mCount);
+    }
+
+    private void schedule(Runnable task, long delayMillis) {
+        assertEquals(PreparedCryptoObjects.TTL_MILLIS, delayMillis);
+        mScheduled.add(task);
+    }
+
+    private void runScheduled() {
+        List<Runnable> scheduled = new ArrayList<>(mScheduled);
+        mScheduled.clear();
+        for (Runnable runnable : scheduled) {
+            runnable.run();
+        }
+    }
+
+    private void runQueued() {
+        List<Runnable> queued = new ArrayList<>(mQueued);
+        mQueued.clear();
+        for (Runnable runnable : queued) {
+            runnable.run();
+        }
+    }
+
+    private static KeySpec spec(int index) {
+        return new KeySpec("key" + index, CryptoAlgorithm.AES);
+    }
+
+    private static final class CountingFactory implements PreparedCryptoObjects.Factory {
+        private int mCount;
+
+        @NonNull
+        @Override
+        public FingerprintManager.CryptoObject create() throws Exception {
+            mCount++;
+            return new FingerprintManager.CryptoObject(Cipher.getInstance("AES/GCM/NoPadding"));
+        }
+    }
+}
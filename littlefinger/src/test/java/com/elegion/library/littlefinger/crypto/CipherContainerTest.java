@@ -0,0 +1,148 @@
+package com.elegion.library.littlefinger.crypto;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Azret Magometov
+ */
+public class CipherContainerTest {
+
+    private static final byte[] IV = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+    private static final byte[] KEY = {21, 22, 23};
+    private static final byte[] SEALED = {31, 32, 33, 34, 35, 36, 37, 38, 39, 40};
+    private static final int TAG_LENGTH = 4;
+
+    @Test
+    public void writtenContainer_isParsed() {
+        byte[] bytes = newContainer();
+        assertEquals(CipherContainer.sizeOf(IV.length, KEY.length, SEALED.length), bytes.length);
+
+        CipherContainer container = CipherContainer.parse(bytes);
+        assertSame(bytes, container.getSource());
+        assertEquals(CipherContainer.ALGORITHM_ENVELOPE_GCM, container.getAlgorithm());
+        assertEquals(CipherContainer.aliasHash("alias"), container.getAliasHash());
+        assertArrayEquals(IV, slice(bytes, container.getIvOffset(), container.getIvLength()));
+        assertArrayEquals(KEY, slice(bytes, container.getKeyOffset(), container.getKeyLength()));
+        assertEquals(SEALED.length - TAG_LENGTH, container.getCiphertextLength());
+        assertEquals(TAG_LENGTH, container.getTagLength());
+        assertArrayEquals(SEALED, slice(bytes, container.getCiphertextOffset(), container.getSealedLength()));
+    }
+
+    @Test
+    public void emptyFields_areParsed() {
+        byte[] none = new byte[0];
+        CipherContainer container = CipherContainer.parse(
+                CipherContainer.toByteArray(CipherContainer.ALGORITHM_RSA_OAEP, 7, none, none, SEALED, 0));
+        assertEquals(0, container.getIvLength());
+        assertEquals(0, container.getKeyLength());
+        assertEquals(0, container.getTagLength());
+        assertEquals(SEALED.length, container.getCiphertextLength());
+    }
+
+    @Test
+    public void containerInsideArray_isParsedInPlace() {
+        byte[] container = newContainer();
+        byte[] bytes = new byte[container.length + 5];
+        int written = CipherContainer.write(bytes, 3, CipherContainer.ALGORITHM_ENVELOPE_GCM, CipherContainer.aliasHash("alias"),
+                IV, KEY, SEALED, TAG_LENGTH);
+        assertEquals(container.length, written);
+
+        CipherContainer parsed = new CipherContainer();
+        parsed.read(bytes, 3, written);
+        assertSame(bytes, parsed.getSource());
+        assertArrayEquals(SEALED, slice(bytes, parsed.getCiphertextOffset(), parsed.getSealedLength()));
+    }
+
+    @Test
+    public void containerInBuffer_isParsedAndConsumed() {
+        byte[] bytes = newContainer();
+        ByteBuffer heap = ByteBuffer.allocate(bytes.length + 2);
+        heap.position(2);
+        heap.put(bytes).position(2);
+        CipherContainer fromHeap = CipherContainer.parse(heap);
+        assertEquals(heap.limit(), heap.position());
+        assertSame(heap.array(), fromHeap.getSource());
+        assertArrayEquals(SEALED, slice(fromHeap.getSource(), fromHeap.getCiphertextOffset(), fromHeap.getSealedLength()));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        CipherContainer fromDirect = CipherContainer.parse(direct);
+        assertEquals(direct.limit(), direct.position());
+        assertArrayEquals(KEY, slice(fromDirect.getSource(), fromDirect.getKeyOffset(), fromDirect.getKeyLength()));
+    }
+
+    @Test
+    public void container_isReused() {
+        CipherContainer container = new CipherContainer();
+        container.read(newContainer(), 0, newContainer().length);
+        byte[] other = CipherContainer.toByteArray(CipherContainer.ALGORITHM_AES_CBC, 1, IV, new byte[0], SEALED, 0);
+        container.read(other, 0, other.length);
+        assertEquals(CipherContainer.ALGORITHM_AES_CBC, container.getAlgorithm());
+        assertEquals(0, container.getKeyLength());
+        assertEquals(SEALED.length, container.getCiphertextLength());
+    }
+
+    @Test
+    public void checkAlgorithm_rejectsOtherAlgorithmAndKey() {
+        CipherContainer container = CipherContainer.parse(newContainer());
+        container.checkAlgorithm(CipherContainer.ALGORITHM_ENVELOPE_GCM, "alias");
+        try {
+            container.checkAlgorithm(CipherContainer.ALGORITHM_AES_GCM, "alias");
+            fail("Other algorithm was accepted");
+        } catch (IllegalArgumentException expected) {
+            // the data is rejected before the keystore is touched
+        }
+        try {
+            container.checkAlgorithm(CipherContainer.ALGORITHM_ENVELOPE_GCM, "other");
+            fail("Other key was accepted");
+        } catch (IllegalArgumentException expected) {
+            // the data is rejected before the keystore is touched
+        }
+    }
+
+    @Test
+    public void invalidInput_isRejected() {
+        byte[] bytes = newContainer();
+        assertFalse(CipherContainer.hasMagic(bytes, 0, 10));
+
+        byte[] noMagic = bytes.clone();
+        noMagic[0] = 'X';
+        assertRejected(noMagic);
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[2] = 2;
+        assertRejected(otherVersion);
+
+        for (int length = 0; length < bytes.length; length++) {
+            assertRejected(Arrays.copyOf(bytes, length));
+        }
+        assertRejected(Arrays.copyOf(bytes, bytes.length + 1));
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            CipherContainer.parse(bytes);
+            fail("Invalid container of " + bytes.length + " bytes was parsed");
+        } catch (IllegalArgumentException expected) {
+            // parsing fails with a message instead of reading out of bounds
+        }
+    }
+
+    private static byte[] newContainer() {
+        return CipherContainer.toByteArray(CipherContainer.ALGORITHM_ENVELOPE_GCM, CipherContainer.aliasHash("alias"),
+                IV, KEY, SEALED, TAG_LENGTH);
+    }
+
+    private static byte[] slice(byte[] bytes, int offset, int length) {
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+}
@@ -0,0 +1,219 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Azret Magometov
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EncryptedFileTest {
+
+    private static final String KEY = "file";
+    private static final int SEGMENT = StreamCryptographer.DEFAULT_SEGMENT_SIZE;
+    private static final int SIZE = 3 * SEGMENT + 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private FakeKeyStoreBackend mKeyStore;
+    private StreamCryptographer mCryptographer;
+    private byte[] mData;
+    private File mFile;
+    private EncryptedFile mEncryptedFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mKeyStore = new FakeKeyStoreBackend();
+        mCryptographer = new Cryptographers(mKeyStore).getStreamCryptographer();
+        mData = new byte[SIZE];
+        new Random(SIZE).nextBytes(mData);
+        mFile = encrypt(mData);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mEncryptedFile != null) {
+            mEncryptedFile.close();
+        }
+    }
+
+    @Test
+    public void lockedFile_knowsSizeButIsNotRead() throws Exception {
+        mEncryptedFile = EncryptedFile.open(mFile, KEY);
+        assertEquals(SIZE, mEncryptedFile.size());
+        assertFalse(mEncryptedFile.isUnlocked());
+        try {
+            mEncryptedFile.read(ByteBuffer.allocate(1));
+            fail("Locked file was read");
+        } catch (IllegalStateException expected) {
+            // the data key is unwrapped by the authenticated cipher only
+        }
+    }
+
+    @Test
+    public void readsAcrossSegmentBoundaries_matchPlaintext() throws Exception {
+        mEncryptedFile = openUnlocked();
+        assertRange(SEGMENT - 10, 20);
+        assertRange(SEGMENT, 1);
+        assertRange(2 * SEGMENT - 1, 1);
+        assertRange(SEGMENT - 1, 2 * SEGMENT + 2);
+        assertRange(3 * SEGMENT - 5, 105);
+        // back to a segment that is no longer the cached one
+        assertRange(0, 10);
+        assertRange(0, SIZE);
+    }
+
+    @Test
+    public void randomReads_matchPlaintext() throws Exception {
+        mEncryptedFile = openUnlocked();
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            int position = random.nextInt(SIZE);
+            assertRange(position, random.nextInt(Math.min(2 * SEGMENT, SIZE - position) + 1));
+        }
+    }
+
+    @Test
+    public void readAtEnd_returnsEndOfStream() throws Exception {
+        mEncryptedFile = openUnlocked();
+        mEncryptedFile.position(SIZE - 3);
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        assertEquals(3, mEncryptedFile.read(buffer));
+        assertEquals(SIZE, mEncryptedFile.position());
+        assertEquals(-1, mEncryptedFile.read(buffer));
+        mEncryptedFile.position(SIZE + 100);
+        assertEquals(-1, mEncryptedFile.read(ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    public void modifiedSegment_failsOnlyItsReads() throws Exception {
+        byte[] encrypted = readFile(mFile);
+        // a byte of the second segment, counted from the end: the last segment and the tag of the third one
+        encrypted[encrypted.length - (100 + 16) - (SEGMENT + 16) - (SEGMENT + 16) + 5] ^= 1;
+        writeFile(mFile, encrypted);
+        mEncryptedFile = openUnlocked();
+
+        assertRange(0, 10);
+        assertRange(2 * SEGMENT, 10);
+        mEncryptedFile.position(SEGMENT + 1);
+        try {
+            mEncryptedFile.read(ByteBuffer.allocate(1));
+            fail("Modified segment was read");
+        } catch (IOException expected) {
+            // the tag of the segment doesn't match
+        }
+        assertRange(3 * SEGMENT, 10);
+    }
+
+    @Test
+    public void truncatedFile_isRejectedOnOpen() throws Exception {
+        byte[] encrypted = readFile(mFile);
+        // without the last segment the file ends with a full one, which is never the last
+        assertRejectedOnOpen(Arrays.copyOf(encrypted, encrypted.length - (100 + 16)));
+        // the remainder is shorter than a tag
+        assertRejectedOnOpen(Arrays.copyOf(encrypted, encrypted.length - (100 + 16) + 3));
+    }
+
+    @Test
+    public void lock_wipesKeyUntilNextUnlock() throws Exception {
+        mEncryptedFile = openUnlocked();
+        assertRange(0, 10);
+        mEncryptedFile.lock();
+        assertFalse(mEncryptedFile.isUnlocked());
+        try {
+            mEncryptedFile.read(ByteBuffer.allocate(1));
+            fail("Locked file was read");
+        } catch (IllegalStateException expected) {
+            // the data key and the decrypted segment are gone
+        }
+        unlock(mEncryptedFile);
+        assertTrue(mEncryptedFile.isUnlocked());
+        assertRange(0, 10);
+    }
+
+    private void assertRejectedOnOpen(byte[] encrypted) throws IOException {
+        writeFile(mFile, encrypted);
+        try {
+            EncryptedFile.open(mFile, KEY).close();
+            fail("Truncated file of " + encrypted.length + " bytes was opened");
+        } catch (EOFException expected) {
+            // the size of the plaintext can't be derived
+        }
+    }
+
+    private void assertRange(int position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        mEncryptedFile.position(position);
+        while (buffer.hasRemaining()) {
+            if (mEncryptedFile.read(buffer) < 0) {
+                break;
+            }
+        }
+        assertEquals(position + length, mEncryptedFile.position());
+        assertArrayEquals("range " + position + "+" + length, Arrays.copyOfRange(mData, position, position + length), buffer.array());
+    }
+
+    private EncryptedFile openUnlocked() throws Exception {
+        EncryptedFile file = EncryptedFile.open(mFile, KEY);
+        unlock(file);
+        return file;
+    }
+
+    private void unlock(EncryptedFile file) throws Exception {
+        FingerprintManager.CryptoObject cryptoObject = file.getCryptoObject(mCryptographer);
+        mKeyStore.onAuthenticated(cryptoObject);
+        file.unlock(cryptoObject.getCipher());
+    }
+
+    private File encrypt(byte[] data) throws Exception {
+        File plain = mFolder.newFile();
+        writeFile(plain, data);
+        File encrypted = mFolder.newFile();
+        FingerprintManager.CryptoObject cryptoObject = mCryptographer.getEncodeCryptoObject(KEY);
+        mKeyStore.onAuthenticated(cryptoObject);
+        try (FileChannel in = new FileInputStream(plain).getChannel();
+             FileChannel out = new RandomAccessFile(encrypted, "rw").getChannel()) {
+            mCryptographer.encodeParallel(cryptoObject.getCipher(), in, out);
+        }
+        return encrypted;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.util.Base64;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Strings encoded before {@link CipherContainer} are still decoded. They are made of the fields of current containers,
+ * keys are time-bound, so no crypto object is needed.
+ *
+ * @author Azret Magometov
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LegacyFormatTest {
+
+    private static final String AES_KEY = "legacy aes";
+    private static final String RSA_KEY = "legacy rsa";
+    private static final String TEXT = "1234";
+    private static final int VALIDITY_SECONDS = 30;
+
+    private Cryptographers mCryptographers;
+
+    @Before
+    public void setUp() {
+        FakeKeyStoreBackend keyStore = new FakeKeyStoreBackend();
+        keyStore.onAuthenticated(null);
+        mCryptographers = new Cryptographers(keyStore);
+    }
+
+    @Test
+    public void aesStringWithSeparator_isDecoded() throws Exception {
+        AesCryptographer cryptographer = mCryptographers.getAesCryptographer();
+        CipherContainer container = CipherContainer.parse(Base64.decode(cryptographer.encode(TEXT, AES_KEY, VALIDITY_SECONDS), Base64.NO_WRAP));
+        byte[] source = container.getSource();
+        String legacy = Base64.encodeToString(slice(source, container.getCiphertextOffset(), container.getSealedLength()), Base64.NO_WRAP)
+                + "-SEPARATOR-"
+                + Base64.encodeToString(slice(source, container.getIvOffset(), container.getIvLength()), Base64.NO_WRAP);
+
+        assertEquals(TEXT, cryptographer.decode(legacy, AES_KEY));
+    }
+
+    @Test
+    public void rawRsaCiphertext_isDecoded() throws Exception {
+        RsaCryptographer cryptographer = mCryptographers.getRsaCryptographer();
+        CipherContainer container = CipherContainer.parse(cryptographer.encodeToBytes(TEXT.getBytes(), RSA_KEY, VALIDITY_SECONDS));
+        byte[] raw = slice(container.getSource(), container.getCiphertextOffset(), container.getSealedLength());
+
+        assertEquals(TEXT, cryptographer.decode(Base64.encodeToString(raw, Base64.NO_WRAP), RSA_KEY));
+    }
+
+    @Test
+    public void currentStrings_areDecoded() throws Exception {
+        AesCryptographer aes = mCryptographers.getAesCryptographer();
+        assertEquals(TEXT, aes.decode(aes.encode(TEXT, AES_KEY, VALIDITY_SECONDS), AES_KEY));
+        RsaCryptographer rsa = mCryptographers.getRsaCryptographer();
+        assertEquals(TEXT, rsa.decode(rsa.encode(TEXT, RSA_KEY, VALIDITY_SECONDS), RSA_KEY));
+    }
+
+    private static byte[] slice(byte[] bytes, int offset, int length) {
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+}
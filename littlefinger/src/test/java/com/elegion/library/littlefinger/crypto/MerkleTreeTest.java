@@ -0,0 +1,116 @@
+package com.elegion.library.littlefinger.crypto;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Azret Magometov
+ */
+public class MerkleTreeTest {
+
+    @Test
+    public void proofOfEveryMessage_givesRoot() throws Exception {
+        // odd counts promote nodes without a pair, powers of two don't
+        for (int count = 1; count <= 9; count++) {
+            List<byte[]> messages = newMessages(count);
+            MerkleTree tree = new MerkleTree(messages);
+            assertEquals(count, tree.getLeafCount());
+            assertEquals(MerkleTree.HASH_SIZE_BYTES, tree.getRoot().length);
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals("message " + i + " of " + count, tree.getRoot(),
+                        MerkleTree.computeRoot(messages.get(i), i, count, tree.getProof(i)));
+            }
+        }
+    }
+
+    @Test
+    public void singleMessage_hasEmptyProof() throws Exception {
+        MerkleTree tree = new MerkleTree(newMessages(1));
+        assertEquals(0, tree.getProof(0).length);
+    }
+
+    @Test
+    public void modifiedMessage_givesOtherRoot() throws Exception {
+        List<byte[]> messages = newMessages(5);
+        MerkleTree tree = new MerkleTree(messages);
+        byte[] modified = messages.get(2).clone();
+        modified[0] ^= 1;
+        assertNotRoot(tree, MerkleTree.computeRoot(modified, 2, 5, tree.getProof(2)));
+    }
+
+    @Test
+    public void modifiedProof_givesOtherRoot() throws Exception {
+        List<byte[]> messages = newMessages(6);
+        MerkleTree tree = new MerkleTree(messages);
+        byte[][] proof = tree.getProof(3);
+        for (int i = 0; i < proof.length; i++) {
+            byte[][] modified = proof.clone();
+            modified[i] = proof[i].clone();
+            modified[i][MerkleTree.HASH_SIZE_BYTES - 1] ^= 1;
+            assertNotRoot(tree, MerkleTree.computeRoot(messages.get(3), 3, 6, modified));
+        }
+    }
+
+    @Test
+    public void proofOfOtherPosition_isRejected() throws Exception {
+        List<byte[]> messages = newMessages(4);
+        MerkleTree tree = new MerkleTree(messages);
+        assertNotRoot(tree, MerkleTree.computeRoot(messages.get(1), 0, 4, tree.getProof(1)));
+        assertNotRoot(tree, MerkleTree.computeRoot(messages.get(1), 1, 4, tree.getProof(0)));
+        assertNull(MerkleTree.computeRoot(messages.get(1), 4, 4, tree.getProof(1)));
+        assertNull(MerkleTree.computeRoot(messages.get(1), -1, 4, tree.getProof(1)));
+    }
+
+    @Test
+    public void proofOfWrongLength_isRejected() throws Exception {
+        List<byte[]> messages = newMessages(4);
+        MerkleTree tree = new MerkleTree(messages);
+        byte[][] proof = tree.getProof(2);
+        assertNull(MerkleTree.computeRoot(messages.get(2), 2, 4, Arrays.copyOf(proof, proof.length - 1)));
+        byte[][] longer = Arrays.copyOf(proof, proof.length + 1);
+        longer[proof.length] = proof[0];
+        assertNull(MerkleTree.computeRoot(messages.get(2), 2, 4, longer));
+    }
+
+    @Test
+    public void leafAndNode_areHashedDifferently() throws Exception {
+        // the children of a node can't be passed off as a message, the proofs of a pair are the leaf hashes
+        MerkleTree pair = new MerkleTree(newMessages(2));
+        byte[] children = new byte[2 * MerkleTree.HASH_SIZE_BYTES];
+        System.arraycopy(pair.getProof(1)[0], 0, children, 0, MerkleTree.HASH_SIZE_BYTES);
+        System.arraycopy(pair.getProof(0)[0], 0, children, MerkleTree.HASH_SIZE_BYTES, MerkleTree.HASH_SIZE_BYTES);
+        assertFalse(Arrays.equals(pair.getRoot(), new MerkleTree(Collections.singletonList(children)).getRoot()));
+    }
+
+    @Test
+    public void emptyBatch_isRejected() throws Exception {
+        try {
+            new MerkleTree(new ArrayList<byte[]>());
+            fail("Empty batch was accepted");
+        } catch (IllegalArgumentException expected) {
+            // there is nothing to sign
+        }
+    }
+
+    private static void assertNotRoot(MerkleTree tree, byte[] root) {
+        assertFalse(Arrays.equals(tree.getRoot(), root));
+    }
+
+    private static List<byte[]> newMessages(int count) {
+        List<byte[]> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(("message " + i).getBytes());
+        }
+        return messages;
+    }
+}
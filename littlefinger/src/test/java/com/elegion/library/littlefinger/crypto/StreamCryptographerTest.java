@@ -0,0 +1,191 @@
+package com.elegion.library.littlefinger.crypto;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Keystore is simulated by {@link FakeKeyStoreBackend}, the touch by {@link FakeKeyStoreBackend#onAuthenticated}
+ *
+ * @author Azret Magometov
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StreamCryptographerTest {
+
+    private static final String KEY = "stream";
+    private static final int SEGMENT = StreamCryptographer.DEFAULT_SEGMENT_SIZE;
+    private static final int SEALED_SEGMENT = SEGMENT + 16;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private FakeKeyStoreBackend mKeyStore;
+    private StreamCryptographer mCryptographer;
+
+    @Before
+    public void setUp() {
+        mKeyStore = new FakeKeyStoreBackend();
+        mCryptographer = new Cryptographers(mKeyStore).getStreamCryptographer();
+    }
+
+    @Test
+    public void encodedStream_isDecoded() throws Exception {
+        for (int size : new int[]{0, 1, SEGMENT - 1, SEGMENT, 3 * SEGMENT + 5}) {
+            byte[] data = randomBytes(size);
+            assertArrayEquals("size " + size, data, decode(encode(data)));
+        }
+    }
+
+    @Test
+    public void streamWithoutLastSegment_isRejected() throws Exception {
+        byte[] encoded = encode(randomBytes(3 * SEGMENT + 5));
+        int header = encoded.length - 3 * SEALED_SEGMENT - (5 + 16);
+        // the remaining stream ends with a full segment, which is never the last one
+        assertRejected(Arrays.copyOf(encoded, header + 3 * SEALED_SEGMENT));
+    }
+
+    @Test
+    public void streamWithoutLastByte_isRejected() throws Exception {
+        byte[] encoded = encode(randomBytes(2 * SEGMENT + 5));
+        assertRejected(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    @Test
+    public void reorderedSegments_areRejected() throws Exception {
+        byte[] encoded = encode(randomBytes(3 * SEGMENT + 5));
+        int header = encoded.length - 3 * SEALED_SEGMENT - (5 + 16);
+        byte[] first = Arrays.copyOfRange(encoded, header, header + SEALED_SEGMENT);
+        System.arraycopy(encoded, header + SEALED_SEGMENT, encoded, header, SEALED_SEGMENT);
+        System.arraycopy(first, 0, encoded, header + SEALED_SEGMENT, SEALED_SEGMENT);
+        assertRejected(encoded);
+    }
+
+    @Test
+    public void modifiedSegment_isRejected() throws Exception {
+        byte[] encoded = encode(randomBytes(2 * SEGMENT));
+        encoded[encoded.length - SEGMENT] ^= 1;
+        assertRejected(encoded);
+    }
+
+    @Test
+    public void parallelAndSequentialOutput_areInterchangeable() throws Exception {
+        // data keys and nonces are random, so the outputs are compared by their layout and by decoding each with the other
+        for (int size : new int[]{0, 1, SEGMENT, 4 * SEGMENT + 5}) {
+            byte[] data = randomBytes(size);
+            byte[] sequential = encode(data);
+            byte[] parallel = encodeParallel(data);
+            assertEquals("size " + size, sequential.length, parallel.length);
+            assertArrayEquals("size " + size, data, decode(parallel));
+            assertArrayEquals("size " + size, data, decodeParallel(sequential));
+        }
+    }
+
+    @Test
+    public void parallelDecoding_rejectsReorderedSegments() throws Exception {
+        byte[] encoded = encodeParallel(randomBytes(3 * SEGMENT + 5));
+        int header = encoded.length - 3 * SEALED_SEGMENT - (5 + 16);
+        byte[] second = Arrays.copyOfRange(encoded, header + SEALED_SEGMENT, header + 2 * SEALED_SEGMENT);
+        System.arraycopy(encoded, header + 2 * SEALED_SEGMENT, encoded, header + SEALED_SEGMENT, SEALED_SEGMENT);
+        System.arraycopy(second, 0, encoded, header + 2 * SEALED_SEGMENT, SEALED_SEGMENT);
+        try {
+            decodeParallel(encoded);
+            fail("Stream was decoded");
+        } catch (Exception expected) {
+            // every segment is checked against its position, whichever worker decodes it
+        }
+        try {
+            decodeParallel(Arrays.copyOf(encoded, header + 3 * SEALED_SEGMENT));
+            fail("Truncated stream was decoded");
+        } catch (Exception expected) {
+            // the stream ends with a segment that isn't the last one
+        }
+    }
+
+    private void assertRejected(byte[] encoded) {
+        try {
+            decode(encoded);
+            fail("Stream was decoded");
+        } catch (Exception expected) {
+            // the stream is rejected by the tag of the first segment that doesn't fit its position
+        }
+    }
+
+    private byte[] encode(byte[] data) throws Exception {
+        FingerprintManager.CryptoObject cryptoObject = mCryptographer.getEncodeCryptoObject(KEY);
+        mKeyStore.onAuthenticated(cryptoObject);
+        ByteArrayOutputStream destination = new ByteArrayOutputStream();
+        mCryptographer.encode(cryptoObject.getCipher(), Channels.newChannel(new ByteArrayInputStream(data)), Channels.newChannel(destination));
+        return destination.toByteArray();
+    }
+
+    private byte[] decode(byte[] encoded) throws Exception {
+        ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(encoded));
+        StreamHeader header = mCryptographer.readHeader(source);
+        FingerprintManager.CryptoObject cryptoObject = mCryptographer.getDecodeCryptoObject(KEY, header);
+        mKeyStore.onAuthenticated(cryptoObject);
+        ByteArrayOutputStream destination = new ByteArrayOutputStream();
+        mCryptographer.decode(cryptoObject.getCipher(), header, source, Channels.newChannel(destination));
+        return destination.toByteArray();
+    }
+
+    private byte[] encodeParallel(byte[] data) throws Exception {
+        File source = write(data);
+        File destination = mFolder.newFile();
+        FingerprintManager.CryptoObject cryptoObject = mCryptographer.getEncodeCryptoObject(KEY);
+        mKeyStore.onAuthenticated(cryptoObject);
+        try (FileChannel in = new FileInputStream(source).getChannel();
+             FileChannel out = new RandomAccessFile(destination, "rw").getChannel()) {
+            mCryptographer.encodeParallel(cryptoObject.getCipher(), in, out);
+        }
+        return Files.readAllBytes(destination.toPath());
+    }
+
+    private byte[] decodeParallel(byte[] encoded) throws Exception {
+        File source = write(encoded);
+        File destination = mFolder.newFile();
+        try (FileChannel in = new FileInputStream(source).getChannel();
+             FileChannel out = new RandomAccessFile(destination, "rw").getChannel()) {
+            StreamHeader header = mCryptographer.readHeader(in);
+            FingerprintManager.CryptoObject cryptoObject = mCryptographer.getDecodeCryptoObject(KEY, header);
+            mKeyStore.onAuthenticated(cryptoObject);
+            mCryptographer.decodeParallel(cryptoObject.getCipher(), header, in, out);
+        }
+        return Files.readAllBytes(destination.toPath());
+    }
+
+    private File write(byte[] bytes) throws Exception {
+        File file = mFolder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+        return file;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
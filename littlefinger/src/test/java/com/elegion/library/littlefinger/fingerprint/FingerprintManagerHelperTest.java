@@ -0,0 +1,222 @@
+package com.elegion.library.littlefinger.fingerprint;
+
+import android.content.Context;
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.CancellationSignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Touches are simulated by calling the listener of the last authentication on the test thread
+ *
+ * @author Azret Magometov
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FingerprintManagerHelperTest {
+
+    private Context mContext;
+    private RecordingAuthenticator mAuthenticator;
+    private FingerprintManagerHelper mHelper;
+    private final List<String> mCompleted = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mAuthenticator = new RecordingAuthenticator();
+        mHelper = FingerprintManagerHelper.getInstance(mContext, mAuthenticator);
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.release();
+    }
+
+    @Test
+    public void pendingRequests_startByPriorityThenInOrder() {
+        start("running", null, AuthRequest.PRIORITY_DEFAULT, null);
+        start("first", null, AuthRequest.PRIORITY_DEFAULT, null);
+        start("high", null, AuthRequest.PRIORITY_HIGH, null);
+        start("second", null, AuthRequest.PRIORITY_DEFAULT, null);
+        // the running authentication isn't preempted
+        assertEquals(1, mAuthenticator.mAuthentications.size());
+
+        for (int i = 0; i < 4; i++) {
+            mAuthenticator.last().mListener.onSucceeded(null);
+        }
+        assertEquals(Arrays.asList("running SUCCESS", "high SUCCESS", "first SUCCESS", "second SUCCESS"), mCompleted);
+        assertEquals(4, mAuthenticator.mAuthentications.size());
+    }
+
+    @Test
+    public void equalKeys_shareOneAuthentication() {
+        start("running", null, AuthRequest.PRIORITY_DEFAULT, null);
+        start("first", "key", AuthRequest.PRIORITY_DEFAULT, null);
+        start("other", null, AuthRequest.PRIORITY_DEFAULT, null);
+        // joins the pending group and raises its priority over the earlier request
+        start("second", "key", AuthRequest.PRIORITY_HIGH, null);
+        mAuthenticator.last().mListener.onSucceeded(null);
+        assertEquals(2, mAuthenticator.mAuthentications.size());
+
+        // joins the running group
+        start("third", "key", AuthRequest.PRIORITY_DEFAULT, null);
+        mAuthenticator.last().mListener.onFailed();
+        mAuthenticator.last().mListener.onSucceeded(null);
+        assertEquals(Arrays.asList("running SUCCESS",
+                "first FAIL", "second FAIL", "third FAIL",
+                "first SUCCESS", "second SUCCESS", "third SUCCESS"), mCompleted);
+
+        // the group is finished, a request with the same key gets an authentication of its own
+        start("later", "key", AuthRequest.PRIORITY_DEFAULT, null);
+        mAuthenticator.last().mListener.onSucceeded(null);
+        mAuthenticator.last().mListener.onSucceeded(null);
+        assertEquals(4, mAuthenticator.mAuthentications.size());
+        assertEquals("other SUCCESS", mCompleted.get(7));
+        assertEquals("later SUCCESS", mCompleted.get(8));
+    }
+
+    @Test
+    public void cancelOfCoalescedRequest_keepsOthers() {
+        AuthRequest first = start("first", "key", AuthRequest.PRIORITY_DEFAULT, null);
+        AuthRequest second = start("second", "key", AuthRequest.PRIORITY_DEFAULT, null);
+        first.cancel();
+        assertTrue(first.isDone());
+        assertFalse(mAuthenticator.last().mSignal.isCanceled());
+
+        mAuthenticator.last().mListener.onSucceeded(null);
+        assertEquals(Arrays.asList("first ERROR canceled", "second SUCCESS"), mCompleted);
+        assertTrue(second.isDone());
+        // a done request isn't cancelled again
+        first.cancel();
+        assertEquals(2, mCompleted.size());
+    }
+
+    @Test
+    public void cancelOfLastRequest_cancelsAuthenticationAndStartsNext() {
+        AuthRequest running = start("running", null, AuthRequest.PRIORITY_DEFAULT, null);
+        start("next", null, AuthRequest.PRIORITY_DEFAULT, null);
+        running.cancel();
+        // the error delivered by the authenticator on cancel is not delivered again
+        assertEquals(Arrays.asList("running ERROR canceled"), mCompleted);
+        assertTrue(mAuthenticator.mAuthentications.get(0).mSignal.isCanceled());
+        assertEquals(2, mAuthenticator.mAuthentications.size());
+
+        mAuthenticator.last().mListener.onSucceeded(null);
+        assertEquals(Arrays.asList("running ERROR canceled", "next SUCCESS"), mCompleted);
+    }
+
+    @Test
+    public void cancelAuthOfOwner_keepsRequestsOfOtherOwners() {
+        Object owner = new Object();
+        Object otherOwner = new Object();
+        start("shared", "key", AuthRequest.PRIORITY_DEFAULT, owner);
+        start("sharedByOther", "key", AuthRequest.PRIORITY_DEFAULT, otherOwner);
+        start("pending", null, AuthRequest.PRIORITY_DEFAULT, owner);
+        start("pendingOfOther", null, AuthRequest.PRIORITY_DEFAULT, otherOwner);
+        AtomicInteger cancels = new AtomicInteger();
+
+        mHelper.cancelAuth(owner, cancels::incrementAndGet);
+        assertEquals(1, cancels.get());
+        assertFalse(mAuthenticator.last().mSignal.isCanceled());
+        mAuthenticator.last().mListener.onSucceeded(null);
+        mAuthenticator.last().mListener.onSucceeded(null);
+        assertEquals(Arrays.asList("shared ERROR canceled", "pending ERROR canceled",
+                "sharedByOther SUCCESS", "pendingOfOther SUCCESS"), mCompleted);
+
+        // there is nothing left to cancel
+        mHelper.cancelAuth(owner, cancels::incrementAndGet);
+        assertEquals(1, cancels.get());
+    }
+
+    @Test
+    public void sensorNotReady_failsRequestWithoutAuthentication() {
+        mAuthenticator.mHasEnrolledFingerprints = false;
+        start("request", null, AuthRequest.PRIORITY_DEFAULT, null);
+        assertEquals(Arrays.asList("request EXCEPTION"), mCompleted);
+        assertTrue(mAuthenticator.mAuthentications.isEmpty());
+    }
+
+    @Test
+    public void lastRelease_cancelsRequestsAndDropsHelper() {
+        FingerprintManagerHelper same = FingerprintManagerHelper.getInstance(mContext, mAuthenticator);
+        assertSame(mHelper, same);
+        start("running", null, AuthRequest.PRIORITY_DEFAULT, null);
+        start("pending", null, AuthRequest.PRIORITY_DEFAULT, null);
+
+        same.release();
+        assertSame(mHelper, FingerprintManagerHelper.getInstance(mContext, mAuthenticator));
+        mHelper.release();
+        assertTrue(mCompleted.isEmpty());
+
+        mHelper.release();
+        assertEquals(Arrays.asList("running ERROR canceled", "pending ERROR canceled"), mCompleted);
+        mHelper = FingerprintManagerHelper.getInstance(mContext, mAuthenticator);
+        assertNotSame(same, mHelper);
+    }
+
+    private AuthRequest start(String name, @Nullable Object coalescingKey, int priority, @Nullable Object owner) {
+        return mHelper.startAuth(null, coalescingKey, priority, owner, result -> mCompleted.add(name + " " + result.getState()
+                + (result.isCanceledByUser() ? " canceled" : "")));
+    }
+
+    private static final class RecordingAuthenticator implements BiometricAuthenticator {
+        private final List<Authentication> mAuthentications = new ArrayList<>();
+        private boolean mHasEnrolledFingerprints = true;
+
+        @Override
+        public boolean isHardwareDetected() {
+            return true;
+        }
+
+        @Override
+        public boolean isKeyguardSecure() {
+            return true;
+        }
+
+        @Override
+        public boolean hasEnrolledFingerprints() {
+            return mHasEnrolledFingerprints;
+        }
+
+        @Override
+        public void authenticate(@Nullable FingerprintManager.CryptoObject cryptoObject,
+                                 @NonNull CancellationSignal cancellationSignal,
+                                 @NonNull Listener listener) {
+            mAuthentications.add(new Authentication(cancellationSignal, listener));
+            cancellationSignal.setOnCancelListener(() ->
+                    listener.onError(FingerprintManager.FINGERPRINT_ERROR_CANCELED, "Fingerprint operation canceled."));
+        }
+
+        private Authentication last() {
+            return mAuthentications.get(mAuthentications.size() - 1);
+        }
+    }
+
+    private static final class Authentication {
+        private final CancellationSignal mSignal;
+        private final BiometricAuthenticator.Listener mListener;
+
+        private Authentication(CancellationSignal signal, BiometricAuthenticator.Listener listener) {
+            mSignal = signal;
+            mListener = listener;
+        }
+    }
+}
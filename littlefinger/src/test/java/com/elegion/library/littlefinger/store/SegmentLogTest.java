@@ -0,0 +1,204 @@
+package com.elegion.library.littlefinger.store;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Crashes are simulated by editing the segment files of a closed log
+ *
+ * @author Azret Magometov
+ */
+public class SegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final String ALIAS = "alias";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private SegmentLog mLog;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder();
+        mLog = SegmentLog.open(mDirectory, SEGMENT_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        mLog.close();
+    }
+
+    @Test
+    public void records_surviveReopen() throws IOException {
+        mLog.put(ALIAS, "1", value(1));
+        mLog.put(ALIAS, "2", value(2));
+        mLog.put(ALIAS, "1", value(3));
+        mLog.remove(ALIAS, "2");
+        reopen();
+
+        assertArrayEquals(value(3), mLog.get(ALIAS, "1"));
+        assertNull(mLog.get(ALIAS, "2"));
+        assertEquals(1, mLog.size());
+    }
+
+    @Test
+    public void tornLastRecord_isDropped() throws IOException {
+        mLog.put(ALIAS, "1", value(1));
+        mLog.put(ALIAS, "2", value(2));
+        mLog.close();
+        RandomAccessFile file = new RandomAccessFile(lastSegment(), "rw");
+        long last = endOfRecords(file) - 1;
+        file.seek(last);
+        int lastByte = file.read();
+        file.seek(last);
+        file.write(lastByte ^ 1);
+        file.close();
+        mLog = SegmentLog.open(mDirectory, SEGMENT_SIZE);
+
+        assertArrayEquals(value(1), mLog.get(ALIAS, "1"));
+        assertNull(mLog.get(ALIAS, "2"));
+        assertEquals(1, mLog.size());
+
+        // the new record takes the place of the torn one
+        mLog.put(ALIAS, "3", value(3));
+        reopen();
+        assertArrayEquals(value(1), mLog.get(ALIAS, "1"));
+        assertArrayEquals(value(3), mLog.get(ALIAS, "3"));
+        assertNull(mLog.get(ALIAS, "2"));
+    }
+
+    @Test
+    public void tornHeader_isWipedBeforeNextRecord() throws IOException {
+        mLog.put(ALIAS, "1", value(1));
+        mLog.close();
+        RandomAccessFile file = new RandomAccessFile(lastSegment(), "rw");
+        // crc and length of a record whose body was never written
+        file.seek(endOfRecords(file));
+        file.write(new byte[]{1, 2, 3, 4, 0, 0, 0, 100});
+        file.close();
+        mLog = SegmentLog.open(mDirectory, SEGMENT_SIZE);
+        assertEquals(1, mLog.size());
+
+        mLog.put(ALIAS, "2", new byte[]{7});
+        reopen();
+        assertArrayEquals(value(1), mLog.get(ALIAS, "1"));
+        assertArrayEquals(new byte[]{7}, mLog.get(ALIAS, "2"));
+        assertEquals(2, mLog.size());
+    }
+
+    @Test
+    public void corruptedSealedRecord_failsOnRead() throws IOException {
+        mLog.put(ALIAS, "1", value(1));
+        for (int i = 2; i < 40; i++) {
+            mLog.put(ALIAS, String.valueOf(i), value(i));
+        }
+        mLog.close();
+        File first = segments()[0];
+        RandomAccessFile file = new RandomAccessFile(first, "rw");
+        // the last byte of the value of the first record
+        file.seek(8 + 5 + ALIAS.length() + 1 + value(1).length - 1);
+        file.write(0);
+        file.close();
+        mLog = SegmentLog.open(mDirectory, SEGMENT_SIZE);
+
+        try {
+            mLog.get(ALIAS, "1");
+            fail("Corrupted record was read");
+        } catch (IOException expected) {
+            // sealed segments aren't verified on open, every value is verified on read
+        }
+        assertArrayEquals(value(2), mLog.get(ALIAS, "2"));
+    }
+
+    @Test
+    public void compaction_keepsLiveRecordsAndRemovals() throws IOException {
+        int count = 100;
+        for (int i = 0; i < count; i++) {
+            mLog.put(ALIAS, id(i), value(i));
+        }
+        int written = segments().length;
+        assertTrue(written > 3);
+        for (int i = 0; i < count; i += 2) {
+            mLog.remove(ALIAS, id(i));
+        }
+        for (int i = 1; i < count; i += 4) {
+            mLog.put(ALIAS, id(i), value(-i));
+        }
+        mLog.compact();
+        assertTrue(segments().length < written);
+        assertRecords(count);
+
+        // removals copied by the compaction still hide the records of the older segments
+        reopen();
+        assertRecords(count);
+        mLog.compact();
+        reopen();
+        assertRecords(count);
+    }
+
+    private void assertRecords(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            byte[] expected = i % 2 == 0 ? null : i % 4 == 1 ? value(-i) : value(i);
+            assertArrayEquals(id(i), expected, mLog.get(ALIAS, id(i)));
+        }
+        assertEquals(count / 2, mLog.size());
+    }
+
+    private void reopen() throws IOException {
+        mLog.close();
+        mLog = SegmentLog.open(mDirectory, SEGMENT_SIZE);
+    }
+
+    private File[] segments() {
+        File[] files = mDirectory.listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    private File lastSegment() {
+        File[] files = segments();
+        return files[files.length - 1];
+    }
+
+    /**
+     * Segments are preallocated with zeros and the values of the tests end with a nonzero byte
+     */
+    private static long endOfRecords(RandomAccessFile file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        file.seek(0);
+        file.readFully(bytes);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == 0) {
+            end--;
+        }
+        return end;
+    }
+
+    private static String id(int i) {
+        return String.format("%03d", i);
+    }
+
+    private static byte[] value(int seed) {
+        byte[] value = new byte[40];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) (seed + i | 1);
+        }
+        return value;
+    }
+}
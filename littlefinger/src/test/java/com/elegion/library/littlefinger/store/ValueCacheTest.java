@@ -0,0 +1,110 @@
+package com.elegion.library.littlefinger.store;
+
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The clock of Robolectric stands still, {@link SystemClock#sleep(long)} moves it forward
+ *
+ * @author Azret Magometov
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ValueCacheTest {
+
+    private static final long TTL_MILLIS = 1000;
+    private static final byte[] ZEROS = new byte[3];
+
+    @Test
+    public void get_returnsCopy() {
+        ValueCache cache = new ValueCache(4, TTL_MILLIS);
+        byte[] value = {1, 2, 3};
+        cache.put("a", value);
+        byte[] copy = cache.get("a");
+        copy[0] = 9;
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("a"));
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvictedAndWiped() {
+        ValueCache cache = new ValueCache(2, TTL_MILLIS);
+        byte[] a = {1, 1, 1};
+        byte[] b = {2, 2, 2};
+        cache.put("a", a);
+        cache.put("b", b);
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[]{3, 3, 3});
+
+        assertNull(cache.get("b"));
+        assertArrayEquals(ZEROS, b);
+        assertArrayEquals(new byte[]{1, 1, 1}, cache.get("a"));
+        assertArrayEquals(new byte[]{3, 3, 3}, cache.get("c"));
+    }
+
+    @Test
+    public void expiredValue_isDroppedAndWiped() {
+        ValueCache cache = new ValueCache(4, TTL_MILLIS);
+        byte[] value = {1, 2, 3};
+        cache.put("a", value);
+        SystemClock.sleep(TTL_MILLIS - 1);
+        assertNotNull(cache.get("a"));
+        SystemClock.sleep(1);
+        assertNull(cache.get("a"));
+        assertArrayEquals(ZEROS, value);
+    }
+
+    @Test
+    public void purgeExpired_wipesOnlyExpiredValues() {
+        ValueCache cache = new ValueCache(4, TTL_MILLIS);
+        byte[] old = {1, 2, 3};
+        cache.put("old", old);
+        SystemClock.sleep(TTL_MILLIS / 2);
+        byte[] fresh = {4, 5, 6};
+        cache.put("fresh", fresh);
+        SystemClock.sleep(TTL_MILLIS / 2);
+        cache.purgeExpired();
+
+        assertArrayEquals(ZEROS, old);
+        assertArrayEquals(new byte[]{4, 5, 6}, fresh);
+        assertNotNull(cache.get("fresh"));
+    }
+
+    @Test
+    public void replacedRemovedAndClearedValues_areWiped() {
+        ValueCache cache = new ValueCache(4, TTL_MILLIS);
+        byte[] first = {1, 2, 3};
+        byte[] second = {4, 5, 6};
+        cache.put("a", first);
+        cache.put("a", second);
+        assertArrayEquals(ZEROS, first);
+        assertArrayEquals(new byte[]{4, 5, 6}, cache.get("a"));
+
+        cache.remove("a");
+        assertArrayEquals(ZEROS, second);
+        assertNull(cache.get("a"));
+
+        byte[] b = {7, 8, 9};
+        byte[] c = {7, 8, 9};
+        cache.put("b", b);
+        cache.put("c", c);
+        cache.clear();
+        assertArrayEquals(ZEROS, b);
+        assertArrayEquals(ZEROS, c);
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void putOfSameArray_keepsValue() {
+        ValueCache cache = new ValueCache(4, TTL_MILLIS);
+        byte[] value = {1, 2, 3};
+        cache.put("a", value);
+        cache.put("a", value);
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("a"));
+    }
+}